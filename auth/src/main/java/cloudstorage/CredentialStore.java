@@ -0,0 +1,303 @@
+package cloudstorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// users_data.txt doubles as an append-only log: each line is "user:hash" and the last line for a user wins.
+// users_data.txt.idx is a memory-mapped open-addressing table from user name to the offset of that user's last line,
+// covering the log up to a recorded length, so opening the store and looking a user up cost the same for ten users
+// as for a million. Lines appended after the index was built are read into a small in-memory tail at open.
+class CredentialStore {
+    private static final int MIN_COMPACT_RECORDS = 1024;
+    private static final int INDEX_MAGIC = 0x43535558;  // "CSUX"
+    private static final int HEADER_BYTES = 28;
+    // Bytes before the covered length that must still match, so a log rewritten behind the index's back is noticed
+    private static final int CHECK_BYTES = 64;
+    // A slot is (24 bits of the name's hash) << 40 | (line offset + 1); zero marks an empty slot
+    private static final long OFFSET_MASK = (1L << 40) - 1;
+    // Past this many lines in the tail the index is rebuilt to cover them
+    private static final int MAX_TAIL = 1024;
+
+    private final Path file;
+    private final Path indexFile;
+    private boolean opened = false;
+    private MappedByteBuffer index;
+    private MappedByteBuffer data;
+    private int slots;
+    private int indexedUsers;
+    // Lines after the covered length, user -> hash; tailNew counts the users the index does not know
+    private final Map<String, String> tail = new HashMap<>();
+    private int tailNew = 0;
+    private int staleRecords = 0;
+
+    public CredentialStore(String fileName) {
+        this.file = Paths.get(fileName);
+        this.indexFile = file.resolveSibling(file.getFileName() + ".idx");
+    }
+
+    public synchronized String get(String username) {
+        ensureOpen();
+        String hash = tail.get(username);
+        return hash != null ? hash : lookup(username);
+    }
+
+    public synchronized boolean contains(String username) { return get(username) != null; }
+
+    public synchronized int size() {
+        ensureOpen();
+        return indexedUsers + tailNew;
+    }
+
+    public synchronized boolean putIfAbsent(String username, String hash) throws IOException {
+        if (contains(username)) return false;
+        append(username, hash);
+        tail.put(username, hash);
+        tailNew++;
+        afterAppend();
+        return true;
+    }
+
+    public synchronized void put(String username, String hash) throws IOException {
+        boolean existed = contains(username);
+        append(username, hash);
+        tail.put(username, hash);
+        if (existed) staleRecords++;
+        else tailNew++;
+        if (staleRecords > Math.max(MIN_COMPACT_RECORDS, size())) compact();
+        else afterAppend();
+    }
+
+    // Rewrites the log with one line per user; the rename is atomic so readers see the old or new file, never half
+    public synchronized void compact() throws IOException {
+        Map<String, String> credentials = readAll();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(out),
+                    StandardCharsets.UTF_8));
+            for (Map.Entry<String, String> entry : credentials.entrySet())
+                writer.write(entry.getKey() + ":" + entry.getValue() + "\n");
+            writer.flush();
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        rebuildIndex();
+    }
+
+    private void ensureOpen() {
+        if (opened) return;
+        opened = true;
+        if (!Files.exists(file)) return;
+        try {
+            dropTornTail();
+            if (!mapIndex()) rebuildIndex();
+        } catch (IOException e) {
+            // Without an index every line is in the tail, which is still correct, just not fast
+            unmap();
+            try { readTail(0); } catch (IOException ignored) { }
+        }
+    }
+
+    // Maps the index if it still describes the start of the log, then reads whatever was appended after it
+    private boolean mapIndex() throws IOException {
+        if (!Files.exists(indexFile)) return false;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ);
+             FileChannel log = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) return false;
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt(0) != INDEX_MAGIC) return false;
+            long covered = mapped.getLong(4);
+            int slotCount = mapped.getInt(16);
+            if (covered > log.size() || covered > Integer.MAX_VALUE || mapped.getInt(12) != checksum(log, covered)
+                    || channel.size() != HEADER_BYTES + (long) slotCount * 8) return false;
+            index = mapped;
+            slots = slotCount;
+            indexedUsers = mapped.getInt(20);
+            staleRecords = mapped.getInt(24);
+            data = log.map(FileChannel.MapMode.READ_ONLY, 0, covered);
+        }
+        tail.clear();
+        tailNew = 0;
+        readTail(data.capacity());
+        return true;
+    }
+
+    private String lookup(String username) {
+        if (index == null) return null;
+        int h = hash(username);
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        for (int slot = h & (slots - 1); ; slot = (slot + 1) & (slots - 1)) {
+            long entry = index.getLong(HEADER_BYTES + slot * 8);
+            if (entry == 0) return null;
+            if ((int) (entry >>> 40) != (h >>> 8)) continue;
+            int offset = (int) ((entry & OFFSET_MASK) - 1);
+            if (matches(offset, name)) return line(offset + name.length + 1);
+        }
+    }
+
+    private boolean matches(int offset, byte[] name) {
+        if (offset + name.length >= data.capacity() || data.get(offset + name.length) != ':') return false;
+        for (int i = 0; i < name.length; i++) if (data.get(offset + i) != name[i]) return false;
+        return true;
+    }
+
+    private String line(int from) {
+        int to = from;
+        while (to < data.capacity() && data.get(to) != '\n') to++;
+        byte[] bytes = new byte[to - from];
+        data.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Parses lines from the given offset to the end of the log into the tail
+    private void readTail(long from) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            BufferedReader br = new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(channel.position(from)), StandardCharsets.UTF_8));
+            String line;
+            while ((line = br.readLine()) != null) {
+                int colon = line.indexOf(':');
+                if (colon <= 0) continue;
+                String username = line.substring(0, colon);
+                boolean existed = tail.containsKey(username) || lookup(username) != null;
+                tail.put(username, line.substring(colon + 1));
+                if (existed) staleRecords++;
+                else tailNew++;
+            }
+        }
+    }
+
+    private void afterAppend() throws IOException {
+        if (tail.size() > MAX_TAIL) rebuildIndex();
+    }
+
+    // Scans the whole log for the offset of each user's last line and writes a fresh table for it
+    private void rebuildIndex() throws IOException {
+        unmap();
+        Map<String, Long> offsets = new HashMap<>();
+        int lines = 0;
+        long covered;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            covered = channel.size();
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            long offset = 0;
+            long start = 0;
+            int b;
+            while ((b = in.read()) >= 0) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String text = line.toString(StandardCharsets.UTF_8);
+                line.reset();
+                int colon = text.indexOf(':');
+                if (colon > 0) {
+                    offsets.put(text.substring(0, colon), start);
+                    lines++;
+                }
+                start = offset;
+            }
+        }
+        int slotCount = Integer.highestOneBit(Math.max(16, offsets.size() * 2 - 1)) << 1;
+        ByteBuffer table = ByteBuffer.allocate(HEADER_BYTES + slotCount * 8);
+        for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+            int h = hash(entry.getKey());
+            int slot = h & (slotCount - 1);
+            while (table.getLong(HEADER_BYTES + slot * 8) != 0) slot = (slot + 1) & (slotCount - 1);
+            table.putLong(HEADER_BYTES + slot * 8, ((long) (h >>> 8) << 40) | (entry.getValue() + 1));
+        }
+        try (FileChannel log = FileChannel.open(file, StandardOpenOption.READ)) {
+            table.putInt(0, INDEX_MAGIC).putLong(4, covered).putInt(12, checksum(log, covered)).putInt(16, slotCount)
+                    .putInt(20, offsets.size()).putInt(24, lines - offsets.size());
+        }
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (table.hasRemaining()) out.write(table);
+            out.force(true);
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (!mapIndex()) throw new IOException("Credential index did not verify after rebuild: " + indexFile);
+    }
+
+    // Every user once, for compaction
+    private Map<String, String> readAll() throws IOException {
+        ensureOpen();
+        Map<String, String> credentials = new HashMap<>();
+        if (index != null) {
+            for (int slot = 0; slot < slots; slot++) {
+                long entry = index.getLong(HEADER_BYTES + slot * 8);
+                if (entry == 0) continue;
+                int offset = (int) ((entry & OFFSET_MASK) - 1);
+                String text = line(offset);
+                int colon = text.indexOf(':');
+                credentials.put(text.substring(0, colon), text.substring(colon + 1));
+            }
+        }
+        credentials.putAll(tail);
+        return credentials;
+    }
+
+    private void unmap() {
+        index = null;
+        data = null;
+        slots = 0;
+        indexedUsers = 0;
+        staleRecords = 0;
+        tail.clear();
+        tailNew = 0;
+    }
+
+    private static int hash(String username) {
+        int h = username.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int checksum(FileChannel log, long covered) throws IOException {
+        int length = (int) Math.min(CHECK_BYTES, covered);
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        while (bytes.hasRemaining()) {
+            if (log.read(bytes, covered - length + bytes.position()) < 0) throw new EOFException();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.array(), 0, length);
+        return (int) crc.getValue();
+    }
+
+    // A crash mid-append can leave a last line without its newline; cut it off so the next append starts clean
+    private void dropTornTail() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size == 0) return;
+            ByteBuffer one = ByteBuffer.allocate(1);
+            long end = size;
+            while (end > 0) {
+                one.clear();
+                channel.read(one, end - 1);
+                if (one.get(0) == '\n') break;
+                end--;
+            }
+            if (end < size) channel.truncate(end);
+        }
+    }
+
+    private void append(String username, String hash) throws IOException {
+        byte[] record = (username + ":" + hash + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining()) out.write(buffer);
+            out.force(false);
+        }
+    }
+}
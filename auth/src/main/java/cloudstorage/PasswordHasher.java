@@ -0,0 +1,10 @@
+package cloudstorage;
+
+interface PasswordHasher {
+    String hash(String password);
+
+    boolean matches(String password, String encoded);
+
+    // True when the stored hash was made by an older scheme or a weaker work factor than the current one
+    boolean needsUpgrade(String encoded);
+}
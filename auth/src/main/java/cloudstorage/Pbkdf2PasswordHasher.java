@@ -0,0 +1,86 @@
+package cloudstorage;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+// Encoded form is "pbkdf2-sha256$<iterations>$<salt hex>$<hash hex>"; bare 64-char hex is the legacy unsalted SHA-256
+class Pbkdf2PasswordHasher implements PasswordHasher {
+    static final int DEFAULT_ITERATIONS = 310_000;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) { throw new IllegalStateException(e); }
+    });
+    private static final ThreadLocal<SecretKeyFactory> PBKDF2 = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) { throw new IllegalStateException(e); }
+    });
+
+    private final int iterations;
+
+    public Pbkdf2PasswordHasher() { this(Integer.getInteger("cloudstorage.pbkdf2.iterations", DEFAULT_ITERATIONS)); }
+
+    public Pbkdf2PasswordHasher(int iterations) {
+        if (iterations < 1) throw new IllegalArgumentException("iterations must be positive");
+        this.iterations = iterations;
+    }
+
+    public int getIterations() { return iterations; }
+
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return PREFIX + iterations + "$" + Hex.encode(salt) + "$" + Hex.encode(derive(password, salt, iterations));
+    }
+
+    public boolean matches(String password, String encoded) {
+        if (encoded == null) return false;
+        if (!encoded.startsWith(PREFIX)) return MessageDigest.isEqual(legacyHash(password), encoded.getBytes());
+        String[] parts = encoded.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) return false;
+        try {
+            byte[] expected = Hex.decode(parts[2]);
+            byte[] actual = derive(password, Hex.decode(parts[1]), Integer.parseInt(parts[0]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) { return false; }
+    }
+
+    public boolean needsUpgrade(String encoded) {
+        if (!encoded.startsWith(PREFIX)) return true;
+        int end = encoded.indexOf('$', PREFIX.length());
+        try {
+            return Integer.parseInt(encoded.substring(PREFIX.length(), end)) < iterations;
+        } catch (RuntimeException e) { return true; }
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        char[] chars = password.toCharArray();
+        PBEKeySpec spec = new PBEKeySpec(chars, salt, iterations, KEY_BITS);
+        try {
+            return PBKDF2.get().generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    // Matches the original UserAuthSystem.hashPassword output, as hex bytes, so old entries still verify
+    private static byte[] legacyHash(String password) {
+        MessageDigest md = SHA256.get();
+        md.reset();
+        return Hex.encode(md.digest(password.getBytes())).getBytes();
+    }
+}
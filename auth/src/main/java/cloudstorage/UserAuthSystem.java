@@ -0,0 +1,50 @@
+package cloudstorage;
+
+import java.io.IOException;
+
+class UserAuthSystem {
+    private static final String USER_DATA_FILE = "users_data.txt";
+    private final CredentialStore userCredentials;
+    private final PasswordHasher hasher;
+
+    public UserAuthSystem() { this(new CredentialStore(USER_DATA_FILE), new Pbkdf2PasswordHasher()); }
+
+    UserAuthSystem(CredentialStore userCredentials, PasswordHasher hasher) {
+        this.userCredentials = userCredentials;
+        this.hasher = hasher;
+    }
+
+    // Refused registrations and logins count as failures in the metrics
+    public boolean registerUser(String username, String password) {
+        long start = Metrics.REGISTER.start();
+        boolean registered = register(username, password);
+        if (registered) Metrics.REGISTER.end(start, 0, username);
+        else Metrics.REGISTER.fail(start, username);
+        return registered;
+    }
+
+    public boolean authenticateUser(String username, String password) {
+        long start = Metrics.LOGIN.start();
+        boolean authenticated = authenticate(username, password);
+        if (authenticated) Metrics.LOGIN.end(start, 0, username);
+        else Metrics.LOGIN.fail(start, username);
+        return authenticated;
+    }
+
+    private boolean register(String username, String password) {
+        if (userCredentials.contains(username)) return false;
+        try {
+            if (!userCredentials.putIfAbsent(username, hasher.hash(password))) return false;
+        } catch (IOException e) { return false; }
+        return true;
+    }
+
+    private boolean authenticate(String username, String password) {
+        String storedHash = userCredentials.get(username);
+        if (storedHash == null || !hasher.matches(password, storedHash)) return false;
+        if (hasher.needsUpgrade(storedHash)) {
+            try { userCredentials.put(username, hasher.hash(password)); } catch (IOException e) { }
+        }
+        return true;
+    }
+}
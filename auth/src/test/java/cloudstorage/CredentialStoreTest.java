@@ -0,0 +1,97 @@
+package cloudstorage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialStoreTest {
+    @TempDir
+    Path dir;
+
+    private CredentialStore open() { return new CredentialStore(dir.resolve("users_data.txt").toString()); }
+
+    // More users than the tail holds, so the reopened store answers from the mapped index
+    @Test
+    void usersSurviveReopen() throws IOException {
+        CredentialStore store = open();
+        for (int i = 0; i < 3000; i++) assertTrue(store.putIfAbsent("user" + i, "hash" + i));
+        assertFalse(store.putIfAbsent("user7", "other"));
+        assertTrue(Files.exists(dir.resolve("users_data.txt.idx")));
+
+        CredentialStore reopened = open();
+        assertEquals(3000, reopened.size());
+        for (int i = 0; i < 3000; i++) assertEquals("hash" + i, reopened.get("user" + i));
+        assertNull(reopened.get("nobody"));
+    }
+
+    @Test
+    void lastLineWins() throws IOException {
+        CredentialStore store = open();
+        for (int i = 0; i < 2000; i++) store.putIfAbsent("user" + i, "old" + i);
+        store.put("user5", "new5");
+        store.put("user1999", "new1999");
+        assertEquals("new5", store.get("user5"));
+
+        CredentialStore reopened = open();
+        assertEquals(2000, reopened.size());
+        assertEquals("new5", reopened.get("user5"));
+        assertEquals("new1999", reopened.get("user1999"));
+        assertEquals("old6", reopened.get("user6"));
+    }
+
+    // A crash mid-append leaves a line without its newline; it is dropped and the next append starts clean
+    @Test
+    void tornLastLineIsDropped() throws IOException {
+        Path file = dir.resolve("users_data.txt");
+        CredentialStore store = open();
+        store.putIfAbsent("alice", "a");
+        store.putIfAbsent("bob", "b");
+        Files.write(file, "eve:half".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        CredentialStore reopened = open();
+        assertNull(reopened.get("eve"));
+        assertEquals(2, reopened.size());
+        assertTrue(reopened.putIfAbsent("eve", "e"));
+        assertEquals("alice:a\nbob:b\neve:e\n", Files.readString(file, StandardCharsets.UTF_8));
+        assertEquals("e", open().get("eve"));
+    }
+
+    // The index records a checksum of the log it covers, so a log replaced behind its back is re-indexed
+    @Test
+    void logRewrittenBehindIndexIsReindexed() throws IOException {
+        Path file = dir.resolve("users_data.txt");
+        CredentialStore store = open();
+        for (int i = 0; i < 2000; i++) store.putIfAbsent("user" + i, "hash" + i);
+        store.compact();
+
+        StringBuilder rewritten = new StringBuilder();
+        for (int i = 1999; i >= 0; i--) rewritten.append("user").append(i).append(":other").append(i).append('\n');
+        Files.writeString(file, rewritten, StandardCharsets.UTF_8);
+
+        CredentialStore reopened = open();
+        assertEquals(2000, reopened.size());
+        for (int i = 0; i < 2000; i += 97) assertEquals("other" + i, reopened.get("user" + i));
+    }
+
+    @Test
+    void compactionKeepsOneLinePerUser() throws IOException {
+        Path file = dir.resolve("users_data.txt");
+        CredentialStore store = open();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 100; i++) store.put("user" + i, "round" + round);
+        }
+        store.compact();
+        assertEquals(100, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+
+        CredentialStore reopened = open();
+        assertEquals(100, reopened.size());
+        for (int i = 0; i < 100; i++) assertEquals("round2", reopened.get("user" + i));
+    }
+}
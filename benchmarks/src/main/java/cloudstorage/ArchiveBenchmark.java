@@ -0,0 +1,63 @@
+package cloudstorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Exporting a store of fileCount text files of fileSize bytes to a discarding channel, so only reading and
+// compression are measured. Run with -Dcloudstorage.archive.threads=1 for the single-threaded baseline.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ArchiveBenchmark {
+    @Param({ "1000" })
+    public int fileCount;
+
+    @Param({ "16384", "1048576" })
+    public int fileSize;
+
+    @Param({ "zip", "tgz", "tar" })
+    public String format;
+
+    private final String userName = "jmh-archive";
+    private DownloadFile user;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        user = BenchmarkUsers.open(userName);
+        for (int i = 0; i < fileCount; i++) {
+            byte[] data = BenchmarkUsers.text(fileSize, i).getBytes();
+            user.upload("file-" + i + ".txt", Channels.newChannel(new ByteArrayInputStream(data)), data.length,
+                    ProgressListener.NONE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException { BenchmarkUsers.remove(userName); }
+
+    @Benchmark
+    public long export() throws IOException {
+        long[] written = { 0 };
+        WritableByteChannel sink = new WritableByteChannel() {
+            public int write(ByteBuffer src) {
+                int n = src.remaining();
+                src.position(src.limit());
+                written[0] += n;
+                return n;
+            }
+
+            public boolean isOpen() { return true; }
+
+            public void close() { }
+        };
+        user.exportArchive("", ArchiveWriter.formatOf(format), sink, ProgressListener.NONE, () -> false);
+        return written[0];
+    }
+}
@@ -0,0 +1,48 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Password hashing and login cost per PBKDF2 work factor, against a credential store holding userCount users.
+// PasswordHashBenchmark answers the related question of which work factor fits a login budget.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AuthBenchmark {
+    @Param({ "10000", "100000", "310000" })
+    public int iterations;
+
+    @Param({ "10", "10000" })
+    public int userCount;
+
+    private Path dir;
+    private PasswordHasher hasher;
+    private UserAuthSystem auth;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("jmh-auth");
+        hasher = new Pbkdf2PasswordHasher(iterations);
+        CredentialStore credentials = new CredentialStore(dir.resolve("users_data.txt").toString());
+        // Salts would differ per user in real use, but verification cost does not depend on them
+        String encoded = hasher.hash("Benchmark!1");
+        for (int i = 0; i < userCount; i++) credentials.putIfAbsent("user" + i, encoded);
+        auth = new UserAuthSystem(credentials, hasher);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException { BenchmarkUsers.deleteTree(dir); }
+
+    @Benchmark
+    public String hashPassword() { return hasher.hash("Benchmark!1"); }
+
+    @Benchmark
+    public boolean authenticateUser() { return auth.authenticateUser("user" + (next++ % userCount), "Benchmark!1"); }
+}
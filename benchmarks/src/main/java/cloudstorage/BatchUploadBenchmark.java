@@ -0,0 +1,66 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Importing a local folder of fileCount files of fileSize bytes, one upload() after another or through
+// UploadFile.uploadAll. Every measured call starts from an empty store.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class BatchUploadBenchmark {
+    @Param({ "1000", "10000" })
+    public int fileCount;
+
+    @Param({ "1024", "16384" })
+    public int fileSize;
+
+    @Param({ "sequential", "batch" })
+    public String mode;
+
+    private final String userName = "jmh-batch";
+    private DownloadFile user;
+    private Path folder;
+    private Map<String, Path> sources;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("jmh-batch");
+        for (int i = 0; i < fileCount; i++) {
+            Files.writeString(folder.resolve("file-" + i + ".txt"), BenchmarkUsers.text(fileSize, i));
+        }
+        sources = UploadFile.collect(List.of(folder));
+    }
+
+    @Setup(Level.Iteration)
+    public void empty() throws IOException { user = BenchmarkUsers.open(userName); }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkUsers.remove(userName);
+        BenchmarkUsers.deleteTree(folder);
+    }
+
+    @Benchmark
+    public int upload() throws IOException {
+        if (mode.equals("batch")) return user.uploadAll(sources, ProgressListener.NONE, () -> false).succeeded;
+        int uploaded = 0;
+        for (Map.Entry<String, Path> source : sources.entrySet()) {
+            try (FileChannel in = FileChannel.open(source.getValue(), StandardOpenOption.READ)) {
+                user.upload(source.getKey(), in, in.size(), ProgressListener.NONE);
+            }
+            uploaded++;
+        }
+        return uploaded;
+    }
+}
@@ -0,0 +1,58 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Throwaway users for the storage benchmarks, created under the working directory like real ones
+class BenchmarkUsers {
+    private static final String[] DIRECTORIES = { "versions/", "journal/" };
+    private static final String[] FILES = { "catalogs/%s.snapshot", "catalogs/%s.log", "search/%s.index", "search/%s.log",
+            "journal/%s.wal" };
+
+    static DownloadFile open(String userName) throws IOException {
+        remove(userName);
+        DownloadFile user = new DownloadFile();
+        user.setUserName(userName);
+        return user;
+    }
+
+    static void remove(String userName) throws IOException {
+        FileCatalog.unload(userName);
+        SearchIndex.unload(userName);
+        Journal.unload(userName);
+        for (String dir : DIRECTORIES) deleteTree(Paths.get(dir, userName));
+        for (Path root : ShardedPlacement.shared().roots()) deleteTree(root.resolve(userName));
+        for (String file : FILES) Files.deleteIfExists(Paths.get(String.format(file, userName)));
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) Files.delete(path);
+        }
+    }
+
+    // Printable text with word breaks, so the search index tokenizes it the way it would a real document
+    static String text(int bytes, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(bytes);
+        while (text.length() < bytes) {
+            int word = 2 + random.nextInt(9);
+            for (int i = 0; i < word && text.length() < bytes; i++) text.append((char) ('a' + random.nextInt(26)));
+            if (text.length() < bytes) text.append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        return text.toString();
+    }
+
+    // Where the storage looks for a file, for benchmarks that lay files down directly
+    static Path path(String userName, String name) throws IOException {
+        Path path = ShardedPlacement.shared().locate(userName, name);
+        Files.createDirectories(path.getParent());
+        return path;
+    }
+}
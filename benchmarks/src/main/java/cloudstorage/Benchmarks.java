@@ -0,0 +1,23 @@
+package cloudstorage;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+// Usage: java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regex]
+// JMH's own launcher, except that results go to jmh-result-<timestamp>.json unless -rf/-rff are given,
+// so every run leaves a file that can be compared with an earlier one (JMH Visualizer, jq, a spreadsheet).
+// Run it from a scratch directory: the storage benchmarks create and remove their users there.
+class Benchmarks {
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) options.addAll(0, List.of("-rf", "json"));
+        if (!options.contains("-rff")) {
+            String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+            options.addAll(0, List.of("-rff", "jmh-result-" + stamp + ".json"));
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,50 @@
+package cloudstorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// "Delete All Files" on a store of fileCount files of fileSize bytes. Every measured call starts from a full
+// store uploaded through the normal path, so catalog, search index and version history all have work to do.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class BulkDeleteBenchmark {
+    @Param({ "100", "1000", "10000" })
+    public int fileCount;
+
+    @Param({ "1024", "65536" })
+    public int fileSize;
+
+    private final String userName = "jmh-delete";
+    private DownloadFile user;
+    private byte[] data;
+    private List<String> names;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        user = BenchmarkUsers.open(userName);
+        data = BenchmarkUsers.text(fileSize, 0).getBytes();
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() throws IOException {
+        for (int i = 0; i < fileCount; i++) {
+            user.upload("file-" + i + ".txt", Channels.newChannel(new ByteArrayInputStream(data)), data.length,
+                    ProgressListener.NONE);
+        }
+        names = user.list();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException { BenchmarkUsers.remove(userName); }
+
+    @Benchmark
+    public BulkDeleter.Result deleteFiles() { return user.deleteFiles(names, ProgressListener.NONE, () -> false); }
+}
@@ -0,0 +1,55 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Logging in as a user with fileCount files: UploadFile.loadUserFiles either reads the catalog snapshot and log,
+// or rescans the directory when there is no snapshot (first start, or a catalog from an older version)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CatalogLoadBenchmark {
+    @Param({ "100", "1000", "10000" })
+    public int fileCount;
+
+    @Param({ "snapshot", "rescan" })
+    public String source;
+
+    private final String userName = "jmh-catalog";
+    private final Path snapshot = Paths.get("catalogs", userName + ".snapshot");
+    private final Path log = Paths.get("catalogs", userName + ".log");
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkUsers.open(userName);
+        byte[] data = BenchmarkUsers.text(1024, 0).getBytes();
+        for (int i = 0; i < fileCount; i++) Files.write(BenchmarkUsers.path(userName, "file-" + i + ".txt"), data);
+    }
+
+    @Setup(Level.Invocation)
+    public void forget() throws IOException {
+        FileCatalog.unload(userName);
+        SearchIndex.unload(userName);
+        if ("rescan".equals(source)) {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(log);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException { BenchmarkUsers.remove(userName); }
+
+    @Benchmark
+    public int loadUserFiles() {
+        DownloadFile user = new DownloadFile();
+        user.setUserName(userName);
+        return user.files.size();
+    }
+}
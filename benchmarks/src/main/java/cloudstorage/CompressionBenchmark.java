@@ -0,0 +1,103 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Usage: java -cp benchmarks/target/benchmarks.jar cloudstorage.CompressionBenchmark [sampleFile]
+// Prints deflate ratio and compress/decompress throughput per level, in memory, so disk speed does not skew it.
+// Without a file it uses generated log lines, which is what most stored content looks like.
+class CompressionBenchmark {
+    private static final int[] LEVELS = { 1, 3, 6, 9 };
+    private static final int SYNTHETIC_BYTES = 16 << 20;
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException, DataFormatException {
+        byte[] data = args.length > 0 ? Files.readAllBytes(Paths.get(args[0])) : syntheticLog();
+        System.out.printf("Input %s, %.1f MB, sample check says %s%n%n", args.length > 0 ? args[0] : "synthetic log",
+                data.length / 1048576.0, Compression.worthCompressing(ByteBuffer.wrap(data, 0,
+                        Math.min(data.length, 64 << 10))) ? "compress" : "store raw");
+        System.out.printf("%-6s %10s %14s %16s%n", "level", "ratio", "compress MB/s", "decompress MB/s");
+        for (int level : LEVELS) {
+            byte[] compressed = compress(data, level);
+            double compressMs = median(() -> compress(data, level));
+            double decompressMs = median(() -> decompress(compressed, data.length));
+            double mb = data.length / 1048576.0;
+            System.out.printf("%-6d %10.3f %14.1f %16.1f%n", level, (double) compressed.length / data.length,
+                    mb / (compressMs / 1000), mb / (decompressMs / 1000));
+        }
+        System.out.println();
+        System.out.println("Set the level with -Dcloudstorage.compress.level=<n> (default " + Compression.DEFAULT_LEVEL + ")");
+    }
+
+    interface Run {
+        void run() throws DataFormatException;
+    }
+
+    private static double median(Run run) throws DataFormatException {
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < warmupEnd) run.run();
+        double[] samples = new double[MEASURED_ROUNDS];
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            run.run();
+            samples[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(samples);
+        return samples[MEASURED_ROUNDS / 2];
+    }
+
+    private static byte[] compress(byte[] data, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] out = new byte[data.length + 1024];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == out.length) out = Arrays.copyOf(out, out.length * 2);
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return Arrays.copyOf(out, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void decompress(byte[] compressed, int size) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] out = new byte[size];
+            int length = 0;
+            while (!inflater.finished() && length < size) length += inflater.inflate(out, length, size - length);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] syntheticLog() {
+        String[] levels = { "INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR" };
+        String[] messages = { "upload completed", "download served from cache", "session opened",
+                "catalog compacted", "slow disk write", "checksum mismatch, retrying" };
+        Random random = new Random(42);
+        StringBuilder log = new StringBuilder(SYNTHETIC_BYTES + 200);
+        long time = 1_700_000_000_000L;
+        while (log.length() < SYNTHETIC_BYTES) {
+            time += random.nextInt(2000);
+            log.append(time).append(' ').append(levels[random.nextInt(levels.length)])
+                    .append(" [storage-worker] user=user").append(random.nextInt(500))
+                    .append(" file=report_").append(random.nextInt(100000)).append(".txt ")
+                    .append(messages[random.nextInt(messages.length)])
+                    .append(" bytes=").append(random.nextInt(1 << 20)).append('\n');
+        }
+        return log.substring(0, SYNTHETIC_BYTES).getBytes();
+    }
+}
@@ -0,0 +1,66 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Saving and opening a file through the same calls the GUI makes, rotating over fileCount files of fileSize bytes.
+// Each save flips one character, so re-uploads go through the version delta path with a real edit.
+// Opens go through the shared content cache, which stops fitting everything once fileCount x fileSize passes 32 MB.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ContentBenchmark {
+    @Param({ "1024", "65536", "1048576" })
+    public int fileSize;
+
+    @Param({ "1", "32", "512" })
+    public int fileCount;
+
+    private final String userName = "jmh-content";
+    private DownloadFile user;
+    private String[] names;
+    private String[][] contents;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        user = BenchmarkUsers.open(userName);
+        names = new String[fileCount];
+        contents = new String[2][];
+        contents[0] = new String[fileCount];
+        contents[1] = new String[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            names[i] = "file-" + i + ".txt";
+            String text = BenchmarkUsers.text(fileSize, i);
+            contents[0][i] = text;
+            char[] edited = text.toCharArray();
+            edited[fileSize / 2] = edited[fileSize / 2] == 'x' ? 'y' : 'x';
+            contents[1][i] = new String(edited);
+            user.setFileName(names[i]);
+            user.setContentGUI(text);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        user.cache.invalidateAll(userName, user.list());
+        BenchmarkUsers.remove(userName);
+    }
+
+    @Benchmark
+    public void setContentGUI() {
+        int i = next++ % fileCount;
+        user.setFileName(names[i]);
+        user.setContentGUI(contents[(next / fileCount) & 1][i]);
+    }
+
+    @Benchmark
+    public String getContentGUI() {
+        user.setFileName(names[next++ % fileCount]);
+        return user.getContentGUI();
+    }
+}
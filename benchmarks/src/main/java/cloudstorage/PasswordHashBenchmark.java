@@ -0,0 +1,55 @@
+package cloudstorage;
+
+import java.util.Arrays;
+
+// Usage: java -cp benchmarks/target/benchmarks.jar cloudstorage.PasswordHashBenchmark [latencyBudgetMs] [peakLoginsPerSecond]
+// Prints verify latency per PBKDF2 work factor and recommends the largest one that fits the login budget.
+class PasswordHashBenchmark {
+    private static final int[] WORK_FACTORS = { 10_000, 50_000, 100_000, 210_000, 310_000, 600_000, 1_000_000 };
+    private static final int WARMUP_ROUNDS = 5;
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final int MEASURED_ROUNDS = 20;
+    // Above this share of CPU in use, login requests start queueing behind each other
+    private static final double MAX_UTILIZATION = 0.7;
+
+    public static void main(String[] args) {
+        long budgetMs = args.length > 0 ? Long.parseLong(args[0]) : 250;
+        double peakRate = args.length > 1 ? Double.parseDouble(args[1]) : 20;
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("Budget %d ms per login, peak %.1f logins/s, %d cores%n%n", budgetMs, peakRate, cores);
+        System.out.printf("%-12s %10s %10s %14s %12s%n", "iterations", "p50 ms", "p99 ms", "max logins/s", "fits");
+
+        PasswordHasher legacy = new Pbkdf2PasswordHasher(1);
+        String legacyHash = "2bb80d537b1da3e38bd30361aa855686bde0eacd7162fef6a25fe97bf527a25b";  // SHA-256 of "secret"
+        double[] legacyTimes = measure(() -> legacy.matches("secret", legacyHash));
+        System.out.printf("%-12s %10.3f %10.3f %14s %12s%n", "legacy", legacyTimes[0], legacyTimes[1], "-", "-");
+
+        int recommended = -1;
+        for (int iterations : WORK_FACTORS) {
+            Pbkdf2PasswordHasher hasher = new Pbkdf2PasswordHasher(iterations);
+            String encoded = hasher.hash("Benchmark!1");
+            double[] times = measure(() -> hasher.matches("Benchmark!1", encoded));
+            double capacity = cores * 1000.0 / times[0];
+            boolean fits = times[1] <= budgetMs && peakRate <= capacity * MAX_UTILIZATION;
+            if (fits) recommended = iterations;
+            System.out.printf("%-12d %10.3f %10.3f %14.1f %12s%n", iterations, times[0], times[1], capacity, fits ? "yes" : "no");
+        }
+        System.out.println();
+        if (recommended > 0) System.out.println("Recommended: -Dcloudstorage.pbkdf2.iterations=" + recommended);
+        else System.out.println("No work factor fits; raise the budget or add cores");
+    }
+
+    // Returns { p50, p99 } in milliseconds
+    private static double[] measure(Runnable verify) {
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        for (int i = 0; i < WARMUP_ROUNDS || System.nanoTime() < warmupEnd; i++) verify.run();
+        double[] samples = new double[MEASURED_ROUNDS];
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            verify.run();
+            samples[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(samples);
+        return new double[] { samples[MEASURED_ROUNDS / 2], samples[(int) (MEASURED_ROUNDS * 0.99)] };
+    }
+}
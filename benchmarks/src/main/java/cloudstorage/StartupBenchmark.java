@@ -0,0 +1,72 @@
+package cloudstorage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Time to interactive after a login, without Swing: a fresh credential store finds the user among userCount others
+// and a fresh session opens storage holding fileCount files. The catalog itself is read later, off the UI thread,
+// so this should stay flat across both parameters; CatalogLoadBenchmark measures that deferred load.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StartupBenchmark {
+    @Param({ "10", "100000" })
+    public int userCount;
+
+    @Param({ "10", "10000" })
+    public int fileCount;
+
+    private final String userName = "jmh-startup";
+    private Path dir;
+    private String credentialFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("jmh-startup");
+        credentialFile = dir.resolve("users_data.txt").toString();
+        String hash = new Pbkdf2PasswordHasher(1000).hash("Benchmark!1");
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("users_data.txt"), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < userCount; i++) out.write("user" + i + ":" + hash + "\n");
+            out.write(userName + ":" + hash + "\n");
+        }
+        // Builds the credential index and the catalog snapshot, as any earlier run would have
+        new CredentialStore(credentialFile).get(userName);
+        BenchmarkUsers.open(userName);
+        byte[] data = BenchmarkUsers.text(1024, 0).getBytes();
+        for (int i = 0; i < fileCount; i++) Files.write(BenchmarkUsers.path(userName, "file-" + i + ".txt"), data);
+        FileCatalog.unload(userName);
+        DownloadFile user = new DownloadFile();
+        user.setUserName(userName);
+        user.files.checkpoint();
+    }
+
+    // Every login in a new process opens and recovers the journal too, so it is forgotten along with the indexes
+    @Setup(Level.Invocation)
+    public void forget() {
+        Journal.unload(userName);
+        FileCatalog.unload(userName);
+        SearchIndex.unload(userName);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkUsers.remove(userName);
+        BenchmarkUsers.deleteTree(dir);
+    }
+
+    @Benchmark
+    public DownloadFile login() {
+        if (new CredentialStore(credentialFile).get(userName) == null) throw new IllegalStateException("unknown user");
+        DownloadFile user = new DownloadFile();
+        user.setUserName(userName);
+        return user;
+    }
+}
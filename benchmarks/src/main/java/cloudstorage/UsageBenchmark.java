@@ -0,0 +1,76 @@
+package cloudstorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// The ten heaviest of userCount users, none of them open, each holding fileCount files. counters reads the totals
+// kept in each catalog; walk lists every user's directories and adds up the file sizes, as a report had to before.
+// The totals are re-read on every call, as when the cache between MBean reads has just expired.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dcloudstorage.usage.refreshSeconds=0")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UsageBenchmark {
+    @Param({ "10", "100" })
+    public int userCount;
+
+    @Param({ "100", "1000" })
+    public int fileCount;
+
+    @Param({ "counters", "walk" })
+    public String mode;
+
+    private final List<String> users = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        for (int u = 0; u < userCount; u++) {
+            String userName = "jmh-usage-" + u;
+            users.add(userName);
+            BenchmarkUsers.open(userName);
+            byte[] data = new byte[64 + u];
+            for (int i = 0; i < fileCount; i++) Files.write(BenchmarkUsers.path(userName, "file-" + i + ".bin"), data);
+            FileCatalog.unload(userName);
+            DownloadFile user = new DownloadFile();
+            user.setUserName(userName);
+            user.files.checkpoint();
+            FileCatalog.unload(userName);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (String userName : users) BenchmarkUsers.remove(userName);
+    }
+
+    @Benchmark
+    public List<Usage> heaviest() {
+        if ("counters".equals(mode)) return FileCatalog.heaviest(Usage.TOP_REPORTED);
+        PriorityQueue<Usage> top = new PriorityQueue<>(Comparator.comparingLong(Usage::bytes));
+        for (String userName : users) {
+            long bytes = 0;
+            long files = 0;
+            for (Path directory : ShardedPlacement.shared().directories(userName)) {
+                File[] listed = directory.toFile().listFiles();
+                if (listed == null) continue;
+                for (File file : listed) {
+                    bytes += file.length();
+                    files++;
+                }
+            }
+            top.add(new Usage(userName, bytes, files));
+            if (top.size() > Usage.TOP_REPORTED) top.poll();
+        }
+        return new ArrayList<>(top);
+    }
+}
@@ -0,0 +1,216 @@
+package cloudstorage;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Reads a ZIP, TAR or gzipped TAR archive from a stream one entry at a time, telling them apart by their first bytes.
+// Only regular files are returned; directories, links and the like are skipped. Nothing is held beyond the current
+// read, so an archive of any size streams through. TAR long names are taken from pax and GNU headers.
+class ArchiveReader implements Closeable {
+    private static final int BUFFER = 64 << 10;
+    // pax and GNU long-name headers are read whole; anything larger is not a name
+    private static final int MAX_EXTENDED_HEADER = 1 << 20;
+
+    static final class Entry {
+        final String name;
+        // -1 when the archive does not say before the content
+        final long size;
+        final long modified;
+
+        Entry(String name, long size, long modified) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private final InputStream in;
+    private final ZipInputStream zip;
+    // Left of the current TAR entry, then the padding to its next block
+    private long remaining = 0;
+    private long padding = 0;
+
+    ArchiveReader(ReadableByteChannel channel) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(Channels.newInputStream(channel), BUFFER);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == 'P' && second == 'K') {
+            zip = new ZipInputStream(buffered, StandardCharsets.UTF_8);
+            in = zip;
+        } else if (first == 0x1f && second == 0x8b) {
+            zip = null;
+            in = new BufferedInputStream(new GZIPInputStream(buffered, BUFFER), BUFFER);
+        } else {
+            zip = null;
+            in = buffered;
+        }
+    }
+
+    // The next file, or null at the end of the archive
+    public Entry next() throws IOException {
+        if (zip != null) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                if (!entry.isDirectory()) return new Entry(entry.getName(), entry.getSize(), entry.getTime());
+            }
+            return null;
+        }
+        skip(remaining + padding);
+        remaining = padding = 0;
+        byte[] header = new byte[512];
+        String longName = null;
+        long longSize = -1;
+        while (true) {
+            if (!readBlock(header) || isZero(header)) return null;
+            if (checksum(header) != number(header, 148, 8)) throw new IOException("Not a ZIP or TAR archive");
+            long size = number(header, 124, 12);
+            long padded = size + (512 - size % 512) % 512;
+            byte type = header[156];
+            if (type == 'x' || type == 'L') {
+                if (size > MAX_EXTENDED_HEADER) throw new IOException("Oversized TAR extended header");
+                byte[] data = in.readNBytes((int) padded);
+                if (data.length < padded) throw new EOFException("Archive ended inside a header");
+                if (type == 'L') {
+                    longName = cString(data, 0, (int) size);
+                } else {
+                    Map<String, String> records = paxRecords(data, (int) size);
+                    if (records.containsKey("path")) longName = records.get("path");
+                    if (records.containsKey("size")) longSize = parseSize(records.get("size"));
+                }
+                continue;
+            }
+            String name = longName != null ? longName : ustarName(header);
+            if (longSize >= 0) {
+                size = longSize;
+                padded = size + (512 - size % 512) % 512;
+            }
+            longName = null;
+            longSize = -1;
+            if (type == '0' || type == 0 || type == '7') {
+                remaining = size;
+                padding = padded - size;
+                return new Entry(name, size, number(header, 136, 12) * 1000);
+            }
+            skip(padded);
+        }
+    }
+
+    // The current entry's content; closing it leaves the archive open
+    public InputStream content() {
+        if (zip != null) {
+            return new FilterInputStream(zip) {
+                public void close() { }
+            };
+        }
+        return new InputStream() {
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining == 0) return -1;
+                int n = in.read(b, off, (int) Math.min(len, remaining));
+                if (n < 0) throw new EOFException("Archive ended inside a file");
+                remaining -= n;
+                return n;
+            }
+        };
+    }
+
+    public void close() throws IOException { in.close(); }
+
+    private boolean readBlock(byte[] block) throws IOException {
+        int n = in.readNBytes(block, 0, block.length);
+        if (n == 0) return false;
+        if (n < block.length) throw new EOFException("Archive is cut short, or not a ZIP or TAR archive");
+        return true;
+    }
+
+    private void skip(long bytes) throws IOException {
+        while (bytes > 0) {
+            long n = in.skip(bytes);
+            if (n <= 0) {
+                if (in.read() < 0) throw new EOFException("Archive ended inside a file");
+                n = 1;
+            }
+            bytes -= n;
+        }
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) if (b != 0) return false;
+        return true;
+    }
+
+    // Header bytes summed with the checksum field counted as spaces
+    private static long checksum(byte[] header) {
+        long sum = 0;
+        for (int i = 0; i < header.length; i++) sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        return sum;
+    }
+
+    // Octal, or big-endian base-256 when the top bit of the first byte is set
+    private static long number(byte[] header, int offset, int length) {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7F;
+            for (int i = 1; i < length; i++) value = value << 8 | (header[offset + i] & 0xFF);
+            return value;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b >= '0' && b <= '7') value = value * 8 + (b - '0');
+            else if (b != ' ' || value != 0) break;
+        }
+        return value;
+    }
+
+    private static String ustarName(byte[] header) {
+        String name = cString(header, 0, 100);
+        if (header[257] != 'u' || header[258] != 's' || header[259] != 't' || header[260] != 'a' || header[261] != 'r')
+            return name;
+        String prefix = cString(header, 345, 155);
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    private static String cString(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) end++;
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    // Records are "<length> <key>=<value>\n"
+    private static Map<String, String> paxRecords(byte[] data, int size) throws IOException {
+        Map<String, String> records = new HashMap<>();
+        int at = 0;
+        while (at < size) {
+            int space = at;
+            while (space < size && data[space] != ' ') space++;
+            int length;
+            try {
+                length = Integer.parseInt(new String(data, at, space - at, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) { throw new IOException("Malformed pax header"); }
+            if (length <= 0 || at + length > size) throw new IOException("Malformed pax header");
+            String record = new String(data, space + 1, at + length - space - 2, StandardCharsets.UTF_8);
+            int equals = record.indexOf('=');
+            if (equals > 0) records.put(record.substring(0, equals), record.substring(equals + 1));
+            at += length;
+        }
+        return records;
+    }
+
+    private static long parseSize(String value) throws IOException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) { throw new IOException("Malformed pax size"); }
+    }
+}
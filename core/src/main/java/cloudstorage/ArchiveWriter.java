@@ -0,0 +1,435 @@
+package cloudstorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Streams files into a ZIP, TAR or gzipped TAR archive on a channel in constant memory. Content is cut into CHUNK
+// pieces that are deflated in parallel, each primed with the 32 KB before it as pigz does, and written back in order
+// by one writer thread, so each ZIP entry, or the whole .tar.gz, is still one ordinary deflate stream. Chunks in
+// flight are bounded by BUFFER_BUDGET. ZIP entries end in a data descriptor, since sizes are only known once written,
+// and switch to ZIP64 records past 4 GB; the central directory is kept in memory, about 80 bytes per entry.
+class ArchiveWriter implements Closeable {
+    static final byte ZIP = 1;
+    static final byte TAR = 2;
+    static final byte TAR_GZ = 3;
+    private static final int CHUNK = 1 << 20;
+    private static final int WINDOW = 32 << 10;
+    private static final int FIRST_BUFFER = 8 << 10;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int BUFFER_BUDGET = 32 << 20;
+    private static final long POLL_MS = 50;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final long TAR_OCTAL_LIMIT = 077777777777L;
+    private static final byte[] USTAR = { 'u', 's', 't', 'a', 'r', 0, '0', '0' };
+    // Data descriptor follows, names are UTF-8
+    private static final short ZIP_FLAGS = 0x0808;
+    private static final short DEFLATED = 8;
+    private static final int THREADS = Integer.getInteger("cloudstorage.archive.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    // Run by the writer thread in the order they were queued
+    private interface Piece {
+        void write() throws Exception;
+    }
+
+    private static final Piece END = () -> { };
+
+    // Bytes on their way into the archive: one per ZIP entry, or one for a whole TAR
+    private final class Stream {
+        final boolean deflate;
+        final CRC32 crc = new CRC32();
+        long size = 0;
+        // Only touched by the writer thread
+        long compressed = 0;
+        long offset = 0;
+        private byte[] pending = new byte[FIRST_BUFFER];
+        private int filled = 0;
+        private byte[] window;
+
+        Stream(boolean deflate) { this.deflate = deflate; }
+
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            crc.update(bytes, offset, length);
+            size += length;
+            while (length > 0) {
+                if (filled == pending.length) {
+                    if (pending.length < CHUNK) pending = Arrays.copyOf(pending, Math.min(CHUNK, pending.length * 4));
+                    else flush(false);
+                }
+                int n = Math.min(length, pending.length - filled);
+                System.arraycopy(bytes, offset, pending, filled, n);
+                filled += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        void finish() throws IOException { flush(true); }
+
+        private void flush(boolean last) throws IOException {
+            byte[] input = pending;
+            int length = filled;
+            pending = new byte[FIRST_BUFFER];
+            filled = 0;
+            if (!deflate && length == 0) return;
+            acquire(length);
+            if (!deflate) {
+                enqueue(() -> {
+                    try { writeBytes(ByteBuffer.wrap(input, 0, length)); } finally { budget.release(length); }
+                });
+                return;
+            }
+            byte[] dictionary = window;
+            if (!last) window = Arrays.copyOfRange(input, length - WINDOW, length);
+            Future<byte[]> output = deflaters.submit(() -> deflate(input, length, dictionary, last));
+            enqueue(() -> {
+                try {
+                    byte[] bytes = output.get();
+                    writeBytes(ByteBuffer.wrap(bytes));
+                    compressed += bytes.length;
+                } finally {
+                    budget.release(length);
+                }
+            });
+        }
+    }
+
+    private final WritableByteChannel out;
+    private final byte format;
+    private final int level;
+    private final ExecutorService deflaters;
+    private final BlockingQueue<Piece> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Semaphore budget = new Semaphore(BUFFER_BUDGET);
+    private final Thread writer;
+    private final Stream tar;
+    // Writer thread only
+    private final ByteArrayOutputStream central = new ByteArrayOutputStream();
+    private long position = 0;
+    private long entries = 0;
+    private volatile Exception failure;
+    private boolean finished = false;
+
+    public ArchiveWriter(WritableByteChannel out, byte format) { this(out, format, Compression.DEFAULT_LEVEL); }
+
+    public ArchiveWriter(WritableByteChannel out, byte format, int level) {
+        if (format != ZIP && format != TAR && format != TAR_GZ) throw new IllegalArgumentException("Unknown archive format");
+        this.out = out;
+        this.format = format;
+        this.level = level;
+        deflaters = Executors.newFixedThreadPool(Math.max(1, THREADS), r -> {
+            Thread t = new Thread(r, "archive-deflate");
+            t.setDaemon(true);
+            return t;
+        });
+        writer = new Thread(this::drain, "archive-writer");
+        writer.setDaemon(true);
+        writer.start();
+        tar = format == ZIP ? null : new Stream(format == TAR_GZ);
+        if (format == TAR_GZ) {
+            // No name or time, OS unknown
+            byte[] header = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 255 };
+            queue.add(() -> writeBytes(ByteBuffer.wrap(header)));
+        }
+    }
+
+    static byte formatOf(String name) {
+        switch (name.toLowerCase()) {
+            case "zip": return ZIP;
+            case "tar": return TAR;
+            case "tgz":
+            case "tar.gz": return TAR_GZ;
+            default: throw new IllegalArgumentException("Unknown archive format: " + name);
+        }
+    }
+
+    static String extension(byte format) { return format == ZIP ? ".zip" : format == TAR ? ".tar" : ".tar.gz"; }
+
+    static String contentType(byte format) {
+        return format == ZIP ? "application/zip" : format == TAR ? "application/x-tar" : "application/gzip";
+    }
+
+    // True once writing to the channel has failed; every later call throws
+    public boolean hasFailed() { return failure != null; }
+
+    // Adds one file of the given size, read from content. If reading it fails part way the entry is still completed,
+    // cut short in a ZIP and zero-filled in a TAR, so the archive stays readable, and the error is rethrown.
+    public void add(String name, long modified, long size, ReadableByteChannel content) throws IOException {
+        check();
+        if (format == ZIP) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            int time = dosTime(modified);
+            Stream data = new Stream(true);
+            enqueue(() -> {
+                data.offset = position;
+                writeBytes(localHeader(encoded, time));
+            });
+            IOException readFailure = copy(content, size, data);
+            data.finish();
+            long crc = data.crc.getValue();
+            long length = data.size;
+            enqueue(() -> {
+                writeBytes(descriptor(crc, data.compressed, length));
+                central.writeBytes(centralHeader(encoded, time, crc, data.compressed, length, data.offset));
+                entries++;
+            });
+            if (readFailure != null) throw readFailure;
+        } else {
+            byte[] headers = tarHeaders(name, modified, size);
+            tar.write(headers, 0, headers.length);
+            long before = tar.size;
+            IOException readFailure = copy(content, size, tar);
+            long missing = size - (tar.size - before);
+            byte[] zeros = new byte[(int) Math.min(missing + 511, 64 << 10)];
+            for (long left = missing + (512 - size % 512) % 512; left > 0; left -= zeros.length) {
+                tar.write(zeros, 0, (int) Math.min(left, zeros.length));
+            }
+            if (readFailure != null) throw readFailure;
+        }
+    }
+
+    // Writes the trailer and waits until everything is on the channel
+    public void finish() throws IOException {
+        check();
+        if (format == ZIP) {
+            enqueue(this::writeCentralDirectory);
+        } else {
+            tar.write(new byte[1024], 0, 1024);
+            tar.finish();
+            if (format == TAR_GZ) {
+                ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                trailer.putInt((int) tar.crc.getValue()).putInt((int) tar.size).flip();
+                enqueue(() -> writeBytes(trailer));
+            }
+        }
+        enqueue(END);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while writing the archive");
+        }
+        check();
+        finished = true;
+    }
+
+    // Without finish() the archive is left incomplete
+    public void close() {
+        if (!finished) writer.interrupt();
+        deflaters.shutdownNow();
+    }
+
+    private IOException copy(ReadableByteChannel content, long size, Stream stream) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 << 10);
+        long left = size;
+        try {
+            while (left > 0) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), left));
+                int n = content.read(buffer);
+                if (n < 0) return new IOException("File ended " + left + " bytes early");
+                stream.write(buffer.array(), 0, n);
+                left -= n;
+            }
+            return null;
+        } catch (IOException e) {
+            check();
+            return e;
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Piece piece = queue.take();
+                if (piece == END) return;
+                piece.write();
+            }
+        } catch (ExecutionException e) {
+            failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (Exception e) {
+            failure = e;
+        }
+    }
+
+    private void check() throws IOException {
+        Exception cause = failure;
+        if (cause != null) throw new IOException("Could not write the archive", cause);
+    }
+
+    private void enqueue(Piece piece) throws IOException {
+        try {
+            while (!queue.offer(piece, POLL_MS, TimeUnit.MILLISECONDS)) check();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while writing the archive");
+        }
+    }
+
+    private void acquire(int bytes) throws IOException {
+        try {
+            while (!budget.tryAcquire(bytes, POLL_MS, TimeUnit.MILLISECONDS)) check();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while writing the archive");
+        }
+    }
+
+    private void writeBytes(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) position += out.write(bytes);
+    }
+
+    // Raw deflate of one chunk. All but the last end on a sync flush, at a byte boundary without closing the
+    // stream, so the chunks can be laid end to end.
+    private byte[] deflate(byte[] input, int length, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) deflater.setDictionary(dictionary);
+            deflater.setInput(input, 0, length);
+            if (last) deflater.finish();
+            byte[] output = new byte[length + (length >> 3) + 64];
+            int n = 0;
+            while (true) {
+                if (n == output.length) output = Arrays.copyOf(output, output.length * 2);
+                int room = output.length - n;
+                int wrote = deflater.deflate(output, n, room, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                n += wrote;
+                if (last ? deflater.finished() : wrote < room) return Arrays.copyOf(output, n);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static ByteBuffer little(int size) { return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN); }
+
+    private static ByteBuffer localHeader(byte[] name, int time) {
+        ByteBuffer header = little(30 + name.length);
+        header.putInt(0x04034b50).putShort((short) 20).putShort(ZIP_FLAGS).putShort(DEFLATED).putInt(time)
+                .putInt(0).putInt(0).putInt(0).putShort((short) name.length).putShort((short) 0).put(name);
+        return header.flip();
+    }
+
+    // Readers pick the 8-byte form once either size passes 4 GB
+    private static ByteBuffer descriptor(long crc, long compressed, long size) {
+        boolean zip64 = compressed > ZIP64_LIMIT || size > ZIP64_LIMIT;
+        ByteBuffer descriptor = little(zip64 ? 24 : 16);
+        descriptor.putInt(0x08074b50).putInt((int) crc);
+        if (zip64) descriptor.putLong(compressed).putLong(size);
+        else descriptor.putInt((int) compressed).putInt((int) size);
+        return descriptor.flip();
+    }
+
+    private static byte[] centralHeader(byte[] name, int time, long crc, long compressed, long size, long offset) {
+        boolean bigSizes = compressed >= ZIP64_LIMIT || size >= ZIP64_LIMIT;
+        boolean bigOffset = offset >= ZIP64_LIMIT;
+        int extra = bigSizes || bigOffset ? 4 + (bigSizes ? 16 : 0) + (bigOffset ? 8 : 0) : 0;
+        ByteBuffer header = little(46 + name.length + extra);
+        header.putInt(0x02014b50).putShort((short) 45).putShort((short) (extra > 0 ? 45 : 20)).putShort(ZIP_FLAGS)
+                .putShort(DEFLATED).putInt(time).putInt((int) crc)
+                .putInt(bigSizes ? -1 : (int) compressed).putInt(bigSizes ? -1 : (int) size)
+                .putShort((short) name.length).putShort((short) extra).putShort((short) 0).putShort((short) 0)
+                .putShort((short) 0).putInt(0).putInt(bigOffset ? -1 : (int) offset).put(name);
+        if (extra > 0) {
+            header.putShort((short) 1).putShort((short) (extra - 4));
+            if (bigSizes) header.putLong(size).putLong(compressed);
+            if (bigOffset) header.putLong(offset);
+        }
+        return header.array();
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long offset = position;
+        long size = central.size();
+        writeBytes(ByteBuffer.wrap(central.toByteArray()));
+        if (entries >= 0xFFFF || offset >= ZIP64_LIMIT || size >= ZIP64_LIMIT) {
+            long end64 = position;
+            ByteBuffer record = little(56 + 20);
+            record.putInt(0x06064b50).putLong(44).putShort((short) 45).putShort((short) 45).putInt(0).putInt(0)
+                    .putLong(entries).putLong(entries).putLong(size).putLong(offset);
+            record.putInt(0x07064b50).putInt(0).putLong(end64).putInt(1);
+            writeBytes(record.flip());
+        }
+        ByteBuffer end = little(22);
+        short count = (short) Math.min(entries, 0xFFFF);
+        end.putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort(count).putShort(count)
+                .putInt(size >= ZIP64_LIMIT ? -1 : (int) size).putInt(offset >= ZIP64_LIMIT ? -1 : (int) offset)
+                .putShort((short) 0);
+        writeBytes(end.flip());
+    }
+
+    private static int dosTime(long millis) {
+        LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        int year = Math.max(1980, Math.min(2107, t.getYear()));
+        if (year != t.getYear()) return (year - 1980) << 25 | 1 << 21 | 1 << 16;
+        return (year - 1980) << 25 | t.getMonthValue() << 21 | t.getDayOfMonth() << 16
+                | t.getHour() << 11 | t.getMinute() << 5 | t.getSecond() >> 1;
+    }
+
+    // A ustar header, preceded by a pax header carrying the full name when it does not fit 100 ASCII bytes.
+    // Sizes past the 8 GB octal field use the base-256 form GNU tar reads.
+    private static byte[] tarHeaders(String name, long modified, long size) {
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        long seconds = Math.max(0, modified / 1000);
+        if (encoded.length <= 100 && encoded.length == name.length()) return tarBlock(encoded, size, seconds, (byte) '0');
+        byte[] record = paxRecord("path", name);
+        byte[] headers = new byte[512 + (record.length + 511) / 512 * 512 + 512];
+        StringBuilder fallback = new StringBuilder();
+        for (int i = 0; i < name.length() && fallback.length() < 100; i++)
+            fallback.append(name.charAt(i) < 128 ? name.charAt(i) : '_');
+        System.arraycopy(tarBlock(("PaxHeader/" + fallback).substring(0, Math.min(100, 10 + fallback.length()))
+                .getBytes(StandardCharsets.US_ASCII), record.length, seconds, (byte) 'x'), 0, headers, 0, 512);
+        System.arraycopy(record, 0, headers, 512, record.length);
+        System.arraycopy(tarBlock(fallback.toString().getBytes(StandardCharsets.US_ASCII), size, seconds, (byte) '0'),
+                0, headers, headers.length - 512, 512);
+        return headers;
+    }
+
+    // "<length> <key>=<value>\n", where length counts its own digits
+    private static byte[] paxRecord(String key, String value) {
+        int body = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int length = body + 1;
+        while (Integer.toString(length).length() + body != length) length++;
+        return (length + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] tarBlock(byte[] name, long size, long seconds, byte type) {
+        byte[] block = new byte[512];
+        System.arraycopy(name, 0, block, 0, Math.min(100, name.length));
+        octal(block, 100, 8, 0644);
+        octal(block, 108, 8, 0);
+        octal(block, 116, 8, 0);
+        if (size > TAR_OCTAL_LIMIT) {
+            block[124] = (byte) 0x80;
+            for (int i = 0; i < 8; i++) block[135 - i] = (byte) (size >>> (8 * i));
+        } else {
+            octal(block, 124, 12, size);
+        }
+        octal(block, 136, 12, Math.min(seconds, TAR_OCTAL_LIMIT));
+        block[156] = type;
+        System.arraycopy(USTAR, 0, block, 257, USTAR.length);
+        Arrays.fill(block, 148, 156, (byte) ' ');
+        int sum = 0;
+        for (byte b : block) sum += b & 0xFF;
+        octal(block, 148, 7, sum);
+        block[154] = 0;
+        return block;
+    }
+
+    // Zero-padded octal digits filling all but the field's last byte, which stays NUL
+    private static void octal(byte[] block, int offset, int length, long value) {
+        for (int i = offset + length - 2; i >= offset; i--) {
+            block[i] = (byte) ('0' + (value & 7));
+            value >>>= 3;
+        }
+    }
+}
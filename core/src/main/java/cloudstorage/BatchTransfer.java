@@ -0,0 +1,180 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+// Moves many files in three overlapping stages: a reader loads small files into memory, a pool of workers stores
+// them and the calling thread gathers the results. The queue between the first two is bounded by count and by bytes,
+// so any number of files runs in bounded memory while reads, hashing and writes overlap. Workers commit to the
+// journal at the same time, so their fsyncs are shared. Files larger than STREAM_BYTES skip the reader and are
+// streamed by a worker.
+class BatchTransfer {
+    static final int STREAM_BYTES = ChunkedUploader.CHUNK_SIZE;
+    static final int THREADS = Integer.getInteger("cloudstorage.batch.threads", 8);
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int BUFFER_BUDGET = 64 << 20;
+    private static final long FLUSH_INTERVAL_MS = 250;
+    private static final long POLL_MS = 50;
+
+    static final class Result {
+        final int total;
+        final int succeeded;
+        final int failed;
+        final List<String> failures;
+        final boolean cancelled;
+        final long bytes;
+        final long elapsedMillis;
+
+        Result(int total, int succeeded, int failed, List<String> failures, boolean cancelled, long bytes,
+               long elapsedMillis) {
+            this.total = total;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.failures = failures;
+            this.cancelled = cancelled;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    interface Sizer<T> {
+        long size(T item) throws IOException;
+    }
+
+    interface Loader<T> {
+        byte[] load(T item) throws IOException;
+    }
+
+    // data is null for a file too large to buffer, which the store step then streams itself; returns bytes moved
+    interface Storer<T> {
+        long store(T item, byte[] data) throws IOException;
+    }
+
+    private static final class Loaded<T> {
+        final T item;
+        final byte[] data;
+        final int permits;
+
+        Loaded(T item, byte[] data, int permits) {
+            this.item = item;
+            this.data = data;
+            this.permits = permits;
+        }
+    }
+
+    private final int threads;
+
+    public BatchTransfer() { this(THREADS); }
+
+    public BatchTransfer(int threads) { this.threads = Math.max(1, threads); }
+
+    public <T> Result run(List<T> items, Function<T, String> label, Sizer<T> sizer, Loader<T> loader, Storer<T> storer,
+                          ProgressListener listener, BooleanSupplier cancelled) {
+        long start = System.currentTimeMillis();
+        int total = items.size();
+        AtomicBoolean stop = new AtomicBoolean(false);
+        AtomicBoolean loading = new AtomicBoolean(true);
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        BlockingQueue<Loaded<T>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Semaphore budget = new Semaphore(BUFFER_BUDGET);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1, r -> {
+            Thread t = new Thread(r, "batch-transfer");
+            t.setDaemon(true);
+            return t;
+        });
+        pool.execute(() -> {
+            try {
+                for (T item : items) {
+                    if (stop.get()) return;
+                    Loaded<T> loaded;
+                    try {
+                        long size = sizer.size(item);
+                        if (size > STREAM_BYTES) {
+                            loaded = new Loaded<>(item, null, 0);
+                        } else {
+                            int permits = (int) size;
+                            budget.acquire(permits);
+                            try {
+                                loaded = new Loaded<>(item, loader.load(item), permits);
+                            } catch (IOException | RuntimeException e) {
+                                budget.release(permits);
+                                throw e;
+                            }
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        record(failures, failed, processed, label.apply(item), e);
+                        continue;
+                    }
+                    while (!queue.offer(loaded, POLL_MS, TimeUnit.MILLISECONDS)) {
+                        if (stop.get()) return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                stop.set(true);
+            } finally {
+                loading.set(false);
+            }
+        });
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    while (!stop.get()) {
+                        Loaded<T> loaded = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                        if (loaded == null) {
+                            if (!loading.get() && queue.isEmpty()) return;
+                            continue;
+                        }
+                        try {
+                            bytes.addAndGet(storer.store(loaded.item, loaded.data));
+                            succeeded.incrementAndGet();
+                            processed.incrementAndGet();
+                        } catch (IOException | RuntimeException e) {
+                            record(failures, failed, processed, label.apply(loaded.item), e);
+                        } finally {
+                            budget.release(loaded.permits);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    stop.set(true);
+                }
+            });
+        }
+        pool.shutdown();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                stop.set(true);
+            }
+            if (cancelled.getAsBoolean()) stop.set(true);
+            listener.onProgress(processed.get(), total);
+        }
+        listener.onProgress(processed.get(), total);
+        if (interrupted) Thread.currentThread().interrupt();
+        return new Result(total, succeeded.get(), failed.get(), new ArrayList<>(failures), stop.get(), bytes.get(),
+                System.currentTimeMillis() - start);
+    }
+
+    static void record(List<String> failures, AtomicInteger failed, AtomicInteger processed, String label,
+                       Exception e) {
+        failed.incrementAndGet();
+        processed.incrementAndGet();
+        if (failures.size() < BulkDeleter.MAX_REPORTED_FAILURES) failures.add(label + " (" + e.getClass().getSimpleName() + ")");
+    }
+}
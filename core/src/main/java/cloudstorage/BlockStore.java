@@ -0,0 +1,306 @@
+package cloudstorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+class BlockStore {
+    private static final String BLOCK_DIR = "block_store/";
+    // Besides these, every volume that holds user files
+    private static final String[] MANIFEST_ROOTS = { "versions/", "journal/" };
+    private static final int MANIFEST_MAGIC = 0x43534D46;  // "CSMF"
+    private static final int MANIFEST_HEADER = 4 + 8 + 4;
+    // The catalog codec of a file stored as a manifest. Uploads start with any bytes they like, the magic included, so
+    // whether a file is a manifest is recorded where it is stored, never read from the file itself.
+    static final byte BLOCKS = 2;
+    private static final int HASH_BYTES = 32;
+    // FastCDC-style bounds: cut points are content defined, averaging ~64 KB
+    private static final int MIN_CHUNK = 16 << 10;
+    private static final int MAX_CHUNK = 256 << 10;
+    // Judge cut points on the high bits, which depend on the last 64 input bytes rather than the last few
+    private static final long CUT_MASK = 0xFFFFL << 48;
+    private static final long GC_GRACE_MS = 10 * 60 * 1000;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x5eed);
+        for (int i = 0; i < GEAR.length; i++) GEAR[i] = random.nextLong();
+    }
+
+    static final class Manifest {
+        final long size;
+        final byte[][] hashes;
+        final long[] offsets;  // offsets[i] is where chunk i starts; offsets[count] == size
+
+        Manifest(long size, byte[][] hashes, long[] offsets) {
+            this.size = size;
+            this.hashes = hashes;
+            this.offsets = offsets;
+        }
+
+        int chunkAt(long position) {
+            int i = Arrays.binarySearch(offsets, 0, hashes.length, position);
+            return i >= 0 ? i : -i - 2;
+        }
+    }
+
+    static final class StoreResult {
+        final long size;
+        final int chunks;
+        final int newChunks;
+        final long newBytes;
+        // Blocks this store wrote; they must reach the disk before anything refers to them
+        final List<Path> created;
+
+        StoreResult(long size, int chunks, long newBytes, List<Path> created) {
+            this.size = size;
+            this.chunks = chunks;
+            this.newChunks = created.size();
+            this.newBytes = newBytes;
+            this.created = created;
+        }
+    }
+
+    private final Path blockDir;
+
+    public BlockStore() { this(Paths.get(BLOCK_DIR)); }
+
+    public BlockStore(Path blockDir) { this.blockDir = blockDir; }
+
+    // Logical size of a stored file, read the way the codec its catalog entry or version records says it is stored
+    public static long logicalSize(Path file, byte codec) throws IOException {
+        if (codec == BLOCKS) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 16))) {
+                if (in.readInt() != MANIFEST_MAGIC) throw new IOException("Not a block manifest: " + file);
+                return in.readLong();
+            }
+        }
+        if (codec == Compression.DEFLATE) return Compression.originalSize(file);
+        return Files.size(file);
+    }
+
+    public StoreResult store(ReadableByteChannel src, Path manifestPath, long expectedSize,
+                             ProgressListener listener, boolean createNew) throws IOException {
+        if (createNew && Files.exists(manifestPath)) throw new FileAlreadyExistsException(manifestPath.toString());
+        MessageDigest digest = sha256();
+        List<byte[]> hashes = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        byte[] chunk = new byte[MAX_CHUNK];
+        ByteBuffer in = ByteBuffer.allocate(ChunkedUploader.CHUNK_SIZE);
+        int chunkLength = 0;
+        long gear = 0;
+        long total = 0;
+        List<Path> created = new ArrayList<>();
+        long newBytes = 0;
+        while (src.read(in) >= 0 || in.position() > 0) {
+            in.flip();
+            byte[] data = in.array();
+            for (int i = in.position(), end = in.limit(); i < end; i++) {
+                byte b = data[i];
+                chunk[chunkLength++] = b;
+                gear = (gear << 1) + GEAR[b & 0xff];
+                if (chunkLength == MAX_CHUNK || (chunkLength >= MIN_CHUNK && (gear & CUT_MASK) == 0)) {
+                    if (putChunk(digest, chunk, chunkLength, hashes, lengths, created)) newBytes += chunkLength;
+                    total += chunkLength;
+                    chunkLength = 0;
+                    gear = 0;
+                }
+            }
+            in.clear();
+            listener.onProgress(total + chunkLength, expectedSize);
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Upload cancelled");
+        }
+        if (chunkLength > 0) {
+            if (putChunk(digest, chunk, chunkLength, hashes, lengths, created)) newBytes += chunkLength;
+            total += chunkLength;
+        }
+        writeManifest(manifestPath, total, hashes, lengths, createNew);
+        return new StoreResult(total, hashes.size(), newBytes, created);
+    }
+
+    public Manifest readManifest(Path manifestPath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifestPath)))) {
+            if (in.readInt() != MANIFEST_MAGIC) throw new IOException("Not a block manifest: " + manifestPath);
+            long size = in.readLong();
+            int count = in.readInt();
+            // Checked against the file's own length before anything is allocated for it
+            if (count < 0 || count > (Files.size(manifestPath) - MANIFEST_HEADER) / (HASH_BYTES + 4))
+                throw new IOException("Corrupt block manifest: " + manifestPath);
+            byte[][] hashes = new byte[count][HASH_BYTES];
+            long[] offsets = new long[count + 1];
+            for (int i = 0; i < count; i++) {
+                in.readFully(hashes[i]);
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_CHUNK) throw new IOException("Corrupt block manifest: " + manifestPath);
+                offsets[i + 1] = offsets[i] + length;
+            }
+            if (offsets[count] != size) throw new IOException("Corrupt block manifest: " + manifestPath);
+            return new Manifest(size, hashes, offsets);
+        }
+    }
+
+    public SeekableByteChannel open(Path manifestPath) throws IOException {
+        return new ManifestChannel(readManifest(manifestPath));
+    }
+
+    // Each block goes out through FileChannel.transferTo, so reads stay zero-copy per chunk
+    public long transferTo(Path manifestPath, WritableByteChannel target, ProgressListener listener) throws IOException {
+        Manifest manifest = readManifest(manifestPath);
+        long sent = 0;
+        for (byte[] hash : manifest.hashes) {
+            try (FileChannel block = FileChannel.open(blockPath(hash), StandardOpenOption.READ)) {
+                long size = block.size();
+                for (long position = 0; position < size; ) position += block.transferTo(position, size - position, target);
+                sent += size;
+            }
+            listener.onProgress(sent, manifest.size);
+        }
+        return sent;
+    }
+
+    // Mark and sweep: a block is live while any manifest on a volume, in versions or in journal staging references it.
+    // Every file that reads as a manifest counts, without asking the catalogs; a plain upload that happens to read as
+    // one can only keep blocks alive, never let a live one go.
+    public int collectGarbage() throws IOException {
+        if (!Files.isDirectory(blockDir)) return 0;
+        Set<String> live = new HashSet<>();
+        List<Path> manifestRoots = new ArrayList<>(ShardedPlacement.shared().roots());
+        for (String root : MANIFEST_ROOTS) manifestRoots.add(Paths.get(root));
+        for (Path manifestRoot : manifestRoots) {
+            if (!Files.isDirectory(manifestRoot)) continue;
+            try (Stream<Path> paths = Files.walk(manifestRoot)) {
+                for (Path file : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                    Manifest manifest;
+                    try {
+                        manifest = readManifest(file);
+                    } catch (IOException e) { continue; }
+                    for (byte[] hash : manifest.hashes) live.add(Hex.encode(hash));
+                }
+            }
+        }
+        long cutoff = System.currentTimeMillis() - GC_GRACE_MS;
+        int removed = 0;
+        try (Stream<Path> blocks = Files.walk(blockDir)) {
+            for (Path block : (Iterable<Path>) blocks::iterator) {
+                BasicFileAttributes attrs = Files.readAttributes(block, BasicFileAttributes.class);
+                if (!attrs.isRegularFile() || live.contains(block.getFileName().toString())) continue;
+                if (attrs.lastModifiedTime().toMillis() < cutoff && Files.deleteIfExists(block)) removed++;
+            }
+        }
+        return removed;
+    }
+
+    private boolean putChunk(MessageDigest digest, byte[] chunk, int length, List<byte[]> hashes,
+                             List<Integer> lengths, List<Path> created) throws IOException {
+        digest.update(chunk, 0, length);
+        byte[] hash = digest.digest();
+        hashes.add(hash);
+        lengths.add(length);
+        Path path = blockPath(hash);
+        if (Files.exists(path)) {
+            // Refresh the mtime so a concurrent collectGarbage() sees the block as recently used
+            path.toFile().setLastModified(System.currentTimeMillis());
+            return false;
+        }
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), "blk", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) { out.write(chunk, 0, length); }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            created.add(path);
+        } catch (FileAlreadyExistsException e) {
+            // Another upload stored the same block first
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return true;
+    }
+
+    private void writeManifest(Path manifestPath, long size, List<byte[]> hashes, List<Integer> lengths,
+                               boolean createNew) throws IOException {
+        Path temp = manifestPath.resolveSibling(manifestPath.getFileName() + ".manifest.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeLong(size);
+            out.writeInt(hashes.size());
+            for (int i = 0; i < hashes.size(); i++) {
+                out.write(hashes.get(i));
+                out.writeInt(lengths.get(i));
+            }
+        }
+        try {
+            // link(2) refuses an existing name atomically, where rename(2) would silently replace it
+            if (createNew) Files.createLink(manifestPath, temp);
+            else Files.move(temp, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    Path blockPath(byte[] hash) {
+        String hex = Hex.encode(hash);
+        return blockDir.resolve(hex.substring(0, 2)).resolve(hex.substring(2, 4)).resolve(hex);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) { throw new IllegalStateException(e); }
+    }
+
+    // Read-only view that stitches the blocks of one manifest back together
+    private final class ManifestChannel implements SeekableByteChannel {
+        private final Manifest manifest;
+        private long position = 0;
+        private int openIndex = -1;
+        private FileChannel openBlock;
+        private boolean open = true;
+
+        ManifestChannel(Manifest manifest) { this.manifest = manifest; }
+
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            if (position >= manifest.size) return -1;
+            int read = 0;
+            while (dst.hasRemaining() && position < manifest.size) {
+                int index = manifest.chunkAt(position);
+                if (index != openIndex) {
+                    if (openBlock != null) openBlock.close();
+                    openBlock = FileChannel.open(blockPath(manifest.hashes[index]), StandardOpenOption.READ);
+                    openIndex = index;
+                }
+                int n = openBlock.read(dst, position - manifest.offsets[index]);
+                if (n < 0) throw new IOException("Block is shorter than its manifest entry");
+                position += n;
+                read += n;
+            }
+            return read;
+        }
+
+        public int write(ByteBuffer src) throws IOException { throw new NonWritableChannelException(); }
+
+        public long position() { return position; }
+
+        public SeekableByteChannel position(long newPosition) {
+            position = newPosition;
+            return this;
+        }
+
+        public long size() { return manifest.size; }
+
+        public SeekableByteChannel truncate(long size) { throw new NonWritableChannelException(); }
+
+        public boolean isOpen() { return open; }
+
+        public void close() throws IOException {
+            open = false;
+            if (openBlock != null) openBlock.close();
+        }
+    }
+}
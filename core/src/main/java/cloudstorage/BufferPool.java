@@ -0,0 +1,55 @@
+package cloudstorage;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class BufferPool {
+    private final BlockingQueue<ByteBuffer> free;
+    private final int capacity;
+    private final int bufferSize;
+    private int created = 0;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public BufferPool(int capacity, int bufferSize) {
+        this.capacity = capacity;
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public int getBufferSize() { return bufferSize; }
+
+    // Null if no buffer came free within timeoutMs
+    public ByteBuffer acquire(long timeoutMs) throws InterruptedIOException {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) return buffer;
+        synchronized (this) {
+            if (created < capacity) {
+                created++;
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+        }
+        waiting.incrementAndGet();
+        try {
+            return free.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an upload buffer");
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    // Callers blocked because every buffer is out
+    public int getWaiting() { return waiting.get(); }
+
+    public synchronized int getInUse() { return created - free.size(); }
+
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        free.offer(buffer);
+    }
+}
@@ -0,0 +1,108 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+class BulkDeleter {
+    private static final int SLICE_SIZE = 256;
+    private static final long FLUSH_INTERVAL_MS = 250;
+    static final int MAX_REPORTED_FAILURES = 20;
+
+    static final class Result {
+        final int total;
+        final int deleted;
+        final int failed;
+        final List<String> failures;
+        final boolean cancelled;
+        final long elapsedMillis;
+
+        Result(int total, int deleted, int failed, List<String> failures, boolean cancelled, long elapsedMillis) {
+            this.total = total;
+            this.deleted = deleted;
+            this.failed = failed;
+            this.failures = failures;
+            this.cancelled = cancelled;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    interface FileAction {
+        void apply(String name) throws IOException;
+    }
+
+    private final int threads;
+
+    public BulkDeleter() { this(Math.min(8, Runtime.getRuntime().availableProcessors() * 2)); }
+
+    public BulkDeleter(int threads) { this.threads = Math.max(1, threads); }
+
+    // onDeleted receives batches of names whose files are gone, so the caller can update its index in bulk.
+    // It is only ever called from the calling thread, and always once more after the workers have stopped.
+    public Result delete(List<String> names, FileAction deleteOne, Consumer<List<String>> onDeleted,
+                         ProgressListener listener, BooleanSupplier cancelled) {
+        long start = System.currentTimeMillis();
+        int total = names.size();
+        AtomicBoolean stop = new AtomicBoolean(false);
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        ConcurrentLinkedQueue<String> deleted = new ConcurrentLinkedQueue<>();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bulk-delete");
+            t.setDaemon(true);
+            return t;
+        });
+        for (int from = 0; from < total; from += SLICE_SIZE) {
+            List<String> slice = names.subList(from, Math.min(total, from + SLICE_SIZE));
+            pool.execute(() -> {
+                for (String name : slice) {
+                    if (stop.get()) return;
+                    try {
+                        deleteOne.apply(name);
+                        deleted.add(name);
+                    } catch (IOException | SecurityException e) {
+                        failed.incrementAndGet();
+                        if (failures.size() < MAX_REPORTED_FAILURES) failures.add(name + " (" + e.getClass().getSimpleName() + ")");
+                    }
+                    processed.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+
+        int deletedCount = 0;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                stop.set(true);
+            }
+            if (cancelled.getAsBoolean()) stop.set(true);
+            deletedCount += flush(deleted, onDeleted);
+            listener.onProgress(processed.get(), total);
+        }
+        deletedCount += flush(deleted, onDeleted);
+        listener.onProgress(processed.get(), total);
+        if (interrupted) Thread.currentThread().interrupt();
+        return new Result(total, deletedCount, failed.get(), new ArrayList<>(failures), stop.get(),
+                System.currentTimeMillis() - start);
+    }
+
+    private static int flush(ConcurrentLinkedQueue<String> deleted, Consumer<List<String>> onDeleted) {
+        List<String> batch = new ArrayList<>();
+        String name;
+        while ((name = deleted.poll()) != null) batch.add(name);
+        if (!batch.isEmpty()) onDeleted.accept(batch);
+        return batch.size();
+    }
+}
@@ -0,0 +1,68 @@
+package cloudstorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class ChunkedUploader {
+    static final int CHUNK_SIZE = 1 << 20;
+    // 1 MB direct buffers shared by every upload in the process, created as they are first needed
+    private static final BufferPool SHARED_POOL =
+            new BufferPool(Integer.getInteger("cloudstorage.upload.buffers", 16), CHUNK_SIZE);
+    // An upload waits this long for a pooled buffer, then uses a heap buffer of its own rather than queue behind slow
+    // clients holding every pooled one
+    private static final long LEND_TIMEOUT_MS = Long.getLong("cloudstorage.upload.bufferWaitMs", 50);
+
+    static {
+        Metrics.gauge("upload_buffers_in_use", "Shared upload buffers currently lent out", SHARED_POOL::getInUse);
+        Metrics.gauge("upload_buffer_waiters", "Uploads queued for a free upload buffer", SHARED_POOL::getWaiting);
+    }
+
+    private final BufferPool pool;
+
+    public ChunkedUploader() { this(SHARED_POOL); }
+
+    public ChunkedUploader(BufferPool pool) { this.pool = pool; }
+
+    public long write(InputStream in, Path target, long expectedSize, ProgressListener listener) throws IOException {
+        return write(Channels.newChannel(in), target, expectedSize, listener, false);
+    }
+
+    // With createNew the write fails with FileAlreadyExistsException instead of replacing an existing file
+    public long write(ReadableByteChannel src, Path target, long expectedSize, ProgressListener listener,
+                      boolean createNew) throws IOException {
+        ByteBuffer pooled = pool.acquire(LEND_TIMEOUT_MS);
+        ByteBuffer buffer = pooled != null ? pooled : ByteBuffer.allocate(pool.getBufferSize());
+        long written = 0;
+        boolean complete = false;
+        FileChannel out = null;
+        try {
+            out = FileChannel.open(target, createNew ? StandardOpenOption.CREATE_NEW : StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            boolean eof = false;
+            while (!eof) {
+                while (buffer.hasRemaining()) {
+                    if (src.read(buffer) < 0) { eof = true; break; }
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) written += out.write(buffer);
+                buffer.clear();
+                listener.onProgress(written, expectedSize);
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Upload cancelled");
+            }
+            complete = true;
+            return written;
+        } finally {
+            if (pooled != null) pool.release(pooled);
+            if (out != null) {
+                out.close();
+                if (!complete) Files.deleteIfExists(target);
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package cloudstorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Compressed files start with a 14-byte header: magic "CSZ1", codec, level, original size; then a zlib stream. The
+// magic only checks a file the catalog already says is compressed; plain uploads may start with the same bytes.
+class Compression {
+    static final byte NONE = 0;
+    static final byte DEFLATE = 1;
+    static final int MAGIC = 0x43535A31;  // "CSZ1"
+    static final int HEADER_BYTES = 4 + 1 + 1 + 8;
+    static final int DEFAULT_LEVEL = Integer.getInteger("cloudstorage.compress.level", 6);
+    private static final int SAMPLE_BYTES = 64 << 10;
+    private static final int STREAM_BUFFER = 256 << 10;
+    // Below this the header and zlib framing eat most of the savings
+    private static final int MIN_SIZE = 512;
+    // Only worth the CPU on every read if a fast pass over the sample saves at least 10%
+    private static final double MAX_SAMPLE_RATIO = 0.9;
+
+    static final class Result {
+        final long size;
+        final byte codec;
+        final long storedSize;
+
+        Result(long size, byte codec, long storedSize) {
+            this.size = size;
+            this.codec = codec;
+            this.storedSize = storedSize;
+        }
+    }
+
+    private final ChunkedUploader uploader;
+    private final int level;
+
+    public Compression(ChunkedUploader uploader) { this(uploader, DEFAULT_LEVEL); }
+
+    public Compression(ChunkedUploader uploader, int level) {
+        this.uploader = uploader;
+        this.level = level;
+    }
+
+    static String codecName(byte codec) {
+        return codec == DEFLATE ? "deflate" : codec == BlockStore.BLOCKS ? "blocks" : "none";
+    }
+
+    // Reads the first 64 KB to decide, then streams sample and remainder through either the deflater or the plain uploader
+    public Result store(ReadableByteChannel src, Path target, long expectedSize, ProgressListener listener,
+                        boolean createNew) throws IOException {
+        ByteBuffer sample = ByteBuffer.allocate(SAMPLE_BYTES);
+        while (sample.hasRemaining() && src.read(sample) >= 0) { }
+        sample.flip();
+        ReadableByteChannel all = new PrefixedChannel(sample.duplicate(), src);
+        if (!worthCompressing(sample)) {
+            long size = uploader.write(all, target, expectedSize, listener, createNew);
+            return new Result(size, NONE, size);
+        }
+        return deflate(all, target, expectedSize, listener, createNew);
+    }
+
+    static boolean worthCompressing(ByteBuffer sample) {
+        int length = sample.remaining();
+        if (length < MIN_SIZE) return false;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(sample.duplicate());
+            deflater.finish();
+            byte[] out = new byte[8192];
+            long compressed = 0;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(out);
+                if (compressed > length * MAX_SAMPLE_RATIO) return false;
+            }
+            return true;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private Result deflate(ReadableByteChannel src, Path target, long expectedSize, ProgressListener listener,
+                           boolean createNew) throws IOException {
+        Deflater deflater = new Deflater(level);
+        boolean complete = false;
+        FileChannel out = null;
+        try {
+            out = FileChannel.open(target, createNew ? StandardOpenOption.CREATE_NEW : StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            writeFully(out, header(0), 0);
+            out.position(HEADER_BYTES);
+            DeflaterOutputStream compressed = new DeflaterOutputStream(Channels.newOutputStream(out), deflater, STREAM_BUFFER);
+            ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER);
+            long size = 0;
+            int n;
+            while ((n = src.read(buffer)) >= 0) {
+                compressed.write(buffer.array(), 0, n);
+                buffer.clear();
+                size += n;
+                listener.onProgress(size, expectedSize);
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Upload cancelled");
+            }
+            compressed.finish();
+            compressed.flush();
+            // The original size is only known now, so it is patched into the header last
+            writeFully(out, header(size), 0);
+            complete = true;
+            return new Result(size, DEFLATE, out.size());
+        } finally {
+            deflater.end();
+            if (out != null) {
+                out.close();
+                if (!complete) Files.deleteIfExists(target);
+            }
+        }
+    }
+
+    private ByteBuffer header(long size) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).put(DEFLATE).put((byte) level).putLong(size).flip();
+        return header;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) position += out.write(buffer, position);
+    }
+
+    public static long originalSize(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return readHeader(in, file);
+        }
+    }
+
+    private static long readHeader(DataInputStream in, Path file) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a compressed file: " + file);
+        byte codec = in.readByte();
+        if (codec != DEFLATE) throw new IOException("Unknown codec " + codec + " in " + file);
+        in.readByte();
+        return in.readLong();
+    }
+
+    public static InputStream openStream(Path file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), STREAM_BUFFER));
+        try {
+            readHeader(in, file);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new InflaterInputStream(in, new Inflater(), STREAM_BUFFER) {
+            public void close() throws IOException {
+                super.close();
+                inf.end();
+            }
+        };
+    }
+
+    public static SeekableByteChannel open(Path file) throws IOException {
+        return new InflatingChannel(file, originalSize(file));
+    }
+
+    public static long transferTo(Path file, WritableByteChannel target, ProgressListener listener) throws IOException {
+        long size = originalSize(file);
+        try (InputStream in = openStream(file)) {
+            byte[] buffer = new byte[STREAM_BUFFER];
+            long sent = 0;
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                while (chunk.hasRemaining()) target.write(chunk);
+                sent += n;
+                listener.onProgress(sent, size);
+            }
+            return sent;
+        }
+    }
+
+    // Serves the buffered sample first, then whatever is left in the source
+    private static final class PrefixedChannel implements ReadableByteChannel {
+        private final ByteBuffer prefix;
+        private final ReadableByteChannel rest;
+
+        PrefixedChannel(ByteBuffer prefix, ReadableByteChannel rest) {
+            this.prefix = prefix;
+            this.rest = rest;
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            if (!prefix.hasRemaining()) return rest.read(dst);
+            int n = Math.min(prefix.remaining(), dst.remaining());
+            ByteBuffer slice = prefix.duplicate();
+            slice.limit(slice.position() + n);
+            dst.put(slice);
+            prefix.position(prefix.position() + n);
+            return n;
+        }
+
+        public boolean isOpen() { return rest.isOpen(); }
+
+        public void close() throws IOException { rest.close(); }
+    }
+
+    // Forward reads inflate as they go; seeking backwards reopens the stream, so random access is supported but slow
+    private static final class InflatingChannel implements SeekableByteChannel {
+        private final Path file;
+        private final long size;
+        private InputStream in;
+        private long position = 0;
+        private long streamPosition = 0;
+        private boolean open = true;
+
+        InflatingChannel(Path file, long size) throws IOException {
+            this.file = file;
+            this.size = size;
+            this.in = openStream(file);
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            if (position >= size) return -1;
+            if (position < streamPosition) {
+                in.close();
+                in = openStream(file);
+                streamPosition = 0;
+            }
+            in.skipNBytes(position - streamPosition);
+            streamPosition = position;
+            int n;
+            if (dst.hasArray()) {
+                n = in.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (n > 0) dst.position(dst.position() + n);
+            } else {
+                byte[] chunk = new byte[Math.min(dst.remaining(), STREAM_BUFFER)];
+                n = in.read(chunk);
+                if (n > 0) dst.put(chunk, 0, n);
+            }
+            if (n < 0) return -1;
+            position += n;
+            streamPosition += n;
+            return n;
+        }
+
+        public int write(ByteBuffer src) { throw new NonWritableChannelException(); }
+
+        public long position() { return position; }
+
+        public SeekableByteChannel position(long newPosition) {
+            if (newPosition < 0) throw new IllegalArgumentException("Negative position");
+            position = newPosition;
+            return this;
+        }
+
+        public long size() { return size; }
+
+        public SeekableByteChannel truncate(long size) { throw new NonWritableChannelException(); }
+
+        public boolean isOpen() { return open; }
+
+        public void close() throws IOException {
+            open = false;
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package cloudstorage;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+class ContentCache {
+    private static final long DEFAULT_BUDGET = Long.getLong("cloudstorage.cacheBytes", 32L << 20);
+    private static final ContentCache SHARED = new ContentCache(DEFAULT_BUDGET);
+
+    static {
+        Metrics.gauge("cache_hit_ratio", "Share of content cache lookups answered from memory", () -> SHARED.stats().hitRate());
+        Metrics.counter("cache_hits", "Content cache hits since start", () -> SHARED.stats().hits);
+        Metrics.counter("cache_misses", "Content cache misses since start", () -> SHARED.stats().misses);
+        Metrics.gauge("cache_bytes", "Bytes held by the content cache", () -> SHARED.stats().bytes);
+    }
+
+    static final class Stats {
+        final long hits;
+        final long misses;
+        final long evictions;
+        final long bytes;
+        final long budget;
+        final int entries;
+
+        Stats(long hits, long misses, long evictions, long bytes, long budget, int entries) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.bytes = bytes;
+            this.budget = budget;
+            this.entries = entries;
+        }
+
+        public double hitRate() { return hits + misses == 0 ? 0 : (double) hits / (hits + misses); }
+
+        public String toString() {
+            return String.format("%d entries, %d/%d bytes, %d hits, %d misses (%.1f%%), %d evictions",
+                    entries, bytes, budget, hits, misses, hitRate() * 100, evictions);
+        }
+    }
+
+    private static final class Cached {
+        final String content;
+        final long weight;
+
+        Cached(String content) {
+            this.content = content;
+            this.weight = weight(content);
+        }
+    }
+
+    private final long budget;
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Cached> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    public ContentCache(long budget) { this.budget = budget; }
+
+    public static ContentCache shared() { return SHARED; }
+
+    // The loader runs outside the lock, so a slow disk read never blocks hits on other files
+    public String get(String userName, String fileName, Supplier<String> loader) {
+        String key = key(userName, fileName);
+        long generation;
+        synchronized (this) {
+            Cached cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return cached.content;
+            }
+            misses++;
+            generation = invalidations;
+        }
+        String content = loader.get();
+        if (content != null) put(key, content, generation);
+        return content;
+    }
+
+    public synchronized void invalidate(String userName, String fileName) {
+        invalidations++;
+        Cached old = entries.remove(key(userName, fileName));
+        if (old != null) bytes -= old.weight;
+    }
+
+    public synchronized void invalidateAll(String userName, Collection<String> fileNames) {
+        for (String fileName : fileNames) invalidate(userName, fileName);
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, bytes, budget, entries.size());
+    }
+
+    private synchronized void put(String key, String content, long generation) {
+        // A write or delete raced with the load, so the content may already be stale
+        if (generation != invalidations) return;
+        Cached cached = new Cached(content);
+        // Anything over an eighth of the budget would flush most of the cache for one file
+        if (cached.weight > budget / 8) return;
+        Cached old = entries.put(key, cached);
+        if (old != null) bytes -= old.weight;
+        bytes += cached.weight;
+        Iterator<Map.Entry<String, Cached>> eldest = entries.entrySet().iterator();
+        while (bytes > budget && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private static String key(String userName, String fileName) { return userName + '\0' + fileName; }
+
+    // Heap cost of the String payload; Latin-1 strings are stored one byte per char
+    private static long weight(String content) {
+        boolean latin1 = true;
+        for (int i = 0; i < content.length() && latin1; i++) latin1 = content.charAt(i) < 256;
+        return (latin1 ? 1L : 2L) * content.length();
+    }
+}
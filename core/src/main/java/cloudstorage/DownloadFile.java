@@ -0,0 +1,299 @@
+package cloudstorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+class DownloadFile extends UploadFile implements StorageService {
+    static final int PREVIEW_LIMIT = 1 << 20;
+    private static final long TRANSFER_CHUNK = 8L << 20;
+    protected List<String> dFiles = new CopyOnWriteArrayList<>();
+    public void setFileName(String fileName) { super.setFileName(fileName); }
+
+    public long size() throws IOException {
+        String name = getFileName();
+        return BlockStore.logicalSize(filePath(name), codecOf(name));
+    }
+
+    public SeekableByteChannel openChannel() throws IOException { return openChannel(getFileName()); }
+
+    public SeekableByteChannel openChannel(String fileName) throws IOException {
+        String name = checkName(fileName);
+        return VersionStore.open(filePath(name), codecOf(name), blockStore);
+    }
+
+    public long transferTo(WritableByteChannel target) throws IOException {
+        return transferTo(target, ProgressListener.NONE);
+    }
+
+    public long transferTo(WritableByteChannel target, ProgressListener listener) throws IOException {
+        return download(getFileName(), target, listener);
+    }
+
+    // Lets the kernel copy straight from the page cache into the target (sendfile where supported)
+    public long download(String fileName, WritableByteChannel target, ProgressListener listener) throws IOException {
+        return download(fileName, size -> target, listener);
+    }
+
+    public long download(String fileName, SizedTarget target, ProgressListener listener) throws IOException {
+        String name = checkName(fileName);
+        long start = Metrics.DOWNLOAD.start();
+        Lock lock = lockFor(name).readLock();
+        lock.lock();
+        try {
+            Path path = filePath(name);
+            byte codec = codecOf(name);
+            long sent = transfer(path, codec, target.open(BlockStore.logicalSize(path, codec)), listener);
+            Metrics.DOWNLOAD.end(start, sent, name);
+            return sent;
+        } catch (IOException | RuntimeException e) {
+            Metrics.DOWNLOAD.fail(start, name);
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<VersionStore.Version> versions(String fileName) { return versions.list(checkName(fileName)); }
+
+    public long downloadVersion(String fileName, int number, WritableByteChannel target,
+                                ProgressListener listener) throws IOException {
+        String name = checkName(fileName);
+        Lock lock = lockFor(name).readLock();
+        lock.lock();
+        try (VersionStore.Materialized version = versions.materialize(name, number, filePath(name), codecOf(name))) {
+            return transfer(version.path, version.codec, target, listener);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The restored content becomes the newest version, so the content it replaces stays in the history as well
+    public long restoreVersion(String fileName, int number, ProgressListener listener) throws IOException {
+        String name = checkName(fileName);
+        Lock lock = lockFor(name).writeLock();
+        lock.lock();
+        try {
+            if (number == versions.currentNumber(name)) return BlockStore.logicalSize(filePath(name), codecOf(name));
+            try (VersionStore.Materialized version = versions.materialize(name, number, filePath(name), codecOf(name));
+                 SeekableByteChannel in = VersionStore.open(version.path, version.codec, blockStore)) {
+                return upload(name, in, in.size(), listener);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long transfer(Path path, byte codec, WritableByteChannel target, ProgressListener listener) throws IOException {
+        if (codec == BlockStore.BLOCKS) return blockStore.transferTo(path, target, listener);
+        if (codec == Compression.DEFLATE) return Compression.transferTo(path, target, listener);
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long sent = in.transferTo(position, Math.min(size - position, TRANSFER_CHUNK), target);
+                if (sent == 0 && position >= in.size()) break;
+                position += sent;
+                listener.onProgress(position, size);
+            }
+            return position;
+        }
+    }
+
+    public MappedByteBuffer map() throws IOException { return map(0, size()); }
+
+    // The mapping stays valid after the channel is closed; regions are capped at 2 GB by the JDK
+    public MappedByteBuffer map(long position, long length) throws IOException {
+        Path path = filePath(getFileName());
+        byte codec = codecOf(getFileName());
+        if (codec == BlockStore.BLOCKS)
+            throw new UnsupportedOperationException("Deduplicated files are stored as blocks and cannot be mapped");
+        if (codec != Compression.NONE)
+            throw new UnsupportedOperationException("Compressed files cannot be mapped");
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            return in.map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+    }
+
+    // Files stored before the index existed are indexed by reading them back once
+    public int indexMissing(ProgressListener listener) {
+        List<String> names = list();
+        int indexed = 0;
+        int done = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(64 << 10);
+        for (String name : names) {
+            if (Thread.currentThread().isInterrupted()) break;
+            Lock lock = lockFor(name).readLock();
+            lock.lock();
+            try {
+                if (files.contains(name) && !index.contains(name)) {
+                    SearchIndex.Document doc = SearchIndex.newDocument();
+                    try (ReadableByteChannel in = doc.tee(openChannel(name))) {
+                        while (in.read(buffer) >= 0) buffer.clear();
+                    }
+                    index.add(name, doc);
+                    indexed++;
+                }
+            } catch (IOException e) {
+            } finally {
+                lock.unlock();
+            }
+            listener.onProgress(++done, names.size());
+        }
+        return indexed;
+    }
+
+    // Writes each named file into directory, replacing any local file of the same name; see BatchTransfer. A file
+    // that fails part way is removed rather than left truncated.
+    public BatchTransfer.Result downloadAll(List<String> names, Path directory, ProgressListener listener,
+                                            BooleanSupplier cancelled) {
+        return new BatchTransfer().run(names, name -> name, name -> {
+            FileCatalog.Entry entry = stat(name);
+            if (entry == null) throw new NoSuchFileException(name);
+            return entry.size;
+        }, name -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            download(name, Channels.newChannel(out), ProgressListener.NONE);
+            return out.toByteArray();
+        }, (name, data) -> {
+            Path target = directory.resolve(checkName(name));
+            try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (data == null) return download(name, out, ProgressListener.NONE);
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) out.write(buffer);
+                return data.length;
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(target);
+                throw e;
+            }
+        }, listener, cancelled);
+    }
+
+    // Each file is read under its lock, so it goes in whole even if it is replaced meanwhile. A cancelled export still
+    // ends in a complete archive of the files written so far; only a failure to write to out ends it early.
+    public BatchTransfer.Result exportArchive(String glob, byte format, WritableByteChannel out,
+                                              ProgressListener listener, BooleanSupplier cancelled) throws IOException {
+        long start = System.currentTimeMillis();
+        List<String> names = list();
+        if (glob != null && !glob.isBlank()) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + normalizeName(glob));
+            names = names.stream().filter(name -> matcher.matches(Paths.get(name))).collect(Collectors.toList());
+        }
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        List<String> failures = new ArrayList<>();
+        int succeeded = 0;
+        long bytes = 0;
+        boolean stopped = false;
+        try (ArchiveWriter archive = new ArchiveWriter(out, format)) {
+            for (String name : names) {
+                if (cancelled.getAsBoolean()) {
+                    stopped = true;
+                    break;
+                }
+                long opStart = Metrics.DOWNLOAD.start();
+                Lock lock = lockFor(name).readLock();
+                lock.lock();
+                try (SeekableByteChannel in = openChannel(name)) {
+                    FileCatalog.Entry entry = files.get(name);
+                    long size = in.size();
+                    archive.add(name, entry != null ? entry.modified : System.currentTimeMillis(), size, in);
+                    Metrics.DOWNLOAD.end(opStart, size, name);
+                    succeeded++;
+                    processed.incrementAndGet();
+                    bytes += size;
+                } catch (IOException | RuntimeException e) {
+                    Metrics.DOWNLOAD.fail(opStart, name);
+                    if (archive.hasFailed()) throw e;
+                    BatchTransfer.record(failures, failed, processed, name, e);
+                } finally {
+                    lock.unlock();
+                }
+                listener.onProgress(processed.get(), names.size());
+            }
+            archive.finish();
+        }
+        return new BatchTransfer.Result(names.size(), succeeded, failed.get(), failures, stopped, bytes,
+                System.currentTimeMillis() - start);
+    }
+
+    // A pager over the file for viewing it whole. Plain files are mapped where they are; compressed and deduplicated
+    // ones are first written out to a temporary copy, which the pager deletes when closed.
+    public TextPager openPager(String fileName, ProgressListener listener) throws IOException {
+        String name = checkName(fileName);
+        long start = Metrics.DOWNLOAD.start();
+        Lock lock = lockFor(name).readLock();
+        lock.lock();
+        try {
+            Path path = filePath(name);
+            byte codec = codecOf(name);
+            TextPager pager;
+            if (codec == Compression.NONE) {
+                pager = new TextPager(path, false);
+            } else {
+                Path temp = Files.createTempFile("cloudstorage-view", ".txt");
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    transfer(path, codec, out, listener);
+                    pager = new TextPager(temp, true);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(temp);
+                    throw e;
+                }
+            }
+            Metrics.DOWNLOAD.end(start, pager.size(), name);
+            return pager;
+        } catch (IOException | RuntimeException e) {
+            Metrics.DOWNLOAD.fail(start, name);
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Timed as a download whether the cache or the disk answers, since that is what the user waits for
+    public String getContentGUI() {
+        long start = Metrics.DOWNLOAD.start();
+        String content = cache.get(getUserName(), getFileName(), () -> getPreviewGUI(PREVIEW_LIMIT));
+        if (content == null) Metrics.DOWNLOAD.fail(start, getFileName());
+        else Metrics.DOWNLOAD.end(start, content.length(), getFileName());
+        return content;
+    }
+
+    public String getPreviewGUI(int maxBytes) {
+        Lock lock = lockFor(getFileName()).readLock();
+        lock.lock();
+        try (SeekableByteChannel in = openChannel()) {
+            long size = in.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, maxBytes));
+            while (buffer.hasRemaining() && in.read(buffer) >= 0) { }
+            String content = new String(buffer.array(), 0, buffer.position());
+            if (size > maxBytes) content += "\n... (preview truncated, " + size + " bytes total)";
+            return content;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,507 @@
+package cloudstorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class FileCatalog {
+    private static final String CATALOG_DIR = "catalogs/";
+    // CAT2 added codec and stored size, CAT3 the user's totals in the header and after every log record, CAT4 the
+    // record sequence in place of the directories' modification times; an older snapshot fails the check and the
+    // directories are rescanned
+    private static final int SNAPSHOT_MAGIC = 0x43415434;  // "CAT4"
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int MIN_COMPACT_RECORDS = 1024;
+    // On by default: a catalog whose log is missing a record is used as is and reconciled in the background, instead of
+    // rescanning the directories before it can answer. -Dcloudstorage.fastStart=false restores the rescan.
+    private static final boolean FAST_START = Boolean.parseBoolean(System.getProperty("cloudstorage.fastStart", "true"));
+    // How long heaviest() trusts the totals it last read from disk for users whose catalog is not loaded
+    private static final long RECORDED_TTL_MS = Long.getLong("cloudstorage.usage.refreshSeconds", 60) * 1000;
+    private static final ExecutorService RECONCILER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "catalog-reconcile");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static final class Entry {
+        final String name;
+        final long size;
+        final long modified;
+        final byte codec;
+        final long storedSize;
+
+        Entry(String name, long size, long modified) { this(name, size, modified, Compression.NONE, size); }
+
+        Entry(String name, long size, long modified, byte codec, long storedSize) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.codec = codec;
+            this.storedSize = storedSize;
+        }
+
+        public String getName() { return name; }
+        public long getSize() { return size; }
+        public long getModified() { return modified; }
+        public byte getCodec() { return codec; }
+        public long getStoredSize() { return storedSize; }
+
+        // Bytes on disk per logical byte; below 1.0 means the codec is saving space
+        public double getRatio() { return size == 0 ? 1.0 : (double) storedSize / size; }
+    }
+
+    private static final Comparator<Entry> BY_SIZE =
+            Comparator.comparingLong(Entry::getSize).thenComparing(Entry::getName);
+    private static final Comparator<Entry> BY_MODIFIED =
+            Comparator.comparingLong(Entry::getModified).thenComparing(Entry::getName);
+
+    private final String userName;
+    private final Placement placement;
+    private final File snapshotFile;
+    private final File logFile;
+    private final Usage usage;
+    // Nothing is read from disk until the catalog is first used, so opening a user's storage costs the same at any size
+    private volatile boolean loaded = false;
+    // One catalog per user per process, so every session of that user sees and appends to the same index
+    private static final ConcurrentHashMap<String, FileCatalog> OPEN = new ConcurrentHashMap<>();
+    // Every user's totals as last read from their catalog files, or handed over when their catalog was unloaded
+    private static final ConcurrentHashMap<String, Usage> RECORDED = new ConcurrentHashMap<>();
+    private static long recordedAt;
+    private static boolean recordedEver = false;
+
+    // Point lookups read byName without locking; everything else is guarded by the catalog's monitor
+    private final ConcurrentHashMap<String, Entry> byName = new ConcurrentHashMap<>();
+    private final LinkedHashSet<String> order = new LinkedHashSet<>();
+    private final NavigableSet<Entry> bySize = new TreeSet<>(BY_SIZE);
+    private final NavigableSet<Entry> byModified = new TreeSet<>(BY_MODIFIED);
+    // Copy-on-write listing, rebuilt on the first names() call after a change
+    private volatile List<String> namesSnapshot;
+    private int logRecords = 0;
+    // Number of the last change recorded. The snapshot header holds the one it includes and every log record its own,
+    // so a record that failed to be written shows as a gap without looking at the directories.
+    private long seq = 0;
+
+    private FileCatalog(String userName, Placement placement) {
+        this.userName = userName;
+        this.placement = placement;
+        this.usage = new Usage(userName);
+        this.snapshotFile = new File(CATALOG_DIR + userName + ".snapshot");
+        this.logFile = new File(CATALOG_DIR + userName + ".log");
+    }
+
+    // A crash between a journaled rename and its catalog record needs no rescan: the journal replays exactly those
+    // names, and the replay records them
+    public static FileCatalog load(String userName, Placement placement) {
+        return OPEN.computeIfAbsent(userName, name -> new FileCatalog(name, placement));
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            Boolean current = readSnapshot();
+            if (current == null) {
+                rescan();
+                compact();
+            } else if (!current) {
+                if (FAST_START) {
+                    RECONCILER.execute(this::reconcile);
+                } else {
+                    rescan();
+                    compact();
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    // Forgets the shared instance so the next load() reads the catalog from disk again. Its totals are what the files
+    // now record, so heaviest() keeps them without reading the files.
+    static void unload(String userName) {
+        FileCatalog catalog = OPEN.remove(userName);
+        if (catalog != null && catalog.loaded) {
+            RECORDED.put(userName, new Usage(userName, catalog.usage.bytes(), catalog.usage.files()));
+        }
+    }
+
+    public boolean contains(String name) {
+        ensureLoaded();
+        return byName.containsKey(name);
+    }
+
+    public Entry get(String name) {
+        ensureLoaded();
+        return byName.get(name);
+    }
+
+    public int size() {
+        ensureLoaded();
+        return byName.size();
+    }
+
+    // Kept up to date by every change to the index, so it is read in constant time
+    public Usage usage() {
+        ensureLoaded();
+        return usage;
+    }
+
+    public boolean isEmpty() {
+        ensureLoaded();
+        return byName.isEmpty();
+    }
+
+    public List<String> names() {
+        ensureLoaded();
+        List<String> snapshot = namesSnapshot;
+        if (snapshot != null) return snapshot;
+        synchronized (this) {
+            if (namesSnapshot == null) namesSnapshot = Collections.unmodifiableList(new ArrayList<>(order));
+            return namesSnapshot;
+        }
+    }
+
+    public synchronized List<Entry> bySize() {
+        ensureLoaded();
+        return new ArrayList<>(bySize);
+    }
+
+    public synchronized List<Entry> byModified() {
+        ensureLoaded();
+        return new ArrayList<>(byModified);
+    }
+
+    public synchronized List<Entry> largerThan(long bytes) {
+        ensureLoaded();
+        return new ArrayList<>(bySize.tailSet(new Entry("", bytes + 1, 0), true));
+    }
+
+    public synchronized List<Entry> modifiedSince(long millis) {
+        ensureLoaded();
+        return new ArrayList<>(byModified.tailSet(new Entry("", millis, 0), true));
+    }
+
+    public void put(String name, long size, long modified) { put(name, size, modified, Compression.NONE, size); }
+
+    public synchronized void put(String name, long size, long modified, byte codec, long storedSize) {
+        ensureLoaded();
+        Entry entry = new Entry(name, size, modified, codec, storedSize);
+        index(entry);
+        append(OP_PUT, entry);
+    }
+
+    public synchronized boolean remove(String name) {
+        ensureLoaded();
+        if (unindex(name) == null) return false;
+        append(OP_REMOVE, new Entry(name, 0, 0));
+        return true;
+    }
+
+    public synchronized int removeAll(Collection<String> names) {
+        ensureLoaded();
+        List<String> removed = new ArrayList<>();
+        for (String name : names) if (unindex(name) != null) removed.add(name);
+        if (!removed.isEmpty()) append(OP_REMOVE, removed);
+        return removed.size();
+    }
+
+    // Writes and fsyncs a fresh snapshot, so the log records up to now no longer need replaying
+    public synchronized void checkpoint() {
+        ensureLoaded();
+        compact();
+    }
+
+    public synchronized void clear() {
+        loaded = true;
+        clearIndexes();
+        compact();
+    }
+
+    private void index(Entry entry) {
+        Entry old = byName.put(entry.name, entry);
+        if (old != null) {
+            bySize.remove(old);
+            byModified.remove(old);
+            usage.add(entry.size - old.size, 0);
+        } else {
+            usage.add(entry.size, 1);
+            order.add(entry.name);
+            namesSnapshot = null;
+        }
+        bySize.add(entry);
+        byModified.add(entry);
+    }
+
+    private Entry unindex(String name) {
+        Entry old = byName.remove(name);
+        if (old != null) {
+            order.remove(name);
+            bySize.remove(old);
+            byModified.remove(old);
+            namesSnapshot = null;
+            usage.add(-old.size, -1);
+        }
+        return old;
+    }
+
+    private void clearIndexes() {
+        byName.clear();
+        order.clear();
+        bySize.clear();
+        byModified.clear();
+        namesSnapshot = null;
+        usage.reset();
+    }
+
+    // Whatever the catalog already knows of a file's codec is kept, since the file itself cannot say
+    private void rescan() {
+        Map<String, Entry> known = new HashMap<>(byName);
+        clearIndexes();
+        for (File file : listFiles()) index(stat(file, known.get(file.getName())));
+    }
+
+    // Every file in the user's directories; a name found twice, as a move cut short can leave it, counts where
+    // the placement looks first
+    private List<File> listFiles() {
+        Map<String, File> found = new LinkedHashMap<>();
+        for (Path directory : placement.directories(userName)) {
+            File[] filesList = directory.toFile().listFiles();
+            if (filesList == null) continue;
+            for (File file : filesList) {
+                if (file.isFile()) found.putIfAbsent(file.getName(), file);
+            }
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    // Reads the memory-mapped snapshot and replays the log. Null if they are missing or unreadable; false if a record
+    // is missing from the log, so the entries may be out of date. Changes the journal has yet to replay are not
+    // missing: their records are written when the replay redoes them.
+    private Boolean readSnapshot() {
+        if (!snapshotFile.exists()) return null;
+        boolean current = true;
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(stream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+            if (in.readInt() != SNAPSHOT_MAGIC) return null;
+            seq = in.readLong();
+            // The totals are only for heaviest(); indexing the entries counts them again
+            in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) index(readEntry(in));
+        } catch (IOException e) {
+            clearIndexes();
+            return null;
+        }
+        if (logFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+                while (true) {
+                    byte op;
+                    try { op = in.readByte(); } catch (EOFException e) { break; }
+                    Entry entry = readEntry(in);
+                    long recordSeq = in.readLong();
+                    in.readLong();
+                    in.readLong();
+                    logRecords++;
+                    // Already in the snapshot: left by a compaction that stopped before deleting the log
+                    if (recordSeq <= seq) continue;
+                    if (recordSeq != seq + 1) current = false;
+                    seq = recordSeq;
+                    if (op == OP_PUT) index(entry);
+                    else unindex(entry.name);
+                }
+            } catch (IOException e) {
+                // The records before the torn one stay indexed, so the rescan keeps their codecs
+                return null;
+            }
+        }
+        return current;
+    }
+
+    // Decodes straight from the mapping, without copying the file through read() calls first
+    static InputStream stream(ByteBuffer buffer) {
+        return new InputStream() {
+            public int read() { return buffer.hasRemaining() ? buffer.get() & 0xff : -1; }
+
+            public int read(byte[] b, int off, int len) {
+                if (!buffer.hasRemaining()) return -1;
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+        };
+    }
+
+    // Brings a snapshot that is older than the directories in line with them, one name at a time. Each change is
+    // re-checked under the monitor, so an upload or delete racing with it keeps its own result.
+    private void reconcile() {
+        Set<String> onDisk = new HashSet<>();
+        for (File file : listFiles()) {
+            onDisk.add(file.getName());
+            Entry entry = byName.get(file.getName());
+            if (entry != null && entry.modified == file.lastModified() && entry.storedSize == file.length()) continue;
+            synchronized (this) {
+                if (file.isFile()) index(stat(file, byName.get(file.getName())));
+            }
+        }
+        for (String name : names()) {
+            if (onDisk.contains(name)) continue;
+            synchronized (this) {
+                if (!Files.exists(placement.locate(userName, name))) unindex(name);
+            }
+        }
+        synchronized (this) { compact(); }
+    }
+
+    // The n users storing the most bytes, heaviest first. A loaded catalog answers from its counters; for the rest the
+    // totals are read from the snapshot header and the last log record, so no user's directories are listed, and are
+    // then reused for -Dcloudstorage.usage.refreshSeconds (default 60) so polling the MBean does not re-read every
+    // user's files. A user whose snapshot predates CAT3 is left out until their catalog is next loaded.
+    static List<Usage> heaviest(int n) {
+        if (n <= 0) return List.of();
+        refreshRecorded();
+        PriorityQueue<Usage> top = new PriorityQueue<>(Comparator.comparingLong(Usage::bytes));
+        Set<String> userNames = new HashSet<>(RECORDED.keySet());
+        userNames.addAll(OPEN.keySet());
+        for (String userName : userNames) {
+            FileCatalog open = OPEN.get(userName);
+            // Copied, so the heap's order cannot shift under it
+            Usage usage = open != null && open.loaded
+                    ? new Usage(userName, open.usage.bytes(), open.usage.files()) : RECORDED.get(userName);
+            if (usage == null) continue;
+            top.add(usage);
+            if (top.size() > n) top.poll();
+        }
+        List<Usage> heaviest = new ArrayList<>(top);
+        heaviest.sort(Comparator.comparingLong(Usage::bytes).reversed());
+        return heaviest;
+    }
+
+    // Re-reads the totals of users whose catalog is not loaded, at most once per RECORDED_TTL_MS
+    private static synchronized void refreshRecorded() {
+        long now = System.currentTimeMillis();
+        if (recordedEver && now - recordedAt < RECORDED_TTL_MS) return;
+        String[] snapshots = new File(CATALOG_DIR).list((dir, name) -> name.endsWith(".snapshot"));
+        Set<String> seen = new HashSet<>();
+        for (String snapshot : snapshots == null ? new String[0] : snapshots) {
+            String userName = snapshot.substring(0, snapshot.length() - ".snapshot".length());
+            seen.add(userName);
+            FileCatalog open = OPEN.get(userName);
+            if (open != null && open.loaded) continue;
+            Usage usage = recordedUsage(userName);
+            if (usage != null) RECORDED.put(userName, usage);
+            else RECORDED.remove(userName);
+        }
+        RECORDED.keySet().retainAll(seen);
+        recordedAt = now;
+        recordedEver = true;
+    }
+
+    // The totals as last written, or null without a readable snapshot. A record cut short at the end of the log is
+    // ignored, as a load would.
+    private static Usage recordedUsage(String userName) {
+        long bytes;
+        long files;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(CATALOG_DIR + userName + ".snapshot"), 64))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) return null;
+            in.readLong();
+            bytes = in.readLong();
+            files = in.readInt();
+        } catch (IOException e) { return null; }
+        File log = new File(CATALOG_DIR + userName + ".log");
+        if (log.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(log)))) {
+                while (true) {
+                    try { in.readByte(); } catch (EOFException e) { break; }
+                    readEntry(in);
+                    in.readLong();
+                    long recordBytes = in.readLong();
+                    files = in.readLong();
+                    bytes = recordBytes;
+                }
+            } catch (IOException e) { }
+        }
+        return new Usage(userName, bytes, files);
+    }
+
+    // A file the catalog has no entry for is taken as plain
+    private static Entry stat(File file, Entry known) {
+        byte codec = known == null ? Compression.NONE : known.codec;
+        long size;
+        try { size = BlockStore.logicalSize(file.toPath(), codec); } catch (IOException e) { size = file.length(); }
+        return new Entry(file.getName(), size, file.lastModified(), codec, file.length());
+    }
+
+    // Where changes are appended; the journal forces it before an operation that changed the catalog counts as done
+    Path logPath() { return logFile.toPath(); }
+
+    private void append(byte op, Entry entry) {
+        if (++logRecords > Math.max(MIN_COMPACT_RECORDS, byName.size())) {
+            compact();
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)))) {
+            writeRecord(out, op, entry, ++seq);
+        } catch (IOException e) { }
+    }
+
+    // Batch variant: one open and one flush for the whole group of records
+    private void append(byte op, List<String> names) {
+        logRecords += names.size();
+        if (logRecords > Math.max(MIN_COMPACT_RECORDS, byName.size())) {
+            compact();
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)))) {
+            for (String name : names) writeRecord(out, op, new Entry(name, 0, 0), ++seq);
+        } catch (IOException e) { }
+    }
+
+    private void writeRecord(DataOutputStream out, byte op, Entry entry, long recordSeq) throws IOException {
+        out.writeByte(op);
+        writeEntry(out, entry);
+        out.writeLong(recordSeq);
+        out.writeLong(usage.bytes());
+        out.writeLong(usage.files());
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeUTF(entry.name);
+        out.writeLong(entry.size);
+        out.writeLong(entry.modified);
+        out.writeByte(entry.codec);
+        out.writeLong(entry.storedSize);
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        return new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readByte(), in.readLong());
+    }
+
+    private void compact() {
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            snapshotFile.getParentFile().mkdirs();
+            try (FileOutputStream file = new FileOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeLong(seq);
+                out.writeLong(usage.bytes());
+                out.writeInt(byName.size());
+                for (String name : order) writeEntry(out, byName.get(name));
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logFile.delete();
+            logRecords = 0;
+        } catch (IOException e) { temp.delete(); }
+    }
+}
@@ -0,0 +1,29 @@
+package cloudstorage;
+
+class Hex {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private Hex() { }
+
+    // Fills one char[] from a lookup table; the returned String is the only allocation
+    static String encode(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    static byte[] decode(String hex) {
+        if ((hex.length() & 1) != 0) throw new IllegalArgumentException("Odd-length hex string");
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) throw new IllegalArgumentException("Invalid hex digit");
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+}
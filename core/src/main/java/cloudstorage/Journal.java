@@ -0,0 +1,440 @@
+package cloudstorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Write-ahead journal for one user's storage mutations, in journal/<user>.wal with staging files under journal/<user>/,
+// or on the volume a staged file will be renamed onto.
+// An operation stages its data, commits one record describing the whole change, applies it and then ends it:
+//   Journal.Transaction tx = journal.begin();
+//   Path temp = tx.stage("data");  ...write temp...  tx.commit(op);  tx.end(apply(op));
+// The commit is on disk before anything visible changes, so after a crash recovery redoes every committed operation
+// that has no end record and deletes the staging files of anything that never committed. Threads committing at the
+// same time share one fsync, and operations ending between two of them share the forcing of what they wrote. Assumes
+// one process per data directory, like the rest of the storage code.
+class Journal {
+    private static final String JOURNAL_DIR = "journal/";
+    private static final byte REC_COMMIT = 1;
+    private static final byte REC_END = 2;
+    private static final int MAX_RECORD = 64 << 20;
+    // Staged files up to this size are copied into the commit record, so staging them needs no fsync of its own
+    static final int INLINE_BYTES = Integer.getInteger("cloudstorage.journal.inlineBytes", 64 << 10);
+    private static final int CHECKPOINT_RECORDS = Integer.getInteger("cloudstorage.journal.checkpointRecords", 4096);
+    private static final long CHECKPOINT_BYTES = 64L << 20;
+    private static final ConcurrentHashMap<String, Journal> OPEN = new ConcurrentHashMap<>();
+    // Seeded from the clock so staging names from an earlier run are never reused
+    private static final AtomicLong NEXT_TX = new AtomicLong(System.currentTimeMillis() << 12);
+    private static final LongAdder COMMITS = new LongAdder();
+    private static final LongAdder SYNCS = new LongAdder();
+
+    static {
+        Metrics.counter("journal_commits", "Operations committed to the write-ahead journal", COMMITS::sum);
+        Metrics.counter("journal_syncs", "Journal fsyncs; fewer than commits means commits were grouped", SYNCS::sum);
+    }
+
+    // Redoes one committed operation and returns the paths it wrote, which the next checkpoint forces to disk
+    interface Replayer {
+        List<Path> replay(byte[] op) throws IOException;
+    }
+
+    // Every fsync the journal issues, of the log, staged files or applied changes, goes through here
+    interface Syncer {
+        void force(Path path, FileChannel channel, boolean metaData) throws IOException;
+    }
+
+    // Replaced by tests to record what was durable at each point
+    static volatile Syncer syncer = (path, channel, metaData) -> channel.force(metaData);
+
+    final class Transaction {
+        final long id = NEXT_TX.incrementAndGet();
+        private final List<Path> staged = new ArrayList<>();
+        private final List<Path> durable = new ArrayList<>();
+
+        public Path stage(String suffix) throws IOException { return stage(suffix, stagingDir); }
+
+        // Staged in one of the volume staging directories given to load(), next to where it will be renamed to
+        public Path stage(String suffix, Path directory) throws IOException {
+            Files.createDirectories(directory);
+            Path path = directory.resolve(id + "-" + suffix);
+            staged.add(path);
+            return path;
+        }
+
+        // Files written in place outside the staging area, such as new dedup blocks, forced before the commit
+        public void persist(Collection<Path> paths) { durable.addAll(paths); }
+
+        public void commit(byte[] op) throws IOException { Journal.this.commit(this, op); }
+
+        public void end(Collection<Path> written) { Journal.this.end(this, written); }
+
+        // Before the commit nothing visible has changed, so dropping the staged files is the whole rollback
+        public void abort() {
+            for (Path path : staged) {
+                try { Files.deleteIfExists(path); } catch (IOException e) { }
+            }
+        }
+    }
+
+    private final Path wal;
+    private final Path stagingDir;
+    private final List<Path> volumeStaging;
+    // Guards the channel and durableSeq; taken before the monitor, never after it
+    private final Object syncLock = new Object();
+    private FileChannel channel;
+    private IOException broken;
+    private long durableSeq = 0;
+
+    // Guarded by the journal's monitor
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedSeq = 0;
+    private final LinkedHashMap<Long, byte[]> unfinished = new LinkedHashMap<>();
+    private final Map<Long, List<Path>> stagedBy = new HashMap<>();
+    private final Set<Path> dirty = new HashSet<>();
+    // Operations ended since the last group fsync, with what each wrote; see finishEnded()
+    private final LinkedHashMap<Long, Collection<Path>> ending = new LinkedHashMap<>();
+    private final List<Path> garbage = new ArrayList<>();
+    private long garbageBytes = 0;
+    private long logBytes = 0;
+    private int records = 0;
+    private Runnable persist;
+
+    // Commit records left by the previous run, read when the journal is opened and consumed by recover()
+    private List<byte[]> recovered;
+    // Set when the log ends in a torn or corrupt record, which must be cut away before anything is appended after it
+    private boolean tornTail;
+
+    private Journal(String userName, List<Path> volumeStaging) {
+        this.wal = Paths.get(JOURNAL_DIR, userName + ".wal");
+        this.stagingDir = Paths.get(JOURNAL_DIR, userName);
+        this.volumeStaging = volumeStaging;
+        this.recovered = readUnfinished();
+    }
+
+    public static Journal load(String userName, List<Path> volumeStaging) {
+        return OPEN.computeIfAbsent(userName, name -> new Journal(name, volumeStaging));
+    }
+
+    static void unload(String userName) {
+        Journal journal = OPEN.remove(userName);
+        if (journal != null) journal.close();
+    }
+
+    // True until recover() has run if the previous run stopped with operations in flight
+    public boolean hasPending() {
+        synchronized (syncLock) { return recovered != null && !recovered.isEmpty(); }
+    }
+
+    public Transaction begin() { return new Transaction(); }
+
+    // Runs once per process: restores inlined staging files, redoes unfinished operations, clears the staging area
+    // and checkpoints. With nothing to redo and a clean log there is nothing to checkpoint, so opening a user's
+    // storage after a clean shutdown stays cheap. persist is called at every checkpoint to make the caller's own
+    // index durable.
+    public void recover(Replayer replayer, Runnable persist) throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) { this.persist = persist; }
+            if (recovered == null) return;
+            List<byte[]> commits = recovered;
+            recovered = null;
+            Set<Path> keep = new HashSet<>();
+            for (byte[] payload : commits) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                in.readByte();
+                long tx = in.readLong();
+                NEXT_TX.accumulateAndGet(tx, Math::max);
+                byte[] op = new byte[in.readInt()];
+                in.readFully(op);
+                List<Path> staged = new ArrayList<>();
+                for (int i = in.readInt(); i > 0; i--) {
+                    Path path = Paths.get(in.readUTF());
+                    staged.add(path);
+                    if (in.readBoolean()) {
+                        byte[] data = new byte[in.readInt()];
+                        in.readFully(data);
+                        Files.createDirectories(path.getParent());
+                        Files.write(path, data);
+                    }
+                }
+                try {
+                    List<Path> written = replayer.replay(op);
+                    synchronized (this) { dirty.addAll(written); }
+                } catch (IOException | RuntimeException e) {
+                    // Kept for the next start rather than dropped
+                    synchronized (this) { unfinished.put(tx, frame(payload)); }
+                    keep.addAll(staged);
+                }
+            }
+            List<Path> stagingDirs = new ArrayList<>(volumeStaging);
+            stagingDirs.add(stagingDir);
+            for (Path directory : stagingDirs) {
+                if (!Files.isDirectory(directory)) continue;
+                try (Stream<Path> leftovers = Files.list(directory)) {
+                    for (Path path : (Iterable<Path>) leftovers::iterator) {
+                        if (!keep.contains(path)) Files.deleteIfExists(path);
+                    }
+                }
+            }
+            if (!commits.isEmpty() || tornTail) checkpoint();
+        }
+    }
+
+    private void commit(Transaction tx, byte[] op) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(op.length + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(REC_COMMIT);
+        out.writeLong(tx.id);
+        out.writeInt(op.length);
+        out.write(op);
+        List<Path> staged = new ArrayList<>();
+        for (Path path : tx.staged) if (Files.exists(path)) staged.add(path);
+        out.writeInt(staged.size());
+        Set<Path> forcedStaging = new HashSet<>();
+        for (Path path : staged) {
+            out.writeUTF(path.toString());
+            long size = Files.size(path);
+            out.writeBoolean(size <= INLINE_BYTES);
+            if (size <= INLINE_BYTES) {
+                byte[] data = Files.readAllBytes(path);
+                out.writeInt(data.length);
+                out.write(data);
+            } else {
+                force(path);
+                forcedStaging.add(path.getParent());
+            }
+        }
+        for (Path directory : forcedStaging) force(directory);
+        forceAll(tx.durable);
+        byte[] payload = bytes.toByteArray();
+        long seq;
+        synchronized (this) {
+            seq = append(payload);
+            unfinished.put(tx.id, frame(payload));
+            stagedBy.put(tx.id, staged);
+        }
+        COMMITS.increment();
+        awaitDurable(seq);
+    }
+
+    // The end record rides along with the next group fsync or checkpoint; losing it only means a harmless redo. What
+    // the operation wrote is forced just before then, together with everything else ended since the last fsync.
+    private void end(Transaction tx, Collection<Path> written) {
+        boolean due;
+        synchronized (this) {
+            ending.put(tx.id, new ArrayList<>(written));
+            due = records + ending.size() >= CHECKPOINT_RECORDS || garbageBytes >= CHECKPOINT_BYTES
+                    || logBytes >= CHECKPOINT_BYTES;
+        }
+        if (due) {
+            try { checkpoint(); } catch (IOException e) { }
+        }
+    }
+
+    // Forces what the ended operations wrote, each path and directory once however many of them touched it, and only
+    // then appends their end records, so no fsync of the log can make an end durable ahead of its change. If forcing
+    // fails the ends are left out and those operations are redone at the next start. Called with syncLock held.
+    private void finishEnded() {
+        LinkedHashMap<Long, Collection<Path>> ended;
+        synchronized (this) {
+            if (ending.isEmpty()) return;
+            ended = new LinkedHashMap<>(ending);
+            ending.clear();
+        }
+        Set<Path> written = new LinkedHashSet<>();
+        for (Collection<Path> paths : ended.values()) written.addAll(paths);
+        try {
+            forceAll(written);
+        } catch (IOException e) { return; }
+        synchronized (this) {
+            for (long id : ended.keySet()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+                DataOutputStream out = new DataOutputStream(bytes);
+                try {
+                    out.writeByte(REC_END);
+                    out.writeLong(id);
+                } catch (IOException e) { throw new UncheckedIOException(e); }
+                append(bytes.toByteArray());
+                unfinished.remove(id);
+                // Staging files stay until the checkpoint drops their commit from the log
+                List<Path> staged = stagedBy.remove(id);
+                if (staged != null) {
+                    for (Path path : staged) {
+                        if (!Files.exists(path)) continue;
+                        garbage.add(path);
+                        garbageBytes += path.toFile().length();
+                    }
+                }
+            }
+        }
+    }
+
+    private long append(byte[] payload) {
+        byte[] framed = frame(payload);
+        pending.write(framed, 0, framed.length);
+        logBytes += framed.length;
+        records++;
+        return ++appendedSeq;
+    }
+
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer framed = ByteBuffer.allocate(payload.length + 8);
+        framed.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return framed.array();
+    }
+
+    // Group commit: whoever gets the lock finishes the operations ended so far, then writes and forces everything
+    // appended, covering the threads queued behind it, which then find their record already durable
+    private void awaitDurable(long seq) throws IOException {
+        synchronized (syncLock) {
+            if (broken != null) throw broken;
+            if (durableSeq >= seq) return;
+            byte[] batch;
+            long upTo;
+            // An interrupt, such as a cancelled task, closes the channel part way through the write. That is no fault
+            // of the disk, so the flag is held back until the batch is durable and then put back for the caller.
+            boolean interrupted = Thread.interrupted();
+            try {
+                finishEnded();
+                synchronized (this) {
+                    batch = pending.toByteArray();
+                    pending.reset();
+                    upTo = appendedSeq;
+                }
+                long start = -1;
+                while (true) {
+                    try {
+                        if (channel == null || !channel.isOpen()) channel = openLog();
+                        // A retry cuts off whatever part of the batch the interrupted attempt left in the log
+                        if (start < 0) start = channel.size();
+                        else channel.truncate(start);
+                        ByteBuffer buffer = ByteBuffer.wrap(batch);
+                        while (buffer.hasRemaining()) channel.write(buffer);
+                        syncer.force(wal, channel, false);
+                        break;
+                    } catch (ClosedByInterruptException e) {
+                        interrupted |= Thread.interrupted();
+                    }
+                }
+            } catch (IOException e) {
+                // The batch is gone and later records would follow a hole, so the journal refuses further commits
+                broken = e;
+                throw e;
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+            SYNCS.increment();
+            durableSeq = upTo;
+        }
+    }
+
+    // Forces what recovery redid and what ended operations wrote, lets the owner persist its index, then rewrites the
+    // log with only the commits still in flight and deletes the staging files that are no longer needed
+    void checkpoint() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                forceAll(dirty);
+                finishEnded();
+                if (persist != null) persist.run();
+                Files.createDirectories(wal.getParent());
+                Path temp = wal.resolveSibling(wal.getFileName() + ".tmp");
+                long size = 0;
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    for (byte[] framed : unfinished.values()) {
+                        ByteBuffer buffer = ByteBuffer.wrap(framed);
+                        while (buffer.hasRemaining()) out.write(buffer);
+                        size += framed.length;
+                    }
+                    syncer.force(temp, out, false);
+                }
+                if (channel != null) channel.close();
+                channel = null;
+                Files.move(temp, wal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                force(wal.getParent());
+                channel = openLog();
+                broken = null;
+                pending.reset();
+                durableSeq = appendedSeq;
+                for (Path path : garbage) Files.deleteIfExists(path);
+                garbage.clear();
+                garbageBytes = 0;
+                dirty.clear();
+                logBytes = size;
+                records = unfinished.size();
+            }
+        }
+    }
+
+    private void close() {
+        synchronized (syncLock) {
+            try { if (channel != null) channel.close(); } catch (IOException e) { }
+            channel = null;
+        }
+    }
+
+    private FileChannel openLog() throws IOException {
+        Files.createDirectories(wal.getParent());
+        return FileChannel.open(wal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Commits without an end record, in log order; a torn or corrupt tail ends the log
+    private List<byte[]> readUnfinished() {
+        LinkedHashMap<Long, byte[]> commits = new LinkedHashMap<>();
+        if (!Files.exists(wal)) return new ArrayList<>();
+        long read = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(wal), 1 << 16))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length = in.readInt();
+                int expected = in.readInt();
+                if (length < 9 || length > MAX_RECORD) break;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != expected) break;
+                long tx = ByteBuffer.wrap(payload, 1, 8).getLong();
+                if (payload[0] == REC_COMMIT) commits.put(tx, payload);
+                else commits.remove(tx);
+                read += 8 + length;
+            }
+        } catch (IOException e) { }
+        try {
+            tornTail = Files.size(wal) != read;
+        } catch (IOException e) { tornTail = true; }
+        return new ArrayList<>(commits.values());
+    }
+
+    // Each path, then every directory holding one, so new names and renames are durable along with the content
+    private static void forceAll(Collection<Path> paths) throws IOException {
+        if (paths.isEmpty()) return;
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Path path : paths) {
+            force(path);
+            if (path.getParent() != null) directories.add(path.getParent());
+        }
+        for (Path directory : directories) force(directory);
+    }
+
+    // Directories are forced too, which makes renames and deletions inside them durable; a path that has since
+    // gone away needs nothing
+    private static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            syncer.force(path, channel, true);
+        } catch (NoSuchFileException e) {
+        } catch (IOException e) {
+            // Some platforms cannot open a directory for fsync
+            if (!Files.isDirectory(path)) throw e;
+        }
+    }
+}
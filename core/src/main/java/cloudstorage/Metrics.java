@@ -0,0 +1,365 @@
+package cloudstorage;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Process-wide operation timings and gauges, readable through JMX (domain "cloudstorage") and as Prometheus text.
+// Recording is a few atomic increments and never allocates, so it stays on; reads do the expensive work.
+//   long start = Metrics.UPLOAD.start();
+//   ... Metrics.UPLOAD.end(start, bytes, name);   or   Metrics.UPLOAD.fail(start, name);
+class Metrics {
+    private static final String DOMAIN = "cloudstorage";
+    private static final long SLOW_NANOS = Long.getLong("cloudstorage.metrics.slowMs", 1000) * 1_000_000;
+    private static final int SLOW_TRACES = 32;
+    private static final long RATE_WINDOW_NANOS = 5_000_000_000L;
+    // Prometheus bucket bounds in seconds; the fine histogram is folded into these on every scrape
+    private static final double[] BUCKETS = { 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05,
+            0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30 };
+    private static final Map<String, Operation> OPERATIONS = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> GAUGES = new ConcurrentHashMap<>();
+
+    static {
+        register("type=Gauges", new AttributesMBean("Queue depths, cache and pool state", () -> {
+            Map<String, Supplier<Object>> attributes = new TreeMap<>();
+            for (Gauge gauge : GAUGES.values()) attributes.put(gauge.name, () -> gauge.value.getAsDouble());
+            return attributes;
+        }));
+    }
+
+    static final Operation UPLOAD = operation("upload");
+    static final Operation DOWNLOAD = operation("download");
+    static final Operation DELETE = operation("delete");
+    static final Operation LIST = operation("list");
+    static final Operation LOGIN = operation("login");
+    static final Operation REGISTER = operation("register");
+
+    // Log-linear buckets in the style of HdrHistogram: 64 linear steps per power of two, so any recorded value is
+    // reported within 1.6% of itself, from nanoseconds to centuries, in a fixed 3712-slot array
+    static final class Histogram {
+        private static final int SUB_BITS = 7;
+        private static final int HALF = 1 << (SUB_BITS - 1);
+        private static final int SLOTS = index(Long.MAX_VALUE) + 1;
+
+        private final AtomicLongArray counts = new AtomicLongArray(SLOTS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        static int index(long value) {
+            int magnitude = 63 - Long.numberOfLeadingZeros(value | (2 * HALF - 1));
+            int shift = magnitude - (SUB_BITS - 1);
+            return (shift << (SUB_BITS - 1)) + (int) (value >>> shift);
+        }
+
+        static long lowerBound(int index) {
+            if (index < 2 * HALF) return index;
+            return (long) ((index & (HALF - 1)) + HALF) << ((index >> (SUB_BITS - 1)) - 1);
+        }
+
+        static long upperBound(int index) { return index + 1 == SLOTS ? Long.MAX_VALUE : lowerBound(index + 1) - 1; }
+
+        void record(long value) {
+            if (value < 0) value = 0;
+            counts.incrementAndGet(index(value));
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        long count() { return count.sum(); }
+
+        long sum() { return sum.sum(); }
+
+        long max() { return max.get(); }
+
+        double mean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        // The highest value that shares a slot with the requested rank, capped by the true maximum
+        long percentile(double quantile) {
+            long total = 0;
+            for (int i = 0; i < SLOTS; i++) total += counts.get(i);
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < SLOTS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) return Math.min(upperBound(i), max.get());
+            }
+            return max.get();
+        }
+
+        // Cumulative counts at each bound plus the total, read in one pass so the buckets agree with each other
+        long[] cumulative(long[] bounds) {
+            long[] result = new long[bounds.length + 1];
+            int bound = 0;
+            long seen = 0;
+            for (int i = 0; i < SLOTS; i++) {
+                while (bound < bounds.length && lowerBound(i) > bounds[bound]) result[bound++] = seen;
+                seen += counts.get(i);
+            }
+            while (bound < bounds.length) result[bound++] = seen;
+            result[bounds.length] = seen;
+            return result;
+        }
+    }
+
+    static final class Operation {
+        final String name;
+        final Histogram latency = new Histogram();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicReferenceArray<String> slow = new AtomicReferenceArray<>(SLOW_TRACES);
+        private final AtomicInteger slowNext = new AtomicInteger();
+        private long rateSampledAt = System.nanoTime();
+        private long rateSampledBytes = 0;
+        private double rate = 0;
+
+        Operation(String name) { this.name = name; }
+
+        long start() { return System.nanoTime(); }
+
+        void end(long start, long bytes, String detail) {
+            long nanos = System.nanoTime() - start;
+            latency.record(nanos);
+            if (bytes > 0) this.bytes.add(bytes);
+            if (nanos >= SLOW_NANOS) trace(nanos, bytes, detail, false);
+        }
+
+        void fail(long start, String detail) {
+            long nanos = System.nanoTime() - start;
+            latency.record(nanos);
+            errors.increment();
+            if (nanos >= SLOW_NANOS) trace(nanos, 0, detail, true);
+        }
+
+        long count() { return latency.count(); }
+
+        long bytes() { return bytes.sum(); }
+
+        long errors() { return errors.sum(); }
+
+        // Averaged over at least the last five seconds, so every reader sees the same figure between refreshes
+        synchronized double bytesPerSecond() {
+            long now = System.nanoTime();
+            if (now - rateSampledAt >= RATE_WINDOW_NANOS) {
+                long total = bytes.sum();
+                rate = (total - rateSampledBytes) * 1e9 / (now - rateSampledAt);
+                rateSampledAt = now;
+                rateSampledBytes = total;
+            }
+            return rate;
+        }
+
+        // Only slow calls get here, so the allocation stays off the common path
+        private void trace(long nanos, long bytes, String detail, boolean failed) {
+            String line = String.format("%tF %<tT %s %s %.1f ms %d bytes%s", System.currentTimeMillis(), name,
+                    detail == null ? "-" : detail, nanos / 1e6, bytes, failed ? " FAILED" : "");
+            slow.set(Math.floorMod(slowNext.getAndIncrement(), SLOW_TRACES), line);
+        }
+
+        String[] recentSlow() {
+            List<String> lines = new ArrayList<>();
+            int next = slowNext.get();
+            for (int i = 1; i <= SLOW_TRACES; i++) {
+                String line = slow.get(Math.floorMod(next - i, SLOW_TRACES));
+                if (line != null) lines.add(line);
+            }
+            return lines.toArray(new String[0]);
+        }
+    }
+
+    private static final class Gauge {
+        final String name;
+        final String help;
+        final DoubleSupplier value;
+        // Only ever goes up, so Prometheus can take rates of it
+        final boolean counter;
+
+        Gauge(String name, String help, DoubleSupplier value, boolean counter) {
+            this.name = name;
+            this.help = help;
+            this.value = value;
+            this.counter = counter;
+        }
+    }
+
+    static Operation operation(String name) {
+        return OPERATIONS.computeIfAbsent(name, key -> {
+            Operation op = new Operation(key);
+            register("type=Operation,name=" + key, new AttributesMBean("Timings for " + key, () -> {
+                Map<String, Supplier<Object>> a = new LinkedHashMap<>();
+                a.put("Count", op::count);
+                a.put("Errors", op::errors);
+                a.put("Bytes", op::bytes);
+                a.put("BytesPerSecond", op::bytesPerSecond);
+                a.put("MeanMillis", () -> op.latency.mean() / 1e6);
+                a.put("P50Millis", () -> op.latency.percentile(0.5) / 1e6);
+                a.put("P90Millis", () -> op.latency.percentile(0.9) / 1e6);
+                a.put("P99Millis", () -> op.latency.percentile(0.99) / 1e6);
+                a.put("P999Millis", () -> op.latency.percentile(0.999) / 1e6);
+                a.put("MaxMillis", () -> op.latency.max() / 1e6);
+                a.put("RecentSlow", op::recentSlow);
+                return a;
+            }));
+            return op;
+        });
+    }
+
+    // Registering a name again replaces the earlier gauge, so a re-created component reports its own state
+    static void gauge(String name, String help, DoubleSupplier value) {
+        GAUGES.put(name, new Gauge(name, help, value, false));
+    }
+
+    // A running total since start, exported to Prometheus as a counter named <name>_total; in JMX it sits with the gauges
+    static void counter(String name, String help, LongSupplier value) {
+        GAUGES.put(name, new Gauge(name, help, value::getAsLong, true));
+    }
+
+    // A JMX-only MBean whose attributes are named at read time, for figures keyed by user that have no place in
+    // Prometheus text
+    static void attributes(String properties, String description, Supplier<Map<String, Supplier<Object>>> attributes) {
+        register(properties, new AttributesMBean(description, attributes));
+    }
+
+    static void writePrometheus(StringBuilder out) {
+        long[] bounds = new long[BUCKETS.length];
+        for (int i = 0; i < bounds.length; i++) bounds[i] = (long) (BUCKETS[i] * 1e9);
+        out.append("# HELP cloudstorage_operation_seconds Latency of storage operations\n");
+        out.append("# TYPE cloudstorage_operation_seconds histogram\n");
+        List<Operation> operations = new ArrayList<>(OPERATIONS.values());
+        operations.sort(Comparator.comparing(op -> op.name));
+        for (Operation op : operations) {
+            long[] cumulative = op.latency.cumulative(bounds);
+            for (int i = 0; i < BUCKETS.length; i++)
+                out.append("cloudstorage_operation_seconds_bucket{op=\"").append(op.name).append("\",le=\"")
+                        .append(BUCKETS[i]).append("\"} ").append(cumulative[i]).append('\n');
+            out.append("cloudstorage_operation_seconds_bucket{op=\"").append(op.name).append("\",le=\"+Inf\"} ")
+                    .append(cumulative[BUCKETS.length]).append('\n');
+            out.append("cloudstorage_operation_seconds_sum{op=\"").append(op.name).append("\"} ")
+                    .append(op.latency.sum() / 1e9).append('\n');
+            out.append("cloudstorage_operation_seconds_count{op=\"").append(op.name).append("\"} ")
+                    .append(cumulative[BUCKETS.length]).append('\n');
+        }
+        counter(out, operations, "cloudstorage_operation_bytes_total", "Bytes moved by storage operations", Operation::bytes);
+        counter(out, operations, "cloudstorage_operation_errors_total", "Storage operations that failed", Operation::errors);
+        for (Gauge gauge : new TreeMap<>(GAUGES).values()) {
+            String name = "cloudstorage_" + gauge.name + (gauge.counter ? "_total" : "");
+            out.append("# HELP ").append(name).append(' ').append(gauge.help).append('\n');
+            out.append("# TYPE ").append(name).append(gauge.counter ? " counter\n" : " gauge\n");
+            out.append(name).append(' ');
+            if (gauge.counter) out.append((long) gauge.value.getAsDouble());
+            else out.append(gauge.value.getAsDouble());
+            out.append('\n');
+        }
+    }
+
+    private interface LongField {
+        long get(Operation op);
+    }
+
+    private static void counter(StringBuilder out, List<Operation> operations, String name, String help, LongField field) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (Operation op : operations)
+            out.append(name).append("{op=\"").append(op.name).append("\"} ").append(field.get(op)).append('\n');
+    }
+
+    // Opt-in: -Dcloudstorage.metrics.port=<n> serves /metrics on the loopback interface for a local Prometheus
+    static void startEndpointIfConfigured() {
+        Integer port = Integer.getInteger("cloudstorage.metrics.port");
+        if (port == null) return;
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", exchange -> {
+                try (exchange) {
+                    StringBuilder body = new StringBuilder(8192);
+                    writePrometheus(body);
+                    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    try (OutputStream out = exchange.getResponseBody()) { out.write(bytes); }
+                }
+            });
+            server.start();
+        } catch (IOException e) {
+            System.err.println("Metrics endpoint not started on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    private static void register(String properties, DynamicMBean bean) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(bean, name);
+        } catch (JMException e) { }
+    }
+
+    // Read-only attributes backed by suppliers; the attribute set is re-read on every call, so new gauges show up
+    private static final class AttributesMBean implements DynamicMBean {
+        private final String description;
+        private final Supplier<Map<String, Supplier<Object>>> attributes;
+
+        AttributesMBean(String description, Supplier<Map<String, Supplier<Object>>> attributes) {
+            this.description = description;
+            this.attributes = attributes;
+        }
+
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Supplier<Object> value = attributes.get().get(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value.get();
+        }
+
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Supplier<Object>> all = attributes.get();
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                Supplier<Object> value = all.get(name);
+                if (value != null) list.add(new Attribute(name, value.get()));
+            }
+            return list;
+        }
+
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        public AttributeList setAttributes(AttributeList attributes) { return new AttributeList(); }
+
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(action));
+        }
+
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> infos = new ArrayList<>();
+            for (Map.Entry<String, Supplier<Object>> entry : attributes.get().entrySet()) {
+                Object sample = entry.getValue().get();
+                infos.add(new MBeanAttributeInfo(entry.getKey(), sample == null ? "java.lang.Object" : sample.getClass().getName(),
+                        entry.getKey(), true, false, false));
+            }
+            return new MBeanInfo(getClass().getName(), description, infos.toArray(new MBeanAttributeInfo[0]),
+                    null, null, null);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Decides where each user's files are kept. While data is being moved to a new layout a file may still be where an
+// earlier layout put it, and locate() finds it there.
+interface Placement {
+    // Where the file is now, or where a new file of that name belongs
+    Path locate(String userName, String name);
+
+    // A staging directory on the same volume as target, so a file staged there can be renamed onto it
+    Path stagingDir(String userName, Path target);
+
+    // Every staging directory the user can have, for clearing out after a crash
+    List<Path> stagingDirs(String userName);
+
+    // Every directory that can hold the user's files, for listing them and noticing changes
+    List<Path> directories(String userName);
+
+    // Top-level directory of every volume that can hold files
+    List<Path> roots();
+
+    // Renames source onto target. Across file systems the content is copied to scratch, on target's file system,
+    // forced and renamed into place before source is deleted, so a crash leaves a complete file at one or both.
+    static void move(Path source, Path target, Path scratch) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.createDirectories(scratch.getParent());
+            Files.copy(source, scratch, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            try (FileChannel channel = FileChannel.open(scratch, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(scratch, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(source);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package cloudstorage;
+
+interface ProgressListener {
+    ProgressListener NONE = (bytesDone, bytesTotal) -> { };
+
+    // bytesTotal is -1 when the source length is not known up front
+    void onProgress(long bytesDone, long bytesTotal);
+}
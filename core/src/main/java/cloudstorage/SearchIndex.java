@@ -0,0 +1,605 @@
+package cloudstorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Per-user inverted index, laid out like FileCatalog: a compacted snapshot plus an append-only log of changes.
+// Snapshot: "CSX1", dictionary offset, then posting lists, then the document names and the sorted term dictionary.
+// A posting list is a run of (doc delta, freq, position deltas...) varints; only the dictionary is kept in memory.
+class SearchIndex {
+    private static final String INDEX_DIR = "search/";
+    private static final int SNAPSHOT_MAGIC = 0x43535831;  // "CSX1"
+    private static final int HEADER_BYTES = 12;
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int MAX_TOKEN_BYTES = 64;
+    // Positions for one huge file would otherwise dominate memory while it uploads
+    private static final int MAX_TOKENS_PER_DOC = 1 << 22;
+    // A NUL byte this early means binary content, which is registered but not tokenized
+    private static final int BINARY_SNIFF_BYTES = 8192;
+    private static final long MAX_DELTA_BYTES = 16L << 20;
+    private static final int MIN_COMPACT_DELETES = 64;
+    private static final ConcurrentHashMap<String, SearchIndex> OPEN = new ConcurrentHashMap<>();
+
+    // Collects one file's terms while its bytes stream past on the way to disk
+    static final class Document {
+        private final Map<String, IntList> positions = new HashMap<>();
+        private final byte[] token = new byte[MAX_TOKEN_BYTES];
+        private int tokenLength = 0;
+        private boolean overlong = false;
+        private boolean binary = false;
+        private long seen = 0;
+        private int position = 0;
+
+        public ReadableByteChannel tee(ReadableByteChannel src) {
+            return new ReadableByteChannel() {
+                public int read(ByteBuffer dst) throws IOException {
+                    int start = dst.position();
+                    int n = src.read(dst);
+                    if (n > 0) {
+                        ByteBuffer view = dst.duplicate();
+                        view.limit(start + n).position(start);
+                        accept(view);
+                    }
+                    return n;
+                }
+
+                public boolean isOpen() { return src.isOpen(); }
+
+                public void close() throws IOException { src.close(); }
+            };
+        }
+
+        public void accept(ByteBuffer data) {
+            while (data.hasRemaining() && !binary && position < MAX_TOKENS_PER_DOC) {
+                byte b = data.get();
+                if (seen++ < BINARY_SNIFF_BYTES && b == 0) {
+                    binary = true;
+                    positions.clear();
+                } else if (isTokenByte(b)) {
+                    if (tokenLength < MAX_TOKEN_BYTES) token[tokenLength++] = b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+                    else overlong = true;
+                } else {
+                    endToken();
+                }
+            }
+        }
+
+        public int termCount() { return positions.size(); }
+
+        private void finish() { if (!binary) endToken(); }
+
+        private void endToken() {
+            if (tokenLength > 0 && !overlong)
+                positions.computeIfAbsent(new String(token, 0, tokenLength, StandardCharsets.UTF_8), t -> new IntList()).add(position);
+            if (tokenLength > 0) position++;
+            tokenLength = 0;
+            overlong = false;
+        }
+
+        // Letters and digits, plus every byte of a multi-byte UTF-8 character
+        private static boolean isTokenByte(byte b) {
+            return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b < 0;
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    private static final class ByteSink {
+        byte[] bytes = new byte[16];
+        int size = 0;
+        int lastDoc = 0;
+
+        void writeVInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((byte) value);
+        }
+
+        void write(byte b) {
+            if (size == bytes.length) bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = b;
+        }
+
+        void write(byte[] source, int offset, int length) {
+            if (size + length > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(size + length, size * 2));
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+    }
+
+    interface PostingVisitor {
+        void visit(int doc, int[] positions, int freq);
+    }
+
+    private final File snapshotFile;
+    private final File logFile;
+    // Doc ids are dense and only grow until the next compaction renumbers them
+    private final List<String> docNames = new ArrayList<>();
+    private final Map<String, Integer> docIds = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    // Snapshot dictionary; posting lists are read from disk per query and left to the page cache
+    private String[] terms = new String[0];
+    private long[] offsets = new long[0];
+    private int[] lengths = new int[0];
+    private FileChannel postings;
+    // Documents added since the snapshot; the sorted key view is only rebuilt for prefix queries and compaction
+    private final HashMap<String, ByteSink> delta = new HashMap<>();
+    private String[] deltaTerms;
+    private long deltaBytes = 0;
+    // Read from disk on first use rather than at load, like FileCatalog
+    private boolean opened = false;
+
+    private SearchIndex(String userName) {
+        this.snapshotFile = new File(INDEX_DIR + userName + ".index");
+        this.logFile = new File(INDEX_DIR + userName + ".log");
+    }
+
+    public static SearchIndex load(String userName) {
+        return OPEN.computeIfAbsent(userName, SearchIndex::new);
+    }
+
+    // Forgets the shared instance so the next load() reads the index from disk; only once no session of the user is open
+    static void unload(String userName) {
+        SearchIndex index = OPEN.remove(userName);
+        if (index == null) return;
+        synchronized (index) {
+            try { if (index.postings != null) index.postings.close(); } catch (IOException e) { }
+        }
+    }
+
+    public static Document newDocument() { return new Document(); }
+
+    public synchronized boolean contains(String name) {
+        open();
+        return docIds.containsKey(name);
+    }
+
+    public synchronized int size() {
+        open();
+        return docIds.size();
+    }
+
+    // Replaces any earlier version of the file; binary documents are registered with no terms
+    public synchronized void add(String name, Document doc) {
+        open();
+        doc.finish();
+        remove(name);
+        int id = docNames.size();
+        // Every term's (freq, position deltas) is encoded into one buffer; ends[t] marks where term t stops
+        String[] docTerms = new String[doc.positions.size()];
+        int[] ends = new int[docTerms.length];
+        ByteSink encoded = new ByteSink();
+        int t = 0;
+        for (Map.Entry<String, IntList> entry : doc.positions.entrySet()) {
+            IntList list = entry.getValue();
+            encoded.writeVInt(list.size);
+            int last = 0;
+            for (int i = 0; i < list.size; i++) {
+                encoded.writeVInt(list.values[i] - last);
+                last = list.values[i];
+            }
+            docTerms[t] = entry.getKey();
+            ends[t++] = encoded.size;
+        }
+        applyAdd(id, name, docTerms, encoded.bytes, ends);
+        try (DataOutputStream out = openLog()) {
+            out.writeByte(OP_ADD);
+            out.writeInt(id);
+            out.writeUTF(name);
+            out.writeInt(docTerms.length);
+            for (int i = 0; i < docTerms.length; i++) {
+                int start = i == 0 ? 0 : ends[i - 1];
+                out.writeUTF(docTerms[i]);
+                out.writeInt(ends[i] - start);
+                out.write(encoded.bytes, start, ends[i] - start);
+            }
+        } catch (IOException e) { }
+        maybeCompact();
+    }
+
+    public synchronized boolean remove(String name) {
+        open();
+        Integer id = docIds.remove(name);
+        if (id == null) return false;
+        deleted.set(id);
+        try (DataOutputStream out = openLog()) {
+            out.writeByte(OP_REMOVE);
+            out.writeInt(id);
+        } catch (IOException e) { }
+        maybeCompact();
+        return true;
+    }
+
+    public synchronized void removeAll(Collection<String> names) {
+        for (String name : names) remove(name);
+    }
+
+    // Clauses are ANDed: plain terms, prefix* terms and "quoted phrases"
+    public synchronized List<String> search(String query) throws IOException {
+        open();
+        BitSet result = null;
+        for (String clause : parse(query)) {
+            BitSet docs;
+            if (clause.startsWith("\"")) {
+                docs = phrase(tokenize(clause.substring(1)));
+            } else if (clause.endsWith("*")) {
+                List<String> tokens = tokenize(clause.substring(0, clause.length() - 1));
+                docs = tokens.isEmpty() ? new BitSet() : prefix(tokens.get(0));
+            } else {
+                List<String> tokens = tokenize(clause);
+                docs = tokens.size() == 1 ? docsOf(tokens.get(0)) : phrase(tokens);
+            }
+            if (result == null) result = docs;
+            else result.and(docs);
+            if (result.isEmpty()) break;
+        }
+        List<String> names = new ArrayList<>();
+        if (result == null) return names;
+        result.andNot(deleted);
+        for (int doc = result.nextSetBit(0); doc >= 0; doc = result.nextSetBit(doc + 1)) names.add(docNames.get(doc));
+        return names;
+    }
+
+    static List<String> tokenize(String text) {
+        Document doc = new Document();
+        doc.accept(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        doc.finish();
+        String[] ordered = new String[doc.position];
+        for (Map.Entry<String, IntList> entry : doc.positions.entrySet())
+            for (int i = 0; i < entry.getValue().size; i++) ordered[entry.getValue().values[i]] = entry.getKey();
+        List<String> tokens = new ArrayList<>();
+        for (String token : ordered) if (token != null) tokens.add(token);
+        return tokens;
+    }
+
+    private static List<String> parse(String query) {
+        List<String> clauses = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) end = query.length();
+                clauses.add(query.substring(i, end));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < query.length() && !Character.isWhitespace(query.charAt(end)) && query.charAt(end) != '"') end++;
+                clauses.add(query.substring(i, end));
+                i = end;
+            }
+        }
+        return clauses;
+    }
+
+    private BitSet docsOf(String term) throws IOException {
+        BitSet docs = new BitSet();
+        forEachPosting(term, (doc, positions, freq) -> docs.set(doc));
+        return docs;
+    }
+
+    private BitSet prefix(String prefix) throws IOException {
+        BitSet docs = new BitSet();
+        for (int i = lowerBound(prefix); i < terms.length && terms[i].startsWith(prefix); i++)
+            visit(readPostings(i), (doc, positions, freq) -> docs.set(doc));
+        String[] sorted = sortedDeltaTerms();
+        int from = Arrays.binarySearch(sorted, prefix);
+        for (int i = from >= 0 ? from : -from - 1; i < sorted.length && sorted[i].startsWith(prefix); i++) {
+            ByteSink sink = delta.get(sorted[i]);
+            visit(ByteBuffer.wrap(sink.bytes, 0, sink.size), (doc, positions, freq) -> docs.set(doc));
+        }
+        return docs;
+    }
+
+    // Candidates come from intersecting the terms' doc sets; positions are only decoded for those
+    private BitSet phrase(List<String> tokens) throws IOException {
+        if (tokens.isEmpty()) return new BitSet();
+        BitSet candidates = docsOf(tokens.get(0));
+        for (int i = 1; i < tokens.size() && !candidates.isEmpty(); i++) candidates.and(docsOf(tokens.get(i)));
+        if (tokens.size() == 1 || candidates.isEmpty()) return candidates;
+        List<Map<Integer, int[]>> positions = new ArrayList<>();
+        for (String token : tokens) {
+            Map<Integer, int[]> byDoc = new HashMap<>();
+            forEachPosting(token, (doc, list, freq) -> {
+                if (candidates.get(doc)) byDoc.put(doc, Arrays.copyOf(list, freq));
+            });
+            positions.add(byDoc);
+        }
+        BitSet matches = new BitSet();
+        for (int doc = candidates.nextSetBit(0); doc >= 0; doc = candidates.nextSetBit(doc + 1)) {
+            for (int start : positions.get(0).get(doc)) {
+                boolean match = true;
+                for (int j = 1; j < tokens.size() && match; j++)
+                    match = Arrays.binarySearch(positions.get(j).get(doc), start + j) >= 0;
+                if (match) {
+                    matches.set(doc);
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private void forEachPosting(String term, PostingVisitor visitor) throws IOException {
+        int i = Arrays.binarySearch(terms, term);
+        if (i >= 0) visit(readPostings(i), visitor);
+        ByteSink sink = delta.get(term);
+        if (sink != null) visit(ByteBuffer.wrap(sink.bytes, 0, sink.size), visitor);
+    }
+
+    private static void visit(ByteBuffer list, PostingVisitor visitor) {
+        int doc = 0;
+        int[] positions = new int[16];
+        while (list.hasRemaining()) {
+            doc += readVInt(list);
+            int freq = readVInt(list);
+            if (freq > positions.length) positions = new int[Math.max(freq, positions.length * 2)];
+            int position = 0;
+            for (int i = 0; i < freq; i++) positions[i] = position += readVInt(list);
+            visitor.visit(doc, positions, freq);
+        }
+    }
+
+    private static int readVInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private ByteBuffer readPostings(int term) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(lengths[term]);
+        long position = offsets[term];
+        while (buffer.hasRemaining()) {
+            if (postings.read(buffer, position + buffer.position()) < 0) throw new EOFException("Truncated index");
+        }
+        return buffer.flip();
+    }
+
+    private String[] sortedDeltaTerms() {
+        if (deltaTerms == null) {
+            deltaTerms = delta.keySet().toArray(new String[0]);
+            Arrays.sort(deltaTerms);
+        }
+        return deltaTerms;
+    }
+
+    private int lowerBound(String key) {
+        int i = Arrays.binarySearch(terms, key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private void applyAdd(int id, String name, String[] docTerms, byte[] encoded, int[] ends) {
+        docNames.add(name);
+        docIds.put(name, id);
+        for (int i = 0; i < docTerms.length; i++) {
+            ByteSink sink = delta.get(docTerms[i]);
+            if (sink == null) {
+                sink = new ByteSink();
+                delta.put(docTerms[i], sink);
+                deltaTerms = null;
+            }
+            int before = sink.size;
+            int start = i == 0 ? 0 : ends[i - 1];
+            sink.writeVInt(id - sink.lastDoc);
+            sink.write(encoded, start, ends[i] - start);
+            sink.lastDoc = id;
+            deltaBytes += sink.size - before;
+        }
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        logFile.getParentFile().mkdirs();
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+    }
+
+    private void open() {
+        if (opened) return;
+        opened = true;
+        try {
+            readSnapshot();
+        } catch (IOException e) {
+            // Log records refer to snapshot doc ids, so without the snapshot they are meaningless too
+            resetEmpty();
+            logFile.delete();
+            return;
+        }
+        if (!replayLog()) compact();
+    }
+
+    private void resetEmpty() {
+        docNames.clear();
+        docIds.clear();
+        deleted.clear();
+        terms = new String[0];
+        offsets = new long[0];
+        lengths = new int[0];
+    }
+
+    private void readSnapshot() throws IOException {
+        if (!snapshotFile.exists()) return;
+        FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) if (channel.read(header, header.position()) < 0) throw new EOFException();
+            header.flip();
+            if (header.getInt() != SNAPSHOT_MAGIC) throw new IOException("Not a search index: " + snapshotFile);
+            long dictOffset = header.getLong();
+            DataInputStream in = new DataInputStream(FileCatalog.stream(
+                    channel.map(FileChannel.MapMode.READ_ONLY, dictOffset, channel.size() - dictOffset)));
+            int docCount = in.readInt();
+            for (int i = 0; i < docCount; i++) {
+                String name = in.readUTF();
+                docIds.put(name, docNames.size());
+                docNames.add(name);
+            }
+            int termCount = in.readInt();
+            terms = new String[termCount];
+            offsets = new long[termCount];
+            lengths = new int[termCount];
+            for (int i = 0; i < termCount; i++) {
+                terms[i] = in.readUTF();
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+            }
+            postings = channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Returns false if the log ends in a torn record, so the caller compacts it away
+    private boolean replayLog() {
+        if (!logFile.exists()) return true;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            while (true) {
+                byte op;
+                try { op = in.readByte(); } catch (EOFException e) { return true; }
+                int id = in.readInt();
+                if (op == OP_REMOVE) {
+                    String name = id < docNames.size() ? docNames.get(id) : null;
+                    Integer current = name == null ? null : docIds.get(name);
+                    if (current != null && current == id) docIds.remove(name);
+                    deleted.set(id);
+                    continue;
+                }
+                String name = in.readUTF();
+                int count = in.readInt();
+                String[] docTerms = new String[count];
+                int[] ends = new int[count];
+                ByteSink encoded = new ByteSink();
+                for (int i = 0; i < count; i++) {
+                    docTerms[i] = in.readUTF();
+                    int length = in.readInt();
+                    if (encoded.size + length > encoded.bytes.length)
+                        encoded.bytes = Arrays.copyOf(encoded.bytes, Math.max(encoded.size + length, encoded.size * 2));
+                    in.readFully(encoded.bytes, encoded.size, length);
+                    encoded.size += length;
+                    ends[i] = encoded.size;
+                }
+                if (id != docNames.size()) return false;
+                applyAdd(id, name, docTerms, encoded.bytes, ends);
+            }
+        } catch (IOException e) { return false; }
+    }
+
+    private void maybeCompact() {
+        if (deltaBytes > MAX_DELTA_BYTES || deleted.cardinality() > Math.max(MIN_COMPACT_DELETES, docIds.size())) compact();
+    }
+
+    // Merges snapshot and delta term by term, dropping deleted docs and renumbering the rest densely
+    public synchronized void compact() {
+        open();
+        int[] remap = new int[docNames.size()];
+        List<String> liveNames = new ArrayList<>();
+        for (int id = 0; id < remap.length; id++) {
+            if (deleted.get(id)) remap[id] = -1;
+            else {
+                remap[id] = liveNames.size();
+                liveNames.add(docNames.get(id));
+            }
+        }
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        List<String> newTerms = new ArrayList<>();
+        long[] newOffsets = new long[16];
+        int[] newLengths = new int[16];
+        try {
+            snapshotFile.getParentFile().mkdirs();
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(out.position(HEADER_BYTES)), 1 << 16);
+                long position = HEADER_BYTES;
+                String[] sorted = sortedDeltaTerms();
+                int i = 0;
+                int d = 0;
+                while (i < terms.length || d < sorted.length) {
+                    int order = i == terms.length ? 1 : d == sorted.length ? -1 : terms[i].compareTo(sorted[d]);
+                    String term = order <= 0 ? terms[i] : sorted[d];
+                    ByteSink merged = new ByteSink();
+                    if (order <= 0) reencode(readPostings(i++), remap, merged);
+                    if (order >= 0) {
+                        ByteSink sink = delta.get(sorted[d++]);
+                        reencode(ByteBuffer.wrap(sink.bytes, 0, sink.size), remap, merged);
+                    }
+                    if (merged.size == 0) continue;
+                    stream.write(merged.bytes, 0, merged.size);
+                    int n = newTerms.size();
+                    if (n == newOffsets.length) {
+                        newOffsets = Arrays.copyOf(newOffsets, n * 2);
+                        newLengths = Arrays.copyOf(newLengths, n * 2);
+                    }
+                    newTerms.add(term);
+                    newOffsets[n] = position;
+                    newLengths[n] = merged.size;
+                    position += merged.size;
+                }
+                DataOutputStream dict = new DataOutputStream(stream);
+                dict.writeInt(liveNames.size());
+                for (String name : liveNames) dict.writeUTF(name);
+                dict.writeInt(newTerms.size());
+                for (int t = 0; t < newTerms.size(); t++) {
+                    dict.writeUTF(newTerms.get(t));
+                    dict.writeLong(newOffsets[t]);
+                    dict.writeInt(newLengths[t]);
+                }
+                dict.flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(SNAPSHOT_MAGIC).putLong(position).flip();
+                while (header.hasRemaining()) out.write(header, header.position());
+                out.force(true);
+            }
+            Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        logFile.delete();
+        resetEmpty();
+        delta.clear();
+        deltaTerms = null;
+        deltaBytes = 0;
+        try {
+            if (postings != null) postings.close();
+            postings = null;
+            readSnapshot();
+        } catch (IOException e) { resetEmpty(); }
+    }
+
+    private static void reencode(ByteBuffer list, int[] remap, ByteSink out) {
+        int doc = 0;
+        while (list.hasRemaining()) {
+            doc += readVInt(list);
+            int start = list.position();
+            int freq = readVInt(list);
+            for (int i = 0; i < freq; i++) readVInt(list);
+            if (remap[doc] < 0) continue;
+            out.writeVInt(remap[doc] - out.lastDoc);
+            out.lastDoc = remap[doc];
+            out.write(list.array(), list.arrayOffset() + start, list.position() - start);
+        }
+    }
+}
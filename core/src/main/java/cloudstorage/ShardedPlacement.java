@@ -0,0 +1,253 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+// Files are kept at <volume>/<user>/<xx>.d/<name>. The volume is picked by consistent hashing of user and name over
+// the roots in -Dcloudstorage.volumes (comma-separated, default user_files), so adding a volume moves only the files
+// the ring now gives it. xx is one of 256 shards from the name's hash, which keeps any one directory to a 256th of a
+// user's files on that volume. volumes.layout lists the layout in use first and then any earlier ones that may
+// still hold files; a background rebalancer moves those files over and then drops the earlier layouts. Before the
+// first run everything sits in the flat user_files/<user>/ directories, which count as an earlier layout.
+class ShardedPlacement implements Placement {
+    private static final Path LAYOUT_FILE = Paths.get("volumes.layout");
+    private static final String LEGACY_ROOT = "user_files";
+    private static final String STAGING = "staging.d";
+    private static final int SHARDS = 256;
+    // Points per volume on the ring; more evens out the share each volume gets
+    private static final int VNODES = Integer.getInteger("cloudstorage.volumes.vnodes", 128);
+    private static final String[] SHARD_NAMES = new String[SHARDS];
+    private static final LongAdder MOVED = new LongAdder();
+    private static final ShardedPlacement SHARED;
+
+    static {
+        for (int i = 0; i < SHARDS; i++) SHARD_NAMES[i] = String.format("%02x.d", i);
+        Metrics.counter("volume_files_moved", "Files the rebalancer has moved onto the volume the ring gives them",
+                MOVED::sum);
+        try {
+            SHARED = new ShardedPlacement(parseRoots(System.getProperty("cloudstorage.volumes", LEGACY_ROOT)),
+                    LAYOUT_FILE);
+        } catch (IOException e) { throw new UncheckedIOException("Could not read " + LAYOUT_FILE, e); }
+    }
+
+    // One way of laying files out over a set of roots; flat is the single directory per user from before sharding
+    static final class Layout {
+        final boolean flat;
+        final List<Path> roots;
+        private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+        Layout(boolean flat, List<Path> roots) {
+            this.flat = flat;
+            this.roots = roots;
+            for (int i = 0; i < roots.size(); i++) {
+                for (int point = 0; point < VNODES; point++) ring.put(hash(roots.get(i) + "#" + point), i);
+            }
+        }
+
+        Path path(String userName, String name) {
+            if (flat) return roots.get(0).resolve(userName).resolve(name);
+            Map.Entry<Long, Integer> volume = ring.ceilingEntry(hash(userName + '\0' + name));
+            if (volume == null) volume = ring.firstEntry();
+            int shard = (int) (mix(hash(name) ^ 0x9E3779B97F4A7C15L) & (SHARDS - 1));
+            return roots.get(volume.getValue()).resolve(userName).resolve(SHARD_NAMES[shard]).resolve(name);
+        }
+
+        List<Path> directories(String userName) {
+            if (flat) return List.of(roots.get(0).resolve(userName));
+            List<Path> directories = new ArrayList<>(roots.size() * SHARDS);
+            for (Path root : roots) {
+                Path user = root.resolve(userName);
+                for (String shard : SHARD_NAMES) directories.add(user.resolve(shard));
+            }
+            return directories;
+        }
+
+        String describe() {
+            StringBuilder line = new StringBuilder(flat ? "flat" : "sharded");
+            for (Path root : roots) line.append('\t').append(root);
+            return line.toString();
+        }
+
+        static Layout parse(String line) {
+            String[] fields = line.split("\t");
+            List<Path> roots = new ArrayList<>();
+            for (int i = 1; i < fields.length; i++) roots.add(Paths.get(fields[i]));
+            return new Layout(fields[0].equals("flat"), roots);
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Layout && ((Layout) other).flat == flat && ((Layout) other).roots.equals(roots);
+        }
+
+        public int hashCode() { return roots.hashCode() * 31 + (flat ? 1 : 0); }
+    }
+
+    private final Path layoutFile;
+    private final Layout current;
+    // Layouts that may still hold files, checked in order when a file is not where the current one puts it
+    private volatile List<Layout> earlier;
+
+    ShardedPlacement(List<Path> roots, Path layoutFile) throws IOException {
+        this.layoutFile = layoutFile;
+        current = new Layout(false, roots);
+        List<Layout> recorded = new ArrayList<>();
+        if (Files.exists(layoutFile)) {
+            for (String line : Files.readAllLines(layoutFile, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) recorded.add(Layout.parse(line));
+            }
+        } else {
+            recorded.add(new Layout(true, List.of(Paths.get(LEGACY_ROOT))));
+        }
+        recorded.remove(current);
+        earlier = List.copyOf(recorded);
+        if (earlier.isEmpty()) return;
+        // Recorded before any file is placed by the new layout, so a later change of volumes still finds them
+        List<Layout> layouts = new ArrayList<>();
+        layouts.add(current);
+        layouts.addAll(earlier);
+        writeLayout(layouts);
+        Thread rebalancer = new Thread(this::rebalance, "volume-rebalance");
+        rebalancer.setDaemon(true);
+        rebalancer.start();
+    }
+
+    public static ShardedPlacement shared() { return SHARED; }
+
+    public Path locate(String userName, String name) {
+        Path placed = current.path(userName, name);
+        List<Layout> before = earlier;
+        if (before.isEmpty() || Files.exists(placed)) return placed;
+        for (Layout layout : before) {
+            Path path = layout.path(userName, name);
+            if (Files.isRegularFile(path)) return path;
+        }
+        return placed;
+    }
+
+    public Path stagingDir(String userName, Path target) {
+        for (Path root : roots()) {
+            if (target.startsWith(root)) return root.resolve(userName).resolve(STAGING);
+        }
+        return current.roots.get(0).resolve(userName).resolve(STAGING);
+    }
+
+    public List<Path> stagingDirs(String userName) {
+        List<Path> directories = new ArrayList<>();
+        for (Path root : roots()) directories.add(root.resolve(userName).resolve(STAGING));
+        return directories;
+    }
+
+    public List<Path> directories(String userName) {
+        Set<Path> directories = new LinkedHashSet<>(current.directories(userName));
+        for (Layout layout : earlier) directories.addAll(layout.directories(userName));
+        return new ArrayList<>(directories);
+    }
+
+    public List<Path> roots() {
+        Set<Path> roots = new LinkedHashSet<>(current.roots);
+        for (Layout layout : earlier) roots.addAll(layout.roots);
+        return new ArrayList<>(roots);
+    }
+
+    // True once no earlier layout can hold files
+    public boolean isSettled() { return earlier.isEmpty(); }
+
+    // Moves every file an earlier layout put elsewhere to where the current one puts it, then forgets the earlier
+    // layouts. A failure leaves them recorded, so lookups keep checking them and the next start tries again.
+    private void rebalance() {
+        try {
+            for (Layout layout : earlier) {
+                for (String userName : users(layout)) {
+                    for (Path directory : layout.directories(userName)) {
+                        if (!Files.isDirectory(directory)) continue;
+                        List<Path> files = new ArrayList<>();
+                        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+                            for (Path file : entries) files.add(file);
+                        }
+                        for (Path file : files) moveHome(userName, file);
+                    }
+                }
+            }
+            writeLayout(List.of(current));
+            earlier = List.of();
+        } catch (IOException | DirectoryIteratorException e) { }
+    }
+
+    // Under the file's own lock, so uploads, downloads and deletes of it wait for the move
+    private void moveHome(String userName, Path source) throws IOException {
+        String name = source.getFileName().toString();
+        Path target = current.path(userName, name);
+        if (target.equals(source)) return;
+        Lock lock = UploadFile.lockFor(userName, name).writeLock();
+        lock.lock();
+        try {
+            if (!Files.isRegularFile(source)) return;
+            // A move cut short after the copy landed; locate() already prefers the copy
+            if (Files.exists(target)) {
+                Files.delete(source);
+                return;
+            }
+            Files.createDirectories(target.getParent());
+            Placement.move(source, target, stagingDir(userName, target).resolve("rebalance-" + name));
+            MOVED.increment();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Set<String> users(Layout layout) throws IOException {
+        Set<String> users = new TreeSet<>();
+        for (Path root : layout.roots) {
+            if (!Files.isDirectory(root)) continue;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, Files::isDirectory)) {
+                for (Path entry : entries) users.add(entry.getFileName().toString());
+            }
+        }
+        return users;
+    }
+
+    private void writeLayout(List<Layout> layouts) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (Layout layout : layouts) text.append(layout.describe()).append('\n');
+        Path temp = layoutFile.resolveSibling(layoutFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) out.write(buffer);
+            out.force(true);
+        }
+        Files.move(temp, layoutFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static List<Path> parseRoots(String property) {
+        List<Path> roots = new ArrayList<>();
+        for (String root : property.split(",")) {
+            if (!root.isBlank()) roots.add(Paths.get(root.strip()).normalize());
+        }
+        if (roots.isEmpty()) throw new IllegalArgumentException("cloudstorage.volumes names no volume");
+        return roots;
+    }
+
+    // 64-bit FNV-1a, finished with the SplitMix64 mixer so nearby keys land far apart on the ring
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
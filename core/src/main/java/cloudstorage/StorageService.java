@@ -0,0 +1,52 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+// Headless entry point to one user's store; the Swing GUI and StorageHttpServer both go through it
+interface StorageService {
+    String getUserName();
+
+    // Replaces an existing file with a new version; the replaced content stays available through versions()
+    long upload(String fileName, ReadableByteChannel content, long expectedSize, ProgressListener listener) throws IOException;
+
+    long download(String fileName, WritableByteChannel target, ProgressListener listener) throws IOException;
+
+    // Hands the size to target once the file is read-locked and streams into the channel it returns, so a length sent
+    // up front matches the bytes that follow even while the file is being replaced
+    long download(String fileName, SizedTarget target, ProgressListener listener) throws IOException;
+
+    interface SizedTarget {
+        WritableByteChannel open(long size) throws IOException;
+    }
+
+    // Earlier versions of a file, oldest first; the current content is not listed
+    List<VersionStore.Version> versions(String fileName);
+
+    long downloadVersion(String fileName, int number, WritableByteChannel target, ProgressListener listener) throws IOException;
+
+    List<String> list();
+
+    boolean delete(String fileName);
+
+    // Null when no such file exists
+    FileCatalog.Entry stat(String fileName);
+
+    // Bytes and files stored, with the quotas they count against
+    Usage usage();
+
+    // Names of files whose content matches every clause: term, prefix* or "quoted phrase"
+    List<String> search(String query) throws IOException;
+
+    // Streams every file whose name matches the glob, or all of them for a blank one, into a ZIP, TAR or .tar.gz
+    // (ArchiveWriter.ZIP, TAR or TAR_GZ); files that cannot be read are reported and left out
+    BatchTransfer.Result exportArchive(String glob, byte format, WritableByteChannel out, ProgressListener listener,
+                                       BooleanSupplier cancelled) throws IOException;
+
+    // Stores every file in a ZIP, TAR or .tar.gz stream, each as a new version of any file of the same name
+    BatchTransfer.Result importArchive(ReadableByteChannel in, ProgressListener listener,
+                                       BooleanSupplier cancelled) throws IOException;
+}
@@ -0,0 +1,21 @@
+package cloudstorage;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Fixed pool of read/write locks picked by key hash, so lock memory stays bounded however many files exist
+class StripedLocks {
+    private final ReadWriteLock[] stripes;
+
+    public StripedLocks(int minimumStripes) {
+        int count = Integer.highestOneBit(Math.max(1, minimumStripes - 1)) << 1;
+        stripes = new ReadWriteLock[count];
+        for (int i = 0; i < count; i++) stripes[i] = new ReentrantReadWriteLock();
+    }
+
+    public ReadWriteLock forKey(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,210 @@
+package cloudstorage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+// Random access by line to a file of any size, for viewing without loading it. The file is memory-mapped and a
+// background thread records where every STRIDE-th line starts, so reaching any line scans at most STRIDE lines from
+// the nearest checkpoint. Lines longer than MAX_LINE bytes are split, which keeps every step bounded even for a file
+// with no newlines at all. Lines are numbered from 0. Reads throw UncheckedIOException if the file shrinks underneath.
+class TextPager implements Closeable {
+    static final int STRIDE = 64;
+    static final int MAX_LINE = 16 << 10;
+    private static final long SEGMENT = 1L << 30;
+    private static final int SCAN_BUFFER = 1 << 20;
+
+    private final Path path;
+    private final boolean temporary;
+    private final long size;
+    private final MappedByteBuffer[] segments;
+    private final Thread indexer;
+    // checkpoints[i] is the offset of line i * STRIDE; grows while indexing, published through lineCount
+    private volatile long[] checkpoints = new long[1024];
+    private volatile long lineCount = 0;
+    private volatile boolean indexed = false;
+    private volatile boolean closed = false;
+
+    // A temporary file, such as an inflated copy of a compressed one, is deleted on close
+    TextPager(Path path, boolean temporary) throws IOException {
+        this.path = path;
+        this.temporary = temporary;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT - 1) / SEGMENT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * SEGMENT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT, size - start));
+            }
+        }
+        indexer = new Thread(this::index, "text-pager-index");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    public long size() { return size; }
+
+    // Lines found so far; final once isIndexed()
+    public long lineCount() { return lineCount; }
+
+    public boolean isIndexed() { return indexed; }
+
+    // Up to count lines from first, fewer at the end of what has been indexed
+    public List<String> lines(long first, int count) {
+        List<String> lines = new ArrayList<>(count);
+        long known = lineCount;
+        if (first < 0 || first >= known) return lines;
+        long offset = lineStart(first);
+        byte[] line = new byte[MAX_LINE];
+        for (long n = first; n < known && lines.size() < count; n++) {
+            int length = lineLength(offset, line);
+            int end = length;
+            if (end > 0 && line[end - 1] == '\n') end--;
+            if (end > 0 && line[end - 1] == '\r') end--;
+            lines.add(new String(line, 0, end, StandardCharsets.UTF_8));
+            offset += length;
+        }
+        return lines;
+    }
+
+    public long lineStart(long line) {
+        long offset = checkpoints[(int) (line / STRIDE)];
+        byte[] scratch = new byte[MAX_LINE];
+        for (long n = line % STRIDE; n > 0; n--) offset += lineLength(offset, scratch);
+        return offset;
+    }
+
+    // The line holding a byte offset: binary search over the checkpoints, then at most STRIDE lines. -1 if the
+    // offset is outside the file or past what has been indexed so far.
+    public long lineAt(long offset) {
+        long known = lineCount;
+        if (offset < 0 || offset >= size || known == 0) return -1;
+        long[] marks = checkpoints;
+        int low = 0;
+        int high = (int) ((known - 1) / STRIDE);
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (marks[mid] <= offset) low = mid;
+            else high = mid - 1;
+        }
+        long line = (long) low * STRIDE;
+        long start = marks[low];
+        byte[] scratch = new byte[MAX_LINE];
+        while (line < known - 1) {
+            long next = start + lineLength(start, scratch);
+            if (next > offset) break;
+            start = next;
+            line++;
+        }
+        // Past the start of the last line found so far, the answer is only certain once indexing is done
+        if (line == known - 1 && !indexed && offset >= start + lineLength(start, scratch)) return -1;
+        return line;
+    }
+
+    // Streams through the file from the given offset without loading it; matching is byte-wise, with ASCII letters
+    // folded when ignoreCase. Returns the offset of the first match, or -1.
+    public long find(String text, long from, boolean ignoreCase, BooleanSupplier cancelled) throws IOException {
+        byte[] needle = text.getBytes(StandardCharsets.UTF_8);
+        if (needle.length == 0) return -1;
+        if (ignoreCase) fold(needle, needle.length);
+        byte[] buffer = new byte[SCAN_BUFFER + needle.length];
+        for (long position = Math.max(0, from); position + needle.length <= size; ) {
+            int n = read(position, buffer, 0, (int) Math.min(buffer.length, size - position));
+            if (ignoreCase) fold(buffer, n);
+            for (int i = 0; i + needle.length <= n; i++) {
+                if (buffer[i] != needle[0]) continue;
+                int j = 1;
+                while (j < needle.length && buffer[i + j] == needle[j]) j++;
+                if (j == needle.length) return position + i;
+            }
+            if (cancelled.getAsBoolean()) throw new InterruptedIOException("Search cancelled");
+            position += n - needle.length + 1;
+        }
+        return -1;
+    }
+
+    public void close() throws IOException {
+        closed = true;
+        indexer.interrupt();
+        if (temporary) {
+            // The mapping keeps the data reachable until it is collected; unlinking now is still safe on POSIX
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void index() {
+        byte[] buffer = new byte[SCAN_BUFFER];
+        long lines = 0;
+        long lineStart = 0;
+        long position = 0;
+        while (position < size && !closed) {
+            int n = read(position, buffer, 0, (int) Math.min(buffer.length, size - position));
+            for (int i = 0; i < n; i++) {
+                long at = position + i;
+                if (buffer[i] != '\n' && at - lineStart + 1 < MAX_LINE) continue;
+                lines = addLine(lines, lineStart);
+                lineStart = at + 1;
+            }
+            position += n;
+            lineCount = lines;
+        }
+        if (lineStart < size || size == 0) lines = addLine(lines, lineStart);
+        lineCount = lines;
+        indexed = true;
+    }
+
+    private long addLine(long lines, long start) {
+        if (lines % STRIDE == 0) {
+            int slot = (int) (lines / STRIDE);
+            long[] marks = checkpoints;
+            if (slot == marks.length) {
+                marks = Arrays.copyOf(marks, marks.length * 2);
+                marks[slot] = start;
+                checkpoints = marks;
+            } else {
+                marks[slot] = start;
+            }
+        }
+        return lines + 1;
+    }
+
+    // Bytes in the line starting at offset, including its newline, copied into line (at most MAX_LINE)
+    private int lineLength(long offset, byte[] line) {
+        int n = read(offset, line, 0, (int) Math.min(MAX_LINE, size - offset));
+        for (int i = 0; i < n; i++) if (line[i] == '\n') return i + 1;
+        return n;
+    }
+
+    private int read(long position, byte[] dst, int offset, int length) {
+        int done = 0;
+        while (done < length) {
+            long at = position + done;
+            MappedByteBuffer segment = segments[(int) (at / SEGMENT)];
+            int within = (int) (at % SEGMENT);
+            int n = Math.min(length - done, segment.capacity() - within);
+            try {
+                segment.get(within, dst, offset + done, n);
+            } catch (InternalError e) {
+                // The JVM's report of a fault on a mapping whose file was cut short, as a patch in place can do
+                throw new UncheckedIOException(new IOException("File changed while it was being viewed", e));
+            }
+            done += n;
+        }
+        return done;
+    }
+
+    private static void fold(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) if (bytes[i] >= 'A' && bytes[i] <= 'Z') bytes[i] += 32;
+    }
+}
@@ -0,0 +1,562 @@
+package cloudstorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+class UploadFile {
+    private String userName;
+    private String fileName;
+    protected FileCatalog files;
+    protected SearchIndex index;
+    protected VersionStore versions;
+    protected Journal journal;
+    // Opt-in: -Dcloudstorage.dedup=true stores uploads as manifests over shared content-addressed blocks
+    private static final boolean DEDUPLICATE = Boolean.getBoolean("cloudstorage.dedup");
+    // Opt-in: -Dcloudstorage.compress=true deflates plain uploads whose first 64 KB compress well
+    private static final boolean COMPRESS = Boolean.getBoolean("cloudstorage.compress");
+    // Shared by every session in the process; keyed by user and file, so different users rarely contend
+    private static final StripedLocks LOCKS = new StripedLocks(256);
+    // Journal operations, see apply()
+    private static final byte OP_STORE = 1;
+    private static final byte OP_PATCH = 2;
+    private static final byte OP_DELETE = 3;
+    private final ChunkedUploader uploader = new ChunkedUploader();
+    private final Compression compression = new Compression(uploader);
+    protected final BlockStore blockStore = new BlockStore();
+    protected final ContentCache cache = ContentCache.shared();
+    protected final Placement placement = ShardedPlacement.shared();
+    public Scanner sc = new Scanner(System.in);
+
+    public String getUserName() { return userName; }
+
+    public void setUserName(String userName) {
+        this.userName = userName;
+        loadUserFiles();
+    }
+
+    private void loadUserFiles() {
+        journal = Journal.load(userName, placement.stagingDirs(userName));
+        files = FileCatalog.load(userName, placement);
+        index = SearchIndex.load(userName);
+        versions = new VersionStore(userName, blockStore);
+        try {
+            journal.recover(this::replay, files::checkpoint);
+        } catch (IOException e) { throw new UncheckedIOException("Could not recover " + userName + "'s journal", e); }
+    }
+
+    public String getFileName() { return fileName; }
+
+    public void setFileName(String fileName) { this.fileName = checkName(fileName); }
+
+    static String normalizeName(String fileName) { return fileName.toLowerCase().strip(); }
+
+    // Names become a single path segment under one of the user's directories, so anything that could escape it is refused.
+    // Every public method taking a name goes through here; names can come straight from a request path.
+    static String checkName(String fileName) {
+        String name = normalizeName(fileName);
+        if (name.isEmpty() || name.equals(".") || name.equals("..") || name.indexOf('/') >= 0
+                || name.indexOf('\\') >= 0 || name.indexOf('\0') >= 0)
+            throw new IllegalArgumentException("Invalid file name: " + fileName);
+        return name;
+    }
+
+    protected Path filePath(String name) { return placement.locate(userName, name); }
+
+    // How the named file is stored, as recorded when it was written. A file the catalog does not know was not written
+    // by an upload, so it is plain; the content itself is never consulted, since an upload may start with any bytes.
+    protected byte codecOf(String name) {
+        FileCatalog.Entry entry = files.get(name);
+        return entry == null ? Compression.NONE : entry.codec;
+    }
+
+    public long setContent(InputStream in, long expectedSize, ProgressListener listener) throws IOException {
+        return setContent(Channels.newChannel(in), expectedSize, listener);
+    }
+
+    public long setContent(ReadableByteChannel in, long expectedSize, ProgressListener listener) throws IOException {
+        return write(fileName, in, expectedSize, listener);
+    }
+
+    // Uploading over an existing name stores a new version; the previous one stays in the version history
+    public long upload(String fileName, ReadableByteChannel content, long expectedSize,
+                       ProgressListener listener) throws IOException {
+        return write(checkName(fileName), content, expectedSize, listener);
+    }
+
+    public int currentVersion(String fileName) { return versions.currentNumber(checkName(fileName)); }
+
+    public List<String> list() {
+        long start = Metrics.LIST.start();
+        List<String> names = files.names();
+        Metrics.LIST.end(start, 0, null);
+        return names;
+    }
+
+    public FileCatalog.Entry stat(String fileName) { return files.get(checkName(fileName)); }
+
+    public Usage usage() { return files.usage(); }
+
+    public boolean delete(String fileName) { return deleteFile(fileName); }
+
+    public List<String> search(String query) throws IOException { return index.search(query); }
+
+    protected ReadWriteLock lockFor(String name) { return lockFor(userName, name); }
+
+    // Also taken by the rebalancer while it moves a file between volumes
+    static ReadWriteLock lockFor(String userName, String name) { return LOCKS.forKey(userName + '\0' + name); }
+
+    // Every upload is staged in the journal, committed and only then applied, so a crash at any point leaves either
+    // the old file or, after recovery, the new one. Plain files are replaced through a block delta; anything else is
+    // stored whole and the old content set aside. CREATE_NEW on a fresh name still stops another process writing the
+    // same name at the same moment. Content is staged on the volume it is placed on, so putting it in place is a rename.
+    // A write that would take the user over a quota is refused before anything is staged; see Usage.
+    private long write(String name, ReadableByteChannel in, long expectedSize,
+                       ProgressListener listener) throws IOException {
+        long start = Metrics.UPLOAD.start();
+        Lock lock = lockFor(name).writeLock();
+        lock.lock();
+        Usage.Claim claim = null;
+        try {
+            FileCatalog.Entry replaced = files.get(name);
+            byte replacedCodec = replaced == null ? Compression.NONE : replaced.codec;
+            claim = files.usage().claim(expectedSize, replaced == null ? -1 : replaced.size);
+            in = claim.limit(in);
+            Path target = filePath(name);
+            Path volumeStaging = placement.stagingDir(userName, target);
+            cache.invalidate(userName, name);
+            SearchIndex.Document doc = SearchIndex.newDocument();
+            in = doc.tee(in);
+            long written;
+            VersionStore.SignatureBuilder signature = null;
+            boolean exists = Files.exists(target);
+            Journal.Transaction tx = journal.begin();
+            byte[] op;
+            try {
+                if (exists && !DEDUPLICATE && !COMPRESS && VersionStore.canDelta(replacedCodec)) {
+                    Path literals = tx.stage("literals");
+                    Path reverse = tx.stage("reverse");
+                    VersionStore.Update update = versions.prepare(name, target, in, expectedSize, listener,
+                            literals, reverse, tx.stage("rebuilt", volumeStaging));
+                    written = update.size;
+                    signature = update.next;
+                    op = update.rebuilt == null
+                            ? patchOp(name, update, reverse, literals)
+                            : storeOp(name, Compression.NONE, VersionStore.KIND_DELTA, replacedCodec, update.number,
+                                    reverse, update.oldSize, update.oldModified, update.rebuilt, false);
+                } else {
+                    Path temp = tx.stage("data", volumeStaging);
+                    byte codec;
+                    if (DEDUPLICATE) {
+                        BlockStore.StoreResult result = blockStore.store(in, temp, expectedSize, listener, false);
+                        tx.persist(result.created);
+                        written = result.size;
+                        codec = BlockStore.BLOCKS;
+                    } else if (COMPRESS) {
+                        Compression.Result result = compression.store(in, temp, expectedSize, listener, false);
+                        written = result.size;
+                        codec = result.codec;
+                    } else {
+                        signature = versions.newSignature(expectedSize);
+                        written = uploader.write(signature.tee(in), temp, expectedSize, listener, false);
+                        codec = Compression.NONE;
+                    }
+                    op = storeOp(name, codec, exists ? VersionStore.KIND_FULL : 0, replacedCodec,
+                            versions.currentNumber(name), null, 0, 0, temp, !exists);
+                }
+                tx.commit(op);
+            } catch (IOException | RuntimeException e) {
+                tx.abort();
+                throw e;
+            }
+            List<Path> touched;
+            try {
+                touched = apply(op, false);
+            } catch (FileAlreadyExistsException e) {
+                tx.end(List.of());
+                throw e;
+            }
+            tx.end(touched);
+            if (signature != null) versions.saveSignature(name, target, signature);
+            index.add(name, doc);
+            Metrics.UPLOAD.end(start, written, name);
+            return written;
+        } catch (IOException | RuntimeException e) {
+            Metrics.UPLOAD.fail(start, name);
+            throw e;
+        } finally {
+            if (claim != null) claim.release();
+            lock.unlock();
+        }
+    }
+
+    // codec is how the new content is stored and archivedCodec how the content it replaces was, so that neither is
+    // ever worked out from the bytes
+    private static byte[] storeOp(String name, byte codec, byte archive, byte archivedCodec, int number, Path reverse,
+                                  long oldSize, long oldModified, Path temp, boolean createNew) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out, OP_STORE, name, codec, archive, archivedCodec, number, reverse, oldSize, oldModified);
+        out.writeUTF(temp.toString());
+        out.writeBoolean(createNew);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] patchOp(String name, VersionStore.Update update, Path reverse, Path literals) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out, OP_PATCH, name, Compression.NONE, VersionStore.KIND_DELTA, Compression.NONE, update.number, reverse,
+                update.oldSize, update.oldModified);
+        out.writeUTF(literals.toString());
+        out.writeLong(update.size);
+        out.writeInt(update.segments.length);
+        for (long value : update.segments) out.writeLong(value);
+        return bytes.toByteArray();
+    }
+
+    private static void writeHeader(DataOutputStream out, byte type, String name, byte codec, byte archive,
+                                    byte archivedCodec, int number, Path reverse, long oldSize,
+                                    long oldModified) throws IOException {
+        out.writeByte(type);
+        out.writeUTF(name);
+        out.writeByte(codec);
+        out.writeByte(archive);
+        out.writeByte(archivedCodec);
+        out.writeInt(number);
+        out.writeUTF(reverse == null ? "" : reverse.toString());
+        out.writeLong(oldSize);
+        out.writeLong(oldModified);
+    }
+
+    private static byte[] deleteOp(List<String> names) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_DELETE);
+        out.writeInt(names.size());
+        for (String name : names) out.writeUTF(name);
+        return bytes.toByteArray();
+    }
+
+    // Recovery runs outside write(), so it takes the file's lock itself in case the rebalancer is moving the file
+    private List<Path> replay(byte[] op) throws IOException {
+        if (op[0] == OP_DELETE) return apply(op, true);
+        String name = new DataInputStream(new ByteArrayInputStream(op, 1, op.length - 1)).readUTF();
+        Lock lock = lockFor(name).writeLock();
+        lock.lock();
+        try {
+            return apply(op, true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Carries out a committed operation, both right after the commit and when recovery redoes it. Every step checks
+    // whether it already happened, so running it again after a crash at any point finishes the job. Returns the
+    // paths it wrote. A redo replaces rather than links, since whatever is at the name is the operation's own work.
+    private List<Path> apply(byte[] op, boolean recovering) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(op));
+        byte type = in.readByte();
+        if (type == OP_DELETE) return reconcileDeletes(in);
+        String name = in.readUTF();
+        Path target = filePath(name);
+        byte codec = in.readByte();
+        byte archive = in.readByte();
+        byte archivedCodec = in.readByte();
+        int number = in.readInt();
+        String reverse = in.readUTF();
+        long oldSize = in.readLong();
+        long oldModified = in.readLong();
+        List<Path> written = new ArrayList<>();
+        written.add(target);
+        if (type == OP_STORE) {
+            Path temp = Paths.get(in.readUTF());
+            boolean createNew = in.readBoolean();
+            // Once the new content is in place the step before it is done too
+            if (Files.exists(temp)) {
+                if (archive == VersionStore.KIND_FULL) versions.archive(name, number, target, archivedCodec);
+                else if (archive == VersionStore.KIND_DELTA) versions.adoptDelta(name, number, Paths.get(reverse), oldSize, oldModified);
+                Files.createDirectories(target.getParent());
+                if (createNew && !recovering) {
+                    try { Files.createLink(target, temp); } finally { Files.deleteIfExists(temp); }
+                } else {
+                    // Only a redo after the rebalancer moved the file can find the staged copy on another volume
+                    Placement.move(temp, target, placement.stagingDir(userName, target).resolve(temp.getFileName() + "-moved"));
+                }
+            }
+        } else {
+            Path literals = Paths.get(in.readUTF());
+            long size = in.readLong();
+            long[] segments = new long[in.readInt()];
+            for (int i = 0; i < segments.length; i++) segments[i] = in.readLong();
+            versions.adoptDelta(name, number, Paths.get(reverse), oldSize, oldModified);
+            if (Files.exists(literals)) VersionStore.patch(target, literals, segments, size);
+        }
+        if (archive != 0) written.addAll(versions.paths(name, number, archive));
+        // The catalog is the only record of how the content is stored, so its record is forced with the rest
+        if (Files.exists(target)) {
+            files.put(name, BlockStore.logicalSize(target, codec), Files.getLastModifiedTime(target).toMillis(), codec,
+                    Files.size(target));
+            written.add(files.logPath());
+        }
+        if (recovering) {
+            cache.invalidate(userName, name);
+            // indexMissing() picks the content up again on the next session
+            index.remove(name);
+        }
+        return written;
+    }
+
+    // A delete batch interrupted by a crash keeps whichever files still exist; the catalog, index and version
+    // history are brought in line for the ones that are gone
+    private List<Path> reconcileDeletes(DataInputStream in) throws IOException {
+        List<Path> written = new ArrayList<>();
+        List<String> gone = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String name = in.readUTF();
+            Path target = filePath(name);
+            written.add(target);
+            written.add(versions.directory(name));
+            if (Files.exists(target)) continue;
+            gone.add(name);
+            versions.deleteAll(name);
+        }
+        files.removeAll(gone);
+        cache.invalidateAll(userName, gone);
+        index.removeAll(gone);
+        return written;
+    }
+
+    public boolean deleteFile(String fileName) {
+        String name = checkName(fileName);
+        long start = Metrics.DELETE.start();
+        Lock lock = lockFor(name).writeLock();
+        lock.lock();
+        try {
+            Journal.Transaction tx = journal.begin();
+            tx.commit(deleteOp(List.of(name)));
+            boolean deleted = filePath(name).toFile().delete();
+            if (deleted) {
+                files.remove(name);
+                cache.invalidate(userName, name);
+                index.remove(name);
+                try { versions.deleteAll(name); } catch (IOException e) { }
+                Metrics.DELETE.end(start, 0, name);
+            } else {
+                Metrics.DELETE.fail(start, name);
+            }
+            tx.end(List.of(filePath(name), versions.directory(name)));
+            return deleted;
+        } catch (IOException e) {
+            Metrics.DELETE.fail(start, name);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The whole batch is journaled up front; deleting a file and dropping its catalog entry are separate steps,
+    // and recovery reconciles the two for every name in it
+    public BulkDeleter.Result deleteFiles(List<String> names, ProgressListener listener, BooleanSupplier cancelled) {
+        for (String name : names) checkName(name);
+        Journal.Transaction tx = journal.begin();
+        try {
+            tx.commit(deleteOp(names));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not journal the delete", e);
+        }
+        List<Path> touched = Collections.synchronizedList(new ArrayList<>());
+        BulkDeleter.Result result = new BulkDeleter().delete(names, name -> {
+            long start = Metrics.DELETE.start();
+            Lock lock = lockFor(name).writeLock();
+            lock.lock();
+            try {
+                Files.deleteIfExists(filePath(name));
+                versions.deleteAll(name);
+                Metrics.DELETE.end(start, 0, name);
+            } catch (IOException e) {
+                Metrics.DELETE.fail(start, name);
+                throw e;
+            } finally {
+                lock.unlock();
+            }
+        }, batch -> {
+            files.removeAll(batch);
+            cache.invalidateAll(userName, batch);
+            index.removeAll(batch);
+            for (String name : batch) {
+                touched.add(filePath(name));
+                touched.add(versions.directory(name));
+            }
+        }, listener, cancelled);
+        tx.end(touched);
+        if (DEDUPLICATE) {
+            try { blockStore.collectGarbage(); } catch (IOException e) { }
+        }
+        return result;
+    }
+
+    // Uploads many local files at once, keyed by the name each is stored under; see BatchTransfer. Each file goes
+    // through the same journaled write as a single upload, so a crash mid-batch loses none that completed.
+    public BatchTransfer.Result uploadAll(Map<String, Path> sources, ProgressListener listener,
+                                          BooleanSupplier cancelled) {
+        List<Map.Entry<String, Path>> items = new ArrayList<>(sources.entrySet());
+        return new BatchTransfer().run(items, Map.Entry::getKey, item -> Files.size(item.getValue()),
+                item -> Files.readAllBytes(item.getValue()), (item, data) -> {
+                    String name = checkName(item.getKey());
+                    if (data != null) {
+                        return write(name, Channels.newChannel(new ByteArrayInputStream(data)), data.length,
+                                ProgressListener.NONE);
+                    }
+                    try (FileChannel in = FileChannel.open(item.getValue(), StandardOpenOption.READ)) {
+                        return write(name, in, in.size(), ProgressListener.NONE);
+                    }
+                }, listener, cancelled);
+    }
+
+    // Every regular file in the selection, directories walked in full. A file found under a selected directory is
+    // named by its path below it with separators turned into '_', since stored names are a single segment.
+    static Map<String, Path> collect(List<Path> selection) throws IOException {
+        Map<String, Path> sources = new LinkedHashMap<>();
+        for (Path selected : selection) {
+            if (!Files.isDirectory(selected)) {
+                sources.put(normalizeName(selected.getFileName().toString()), selected);
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(selected)) {
+                for (Path file : (Iterable<Path>) walk.filter(Files::isRegularFile)::iterator) {
+                    String name = selected.relativize(file).toString().replace(File.separatorChar, '_');
+                    sources.put(normalizeName(name), file);
+                }
+            }
+        }
+        return sources;
+    }
+
+    // Stores every file in the archive on in; see ArchiveReader. A file inside folders is named by its path with
+    // separators turned into '_', as collect() does. Entries up to BatchTransfer.STREAM_BYTES are read whole and stored
+    // by a pool of workers while the next is read; larger ones are stored straight from the stream. in is not closed.
+    public BatchTransfer.Result importArchive(ReadableByteChannel in, ProgressListener listener,
+                                              BooleanSupplier cancelled) throws IOException {
+        long start = System.currentTimeMillis();
+        long total = in instanceof SeekableByteChannel ? ((SeekableByteChannel) in).size() : -1;
+        AtomicLong read = new AtomicLong();
+        ReadableByteChannel counted = new ReadableByteChannel() {
+            public int read(ByteBuffer dst) throws IOException {
+                int n = in.read(dst);
+                if (n > 0) read.addAndGet(n);
+                return n;
+            }
+
+            public boolean isOpen() { return in.isOpen(); }
+
+            public void close() { }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(BatchTransfer.THREADS, r -> {
+            Thread t = new Thread(r, "archive-import");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore slots = new Semaphore(BatchTransfer.THREADS * 4);
+        // A name that comes round again waits for its earlier copy, so the last one in the archive wins
+        Map<String, Future<?>> inFlight = new HashMap<>();
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        int entries = 0;
+        boolean stopped = false;
+        try {
+            ArchiveReader archive = new ArchiveReader(counted);
+            for (ArchiveReader.Entry entry; (entry = archive.next()) != null; ) {
+                if (cancelled.getAsBoolean()) {
+                    stopped = true;
+                    break;
+                }
+                entries++;
+                String name;
+                try {
+                    name = checkName(entry.name.replaceFirst("^(\\.{0,2}[/\\\\])+", "").replace('/', '_').replace('\\', '_'));
+                } catch (IllegalArgumentException e) {
+                    BatchTransfer.record(failures, failed, processed, entry.name, e);
+                    continue;
+                }
+                Future<?> earlier = inFlight.remove(name);
+                if (earlier != null) {
+                    try { earlier.get(); } catch (ExecutionException e) { }
+                }
+                InputStream content = archive.content();
+                byte[] head = content.readNBytes(BatchTransfer.STREAM_BYTES + 1);
+                if (head.length <= BatchTransfer.STREAM_BYTES) {
+                    slots.acquire();
+                    inFlight.put(name, pool.submit(() -> {
+                        try {
+                            bytes.addAndGet(write(name, Channels.newChannel(new ByteArrayInputStream(head)),
+                                    head.length, ProgressListener.NONE));
+                            succeeded.incrementAndGet();
+                            processed.incrementAndGet();
+                        } catch (IOException | RuntimeException e) {
+                            BatchTransfer.record(failures, failed, processed, name, e);
+                        } finally {
+                            slots.release();
+                        }
+                    }));
+                    if (inFlight.size() > 4096) inFlight.values().removeIf(Future::isDone);
+                } else {
+                    InputStream whole = new SequenceInputStream(new ByteArrayInputStream(head), content);
+                    try {
+                        bytes.addAndGet(write(name, Channels.newChannel(whole), entry.size, ProgressListener.NONE));
+                        succeeded.incrementAndGet();
+                        processed.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        BatchTransfer.record(failures, failed, processed, name, e);
+                    }
+                }
+                listener.onProgress(read.get(), total);
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while importing the archive");
+        } finally {
+            pool.shutdown();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (pool.awaitTermination(1, TimeUnit.MINUTES)) break;
+                } catch (InterruptedException e) { interrupted = true; }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        listener.onProgress(read.get(), total);
+        return new BatchTransfer.Result(entries, succeeded.get(), failed.get(), new ArrayList<>(failures), stopped,
+                bytes.get(), System.currentTimeMillis() - start);
+    }
+
+    public void setContentGUI(String content) {
+        try {
+            byte[] data = content.getBytes();
+            setContent(new ByteArrayInputStream(data), data.length, ProgressListener.NONE);
+        } catch (IOException e) { throw new RuntimeException("Error uploading file"); }
+    }
+}
@@ -0,0 +1,127 @@
+package cloudstorage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// One user's stored bytes and file count. The catalog adjusts them as entries come and go, so reading them costs the
+// same at any number of files and never lists a directory. Bytes are the logical sizes of current files; earlier
+// versions and shared dedup blocks are not charged. Changes are made under the catalog's monitor, reads take no lock.
+// Quotas are -Dcloudstorage.quota.bytes and -Dcloudstorage.quota.files, or .bytes.<user> and .files.<user> for one
+// user; 0, the default, is unlimited.
+class Usage {
+    static final int TOP_REPORTED = 10;
+
+    static {
+        Metrics.attributes("type=Usage", "Heaviest users by stored bytes", () -> {
+            Map<String, Supplier<Object>> attributes = new LinkedHashMap<>();
+            for (Usage usage : FileCatalog.heaviest(TOP_REPORTED)) {
+                long bytes = usage.bytes();
+                attributes.put(usage.userName, () -> bytes);
+            }
+            return attributes;
+        });
+    }
+
+    static final class QuotaExceededException extends IOException {
+        QuotaExceededException(String message) { super(message); }
+    }
+
+    // Room set aside for one write until it is released, whether or not the write went through
+    final class Claim {
+        final long bytes;
+        final long files;
+        // What the write may store before it goes over; Long.MAX_VALUE without a byte quota
+        final long allowance;
+
+        private Claim(long bytes, long files, long allowance) {
+            this.bytes = bytes;
+            this.files = files;
+            this.allowance = allowance;
+        }
+
+        // Fails the read once more than the allowance has come through, for content whose size was not given up front
+        ReadableByteChannel limit(ReadableByteChannel in) {
+            if (allowance == Long.MAX_VALUE) return in;
+            return new ReadableByteChannel() {
+                private long read = 0;
+
+                public int read(ByteBuffer dst) throws IOException {
+                    int n = in.read(dst);
+                    if (n > 0 && (read += n) > allowance)
+                        throw new QuotaExceededException(userName + " is over the quota of " + byteQuota() + " bytes");
+                    return n;
+                }
+
+                public boolean isOpen() { return in.isOpen(); }
+
+                public void close() throws IOException { in.close(); }
+            };
+        }
+
+        void release() {
+            pendingBytes.add(-bytes);
+            pendingFiles.add(-files);
+        }
+    }
+
+    final String userName;
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    // Claimed by writes still in progress, so uploads running side by side cannot all fit into the same room
+    private final LongAdder pendingBytes = new LongAdder();
+    private final LongAdder pendingFiles = new LongAdder();
+
+    Usage(String userName) { this.userName = userName; }
+
+    Usage(String userName, long bytes, long files) {
+        this(userName);
+        add(bytes, files);
+    }
+
+    public String getUserName() { return userName; }
+    public long bytes() { return bytes.sum(); }
+    public long files() { return files.sum(); }
+    public long byteQuota() { return quota("bytes"); }
+    public long fileQuota() { return quota("files"); }
+
+    void add(long bytes, long files) {
+        this.bytes.add(bytes);
+        this.files.add(files);
+    }
+
+    void reset() {
+        bytes.reset();
+        files.reset();
+    }
+
+    // Refuses a write before it starts if it would take the user over a quota. size is -1 when it is not known up
+    // front, replaced the size of the file being overwritten or -1 for a new one; only the growth is counted. Two
+    // writes checked at the same instant can still both pass, by at most one file's worth.
+    Claim claim(long size, long replaced) throws QuotaExceededException {
+        long fileQuota = fileQuota();
+        long newFiles = replaced < 0 ? 1 : 0;
+        if (newFiles > 0 && fileQuota > 0 && files() + pendingFiles.sum() >= fileQuota)
+            throw new QuotaExceededException(userName + " is at the quota of " + fileQuota + " files");
+        long byteQuota = byteQuota();
+        long allowance = Long.MAX_VALUE;
+        long growth = Math.max(0, size - Math.max(0, replaced));
+        if (byteQuota > 0) {
+            allowance = Math.max(0, byteQuota - bytes() - pendingBytes.sum() + Math.max(0, replaced));
+            if (size > allowance)
+                throw new QuotaExceededException(size + " bytes would take " + userName + " over the quota of "
+                        + byteQuota + " bytes");
+        }
+        pendingBytes.add(growth);
+        pendingFiles.add(newFiles);
+        return new Claim(growth, newFiles, allowance);
+    }
+
+    private long quota(String kind) {
+        return Long.getLong("cloudstorage.quota." + kind + "." + userName, Long.getLong("cloudstorage.quota." + kind, 0));
+    }
+}
@@ -0,0 +1,688 @@
+package cloudstorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Older versions of a file live under versions/<user>/<name>/ next to a "history" index and the block signature of
+// the current content. A plain file that is re-uploaded is matched against that signature rsync-style, and the old
+// content is kept as a reverse delta against the new one; anything else is kept whole by renaming it aside.
+class VersionStore {
+    private static final String VERSION_ROOT = "versions/";
+    static final int KEEP = Integer.getInteger("cloudstorage.versions.keep", 10);
+    static final long MAX_AGE_MS = Long.getLong("cloudstorage.versions.maxAgeDays", 0) * 24 * 60 * 60 * 1000;
+    static final byte KIND_DELTA = 1;
+    static final byte KIND_FULL = 2;
+    private static final int DELTA_MAGIC = 0x43535644;  // "CSVD"
+    private static final int SIGNATURE_MAGIC = 0x43535347;  // "CSSG"
+    private static final byte OP_COPY = 1;
+    private static final byte OP_LITERAL = 2;
+    private static final int MIN_BLOCK = 2 << 10;
+    private static final int MAX_BLOCK = 64 << 10;
+    private static final int DEFAULT_BLOCK = 8 << 10;
+    private static final int STRONG_BYTES = 16;
+    private static final int COPY_BUFFER = 1 << 20;
+
+    static final class Version {
+        final int number;
+        final byte kind;
+        final long size;
+        final long modified;
+        final long storedSize;
+        final long archived;
+        // How a full version is stored, as the catalog recorded it for the content it was; deltas are always plain
+        final byte codec;
+
+        Version(int number, byte kind, long size, long modified, long storedSize, long archived, byte codec) {
+            this.number = number;
+            this.kind = kind;
+            this.size = size;
+            this.modified = modified;
+            this.storedSize = storedSize;
+            this.archived = archived;
+            this.codec = codec;
+        }
+
+        public String kindName() { return kind == KIND_DELTA ? "delta" : "full"; }
+    }
+
+    // Weak rolling checksum plus a truncated SHA-256 for every block of one version's content
+    static final class Signature {
+        final int blockSize;
+        final long size;
+        final long modified;
+        final int[] weak;
+        final byte[][] strong;
+        final Map<Integer, int[]> byWeak = new HashMap<>();
+
+        Signature(int blockSize, long size, long modified, int[] weak, byte[][] strong) {
+            this.blockSize = blockSize;
+            this.size = size;
+            this.modified = modified;
+            this.weak = weak;
+            this.strong = strong;
+            // Only full blocks can match inside the rolling window; a short tail is matched separately at the end
+            int full = (int) (size / blockSize);
+            for (int i = 0; i < full; i++) {
+                int[] old = byWeak.get(weak[i]);
+                int[] grown = old == null ? new int[1] : Arrays.copyOf(old, old.length + 1);
+                grown[grown.length - 1] = i;
+                byWeak.put(weak[i], grown);
+            }
+        }
+
+        int blockCount() { return weak.length; }
+
+        int blockLength(int block) { return (int) Math.min(blockSize, size - (long) block * blockSize); }
+
+        boolean hasTail() { return size % blockSize != 0; }
+    }
+
+    // Computes the signature of content as it streams past, so the next upload never has to re-read the file
+    static final class SignatureBuilder {
+        private final int blockSize;
+        private final byte[] block;
+        private final MessageDigest digest = sha256();
+        private int filled = 0;
+        private long size = 0;
+        private int[] weak = new int[16];
+        private byte[][] strong = new byte[16][];
+        private int count = 0;
+
+        SignatureBuilder(int blockSize) {
+            this.blockSize = blockSize;
+            this.block = new byte[blockSize];
+        }
+
+        public ReadableByteChannel tee(ReadableByteChannel src) {
+            return new ReadableByteChannel() {
+                public int read(ByteBuffer dst) throws IOException {
+                    int start = dst.position();
+                    int n = src.read(dst);
+                    if (n > 0) {
+                        ByteBuffer view = dst.duplicate();
+                        view.limit(start + n).position(start);
+                        accept(view);
+                    }
+                    return n;
+                }
+
+                public boolean isOpen() { return src.isOpen(); }
+
+                public void close() throws IOException { src.close(); }
+            };
+        }
+
+        void accept(ByteBuffer data) {
+            while (data.hasRemaining()) {
+                int n = Math.min(data.remaining(), blockSize - filled);
+                data.get(block, filled, n);
+                filled += n;
+                size += n;
+                if (filled == blockSize) addBlock();
+            }
+        }
+
+        Signature finish(long modified) {
+            if (filled > 0) addBlock();
+            return new Signature(blockSize, size, modified, Arrays.copyOf(weak, count), Arrays.copyOf(strong, count));
+        }
+
+        private void addBlock() {
+            if (count == weak.length) {
+                weak = Arrays.copyOf(weak, count * 2);
+                strong = Arrays.copyOf(strong, count * 2);
+            }
+            weak[count] = weakSum(block, 0, filled);
+            strong[count++] = strongSum(digest, block, 0, filled);
+            filled = 0;
+        }
+    }
+
+    // A version's content as a path; temporary reconstructions are deleted on close
+    static final class Materialized implements Closeable {
+        final Path path;
+        final byte codec;
+        private final boolean temporary;
+
+        Materialized(Path path, byte codec, boolean temporary) {
+            this.path = path;
+            this.codec = codec;
+            this.temporary = temporary;
+        }
+
+        public void close() throws IOException { if (temporary) Files.deleteIfExists(path); }
+    }
+
+    private final Path root;
+    private final BlockStore blockStore;
+
+    public VersionStore(String userName, BlockStore blockStore) {
+        this.root = Paths.get(VERSION_ROOT, userName);
+        this.blockStore = blockStore;
+    }
+
+    static int blockSize(long size) {
+        if (size <= 0) return DEFAULT_BLOCK;
+        int root = Integer.highestOneBit((int) Math.min(Integer.MAX_VALUE, (long) Math.sqrt((double) size)));
+        return Math.max(MIN_BLOCK, Math.min(MAX_BLOCK, root));
+    }
+
+    public SignatureBuilder newSignature(long expectedSize) { return new SignatureBuilder(blockSize(expectedSize)); }
+
+    public void saveSignature(String name, Path current, SignatureBuilder builder) throws IOException {
+        Signature signature = builder.finish(Files.getLastModifiedTime(current).toMillis());
+        Path dir = Files.createDirectories(root.resolve(name));
+        Path temp = dir.resolve("signature.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(SIGNATURE_MAGIC);
+            out.writeInt(signature.blockSize);
+            out.writeLong(signature.size);
+            out.writeLong(signature.modified);
+            out.writeInt(signature.blockCount());
+            for (int i = 0; i < signature.blockCount(); i++) {
+                out.writeInt(signature.weak[i]);
+                out.write(signature.strong[i]);
+            }
+        }
+        Files.move(temp, dir.resolve("signature"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // A stale or missing signature (file changed outside the app, or stored before versioning) is rebuilt by reading it
+    private Signature loadSignature(String name, Path current) throws IOException {
+        long size = Files.size(current);
+        long modified = Files.getLastModifiedTime(current).toMillis();
+        Path file = root.resolve(name).resolve("signature");
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() == SIGNATURE_MAGIC) {
+                    int blockSize = in.readInt();
+                    long signedSize = in.readLong();
+                    long signedModified = in.readLong();
+                    if (signedSize == size && signedModified == modified) {
+                        int count = in.readInt();
+                        int[] weak = new int[count];
+                        byte[][] strong = new byte[count][STRONG_BYTES];
+                        for (int i = 0; i < count; i++) {
+                            weak[i] = in.readInt();
+                            in.readFully(strong[i]);
+                        }
+                        return new Signature(blockSize, size, modified, weak, strong);
+                    }
+                }
+            } catch (IOException e) { }
+        }
+        SignatureBuilder builder = newSignature(size);
+        try (ReadableByteChannel in = builder.tee(FileChannel.open(current, StandardOpenOption.READ))) {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER);
+            while (in.read(buffer) >= 0) buffer.clear();
+        }
+        return builder.finish(modified);
+    }
+
+    public static boolean canDelta(byte codec) { return codec == Compression.NONE; }
+
+    public List<Version> list(String name) {
+        List<Version> versions = new ArrayList<>();
+        Path history = root.resolve(name).resolve("history");
+        if (!Files.exists(history)) return versions;
+        try (BufferedReader in = Files.newBufferedReader(history, StandardCharsets.UTF_8)) {
+            in.readLine();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split(" ");
+                if (f.length < 6) continue;
+                // Lines from before the codec was recorded have six fields and are plain
+                versions.add(new Version(Integer.parseInt(f[0]), Byte.parseByte(f[1]), Long.parseLong(f[2]),
+                        Long.parseLong(f[3]), Long.parseLong(f[4]), Long.parseLong(f[5]),
+                        f.length > 6 ? Byte.parseByte(f[6]) : Compression.NONE));
+            }
+        } catch (IOException | NumberFormatException e) { }
+        return versions;
+    }
+
+    // The number the current content carries; older versions count down from it
+    public int currentNumber(String name) {
+        Path history = root.resolve(name).resolve("history");
+        if (!Files.exists(history)) return 1;
+        try (BufferedReader in = Files.newBufferedReader(history, StandardCharsets.UTF_8)) {
+            return Integer.parseInt(in.readLine().trim());
+        } catch (IOException | RuntimeException e) { return 1; }
+    }
+
+    // Keeps the replaced content whole by renaming it aside, which costs no copying. Every step checks whether it
+    // already happened, so a journal replay can run it again; a recorded number means the whole step is done. codec is
+    // how the replaced content is stored, and is recorded with it.
+    public void archive(String name, int number, Path current, byte codec) throws IOException {
+        if (number < currentNumber(name)) return;
+        Path dir = Files.createDirectories(root.resolve(name));
+        Files.deleteIfExists(dir.resolve("signature"));
+        Path archived = dir.resolve("v" + number + ".full");
+        if (!Files.exists(archived)) {
+            if (!Files.exists(current)) return;
+            Placement.move(current, archived, dir.resolve("v" + number + ".full.tmp"));
+        }
+        record(name, new Version(number, KIND_FULL, BlockStore.logicalSize(archived, codec),
+                Files.getLastModifiedTime(archived).toMillis(), Files.size(archived), System.currentTimeMillis(), codec));
+    }
+
+    // Installs a reverse delta written by prepare(); like archive() it can be run again
+    public void adoptDelta(String name, int number, Path reverse, long oldSize, long oldModified) throws IOException {
+        if (number < currentNumber(name)) return;
+        Path dir = Files.createDirectories(root.resolve(name));
+        Files.deleteIfExists(dir.resolve("signature"));
+        Path delta = dir.resolve("v" + number + ".delta");
+        if (Files.exists(reverse)) Files.move(reverse, delta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        record(name, new Version(number, KIND_DELTA, oldSize, oldModified, Files.size(delta), System.currentTimeMillis(),
+                Compression.NONE));
+    }
+
+    // What prepare() worked out for replacing a plain file; nothing visible has changed yet
+    static final class Update {
+        final int number;
+        final long size;
+        final long oldSize;
+        final long oldModified;
+        // Null when the copied blocks are all in place and the literal segments can be patched into the file
+        final Path rebuilt;
+        final long[] segments;
+        final SignatureBuilder next;
+
+        Update(int number, long size, long oldSize, long oldModified, Path rebuilt, long[] segments, SignatureBuilder next) {
+            this.number = number;
+            this.size = size;
+            this.oldSize = oldSize;
+            this.oldModified = oldModified;
+            this.rebuilt = rebuilt;
+            this.segments = segments;
+            this.next = next;
+        }
+    }
+
+    // Matches new content against the current file rsync-style, writing only what the match could not find into
+    // literals and the old content as a reverse delta. Shifted content is also assembled whole into rebuilt.
+    public Update prepare(String name, Path current, ReadableByteChannel in, long expectedSize, ProgressListener listener,
+                          Path literals, Path reverse, Path rebuilt) throws IOException {
+        Signature old = loadSignature(name, current);
+        SignatureBuilder next = newSignature(expectedSize > 0 ? expectedSize : old.size);
+        long oldModified = Files.getLastModifiedTime(current).toMillis();
+        try (FileChannel staging = FileChannel.open(literals, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Delta delta = new Delta(old, staging);
+            long size = delta.match(next.tee(in), expectedSize, listener);
+            delta.writeReverse(current, reverse);
+            boolean aligned = delta.isAligned();
+            if (!aligned) delta.rebuild(current, rebuilt);
+            return new Update(currentNumber(name), size, old.size, oldModified, aligned ? null : rebuilt,
+                    delta.segments(), next);
+        }
+    }
+
+    // Writes the literal segments over the old content and cuts it to the new size; doing it twice changes nothing
+    static void patch(Path current, Path literals, long[] segments, long size) throws IOException {
+        try (FileChannel in = FileChannel.open(literals, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(current, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < segments.length; i += 3) {
+                long source = segments[i + 2];
+                if (source >= 0) continue;
+                long length = segments[i + 1];
+                long from = -source - 1;
+                out.position(segments[i]);
+                while (length > 0) {
+                    long sent = in.transferTo(from, length, out);
+                    if (sent <= 0) throw new EOFException("Staged literals are shorter than expected");
+                    from += sent;
+                    length -= sent;
+                }
+            }
+            out.truncate(size);
+        }
+    }
+
+    // What archiving version number wrote, for the journal to force at its next checkpoint
+    public List<Path> paths(String name, int number, byte kind) {
+        Path dir = root.resolve(name);
+        return List.of(dir, dir.resolve("history"), dir.resolve("v" + number + (kind == KIND_DELTA ? ".delta" : ".full")));
+    }
+
+    public Path directory(String name) { return root.resolve(name); }
+
+    // Walks reverse deltas from the current content, stored with the given codec, back to the requested version
+    public Materialized materialize(String name, int number, Path current, byte codec) throws IOException {
+        if (number == currentNumber(name)) return new Materialized(current, codec, false);
+        List<Version> versions = list(name);
+        Path dir = root.resolve(name);
+        Path basis = current;
+        byte basisCodec = codec;
+        boolean basisTemporary = false;
+        for (int i = versions.size() - 1; i >= 0; i--) {
+            Version version = versions.get(i);
+            if (version.number < number) break;
+            Path next;
+            byte nextCodec = version.codec;
+            boolean nextTemporary;
+            if (version.kind == KIND_FULL) {
+                next = dir.resolve("v" + version.number + ".full");
+                nextTemporary = false;
+            } else {
+                next = Files.createTempFile(dir, "restore", ".tmp");
+                nextTemporary = true;
+                try (SeekableByteChannel from = open(basis, basisCodec, blockStore)) {
+                    applyReverse(dir.resolve("v" + version.number + ".delta"), from, next);
+                } catch (IOException e) {
+                    Files.deleteIfExists(next);
+                    throw e;
+                }
+            }
+            if (basisTemporary) Files.deleteIfExists(basis);
+            basis = next;
+            basisCodec = nextCodec;
+            basisTemporary = nextTemporary;
+            if (version.number == number) return new Materialized(basis, basisCodec, basisTemporary);
+        }
+        if (basisTemporary) Files.deleteIfExists(basis);
+        throw new NoSuchFileException(name + " version " + number);
+    }
+
+    public void deleteAll(String name) throws IOException {
+        Path dir = root.resolve(name);
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.deleteIfExists(file);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    // Opens stored content for random-access reads, as the codec recorded for it says it is stored
+    static SeekableByteChannel open(Path path, byte codec, BlockStore blockStore) throws IOException {
+        if (codec == BlockStore.BLOCKS) return blockStore.open(path);
+        if (codec == Compression.DEFLATE) return Compression.open(path);
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    // Appends the version to the history and applies the retention policy; the oldest version is never a basis
+    private void record(String name, Version added) throws IOException {
+        Path dir = root.resolve(name);
+        List<Version> versions = list(name);
+        for (Version v : versions) if (v.number == added.number) return;
+        versions.add(added);
+        long cutoff = MAX_AGE_MS > 0 ? System.currentTimeMillis() - MAX_AGE_MS : Long.MIN_VALUE;
+        while (!versions.isEmpty() && (versions.size() > KEEP || versions.get(0).archived < cutoff)) {
+            Version pruned = versions.remove(0);
+            Files.deleteIfExists(dir.resolve("v" + pruned.number + (pruned.kind == KIND_DELTA ? ".delta" : ".full")));
+        }
+        Path temp = dir.resolve("history.tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write(Integer.toString(added.number + 1));
+            out.write('\n');
+            for (Version v : versions)
+                out.write(v.number + " " + v.kind + " " + v.size + " " + v.modified + " " + v.storedSize + " " + v.archived
+                        + " " + v.codec + "\n");
+        }
+        Files.move(temp, dir.resolve("history"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void applyReverse(Path deltaFile, SeekableByteChannel newer, Path target) throws IOException {
+        try (DataInputStream ops = new DataInputStream(new BufferedInputStream(Files.newInputStream(deltaFile), 1 << 16));
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (ops.readInt() != DELTA_MAGIC) throw new IOException("Not a version delta: " + deltaFile);
+            long size = ops.readLong();
+            byte[] buffer = new byte[COPY_BUFFER];
+            while (out.position() < size) {
+                byte op = ops.readByte();
+                if (op == OP_COPY) {
+                    long from = ops.readLong();
+                    long length = ops.readLong();
+                    newer.position(from);
+                    while (length > 0) {
+                        ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, length));
+                        if (newer.read(chunk) < 0) throw new EOFException("Delta basis is shorter than expected");
+                        chunk.flip();
+                        length -= chunk.remaining();
+                        while (chunk.hasRemaining()) out.write(chunk);
+                    }
+                } else {
+                    int length = ops.readInt();
+                    ops.readFully(buffer, 0, length);
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, length);
+                    while (chunk.hasRemaining()) out.write(chunk);
+                }
+            }
+        }
+    }
+
+    // rsync's weak checksum: a is the byte sum, b weights each byte by its distance from the end of the window
+    static int weakSum(byte[] data, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            a += data[offset + i] & 0xff;
+            b += (length - i) * (data[offset + i] & 0xff);
+        }
+        return (b & 0xffff) << 16 | (a & 0xffff);
+    }
+
+    static byte[] strongSum(MessageDigest digest, byte[] data, int offset, int length) {
+        digest.update(data, offset, length);
+        return Arrays.copyOf(digest.digest(), STRONG_BYTES);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) { throw new IllegalStateException(e); }
+    }
+
+    // The new content as a sequence of segments, each copied from the old file or taken from the literal staging file
+    private static final class Delta {
+        private final Signature old;
+        private final FileChannel literals;
+        private final MessageDigest digest = sha256();
+        // Triples of (new offset, length, source): source >= 0 is an old offset, otherwise -(staging offset) - 1
+        private long[] segments = new long[48];
+        private int count = 0;
+        // Where each old block reappears in the new content, or -1
+        private final long[] oldToNew;
+
+        Delta(Signature old, FileChannel literals) {
+            this.old = old;
+            this.literals = literals;
+            this.oldToNew = new long[old.blockCount()];
+            Arrays.fill(oldToNew, -1);
+        }
+
+        long match(ReadableByteChannel src, long expectedSize, ProgressListener listener) throws IOException {
+            int blockSize = old.blockSize;
+            byte[] buf = new byte[Math.max(COPY_BUFFER, blockSize * 4)];
+            int start = 0;
+            int end = 0;
+            int literalStart = 0;
+            long base = 0;
+            long total = 0;
+            boolean eof = false;
+            boolean rolling = false;
+            int a = 0;
+            int b = 0;
+            while (true) {
+                // Rolling needs one byte past the window
+                if (end - start <= blockSize && !eof) {
+                    if (end == buf.length) {
+                        addLiteral(buf, literalStart, start - literalStart, base + literalStart);
+                        System.arraycopy(buf, start, buf, 0, end - start);
+                        base += start;
+                        end -= start;
+                        start = 0;
+                        literalStart = 0;
+                    }
+                    int n = src.read(ByteBuffer.wrap(buf, end, buf.length - end));
+                    if (n < 0) {
+                        eof = true;
+                    } else {
+                        end += n;
+                        total += n;
+                        listener.onProgress(total, expectedSize);
+                        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Upload cancelled");
+                    }
+                    continue;
+                }
+                if (end - start < blockSize) break;
+                if (!rolling) {
+                    int sum = weakSum(buf, start, blockSize);
+                    a = sum & 0xffff;
+                    b = sum >>> 16;
+                    rolling = true;
+                }
+                int block = find((b & 0xffff) << 16 | (a & 0xffff), buf, start, base + start);
+                if (block >= 0) {
+                    addLiteral(buf, literalStart, start - literalStart, base + literalStart);
+                    addCopy(base + start, blockSize, (long) block * blockSize, block);
+                    start += blockSize;
+                    literalStart = start;
+                    rolling = false;
+                } else if (start + blockSize < end) {
+                    int out = buf[start] & 0xff;
+                    int in = buf[start + blockSize] & 0xff;
+                    a = (a - out + in) & 0xffff;
+                    b = (b - blockSize * out + a) & 0xffff;
+                    start++;
+                } else {
+                    start++;
+                    rolling = false;
+                }
+            }
+            // The old file's short last block can only match the very end of the new content
+            int tail = old.hasTail() ? old.blockLength(old.blockCount() - 1) : 0;
+            if (tail > 0 && end - literalStart >= tail
+                    && Arrays.equals(strongSum(digest, buf, end - tail, tail), old.strong[old.blockCount() - 1])) {
+                addLiteral(buf, literalStart, end - tail - literalStart, base + literalStart);
+                addCopy(base + end - tail, tail, old.size - tail, old.blockCount() - 1);
+            } else {
+                addLiteral(buf, literalStart, end - literalStart, base + literalStart);
+            }
+            return total;
+        }
+
+        // Prefers the candidate at the same offset, so an in-place edit keeps every other block aligned
+        private int find(int weak, byte[] buf, int start, long newOffset) {
+            int[] candidates = old.byWeak.get(weak);
+            if (candidates == null) return -1;
+            byte[] strong = strongSum(digest, buf, start, old.blockSize);
+            int found = -1;
+            for (int block : candidates) {
+                if (!Arrays.equals(strong, old.strong[block])) continue;
+                if ((long) block * old.blockSize == newOffset) return block;
+                if (found < 0) found = block;
+            }
+            return found;
+        }
+
+        private void addCopy(long newOffset, long length, long oldOffset, int block) {
+            if (oldToNew[block] < 0) oldToNew[block] = newOffset;
+            if (count > 0) {
+                int last = (count - 1) * 3;
+                if (segments[last + 2] >= 0 && segments[last] + segments[last + 1] == newOffset
+                        && segments[last + 2] + segments[last + 1] == oldOffset) {
+                    segments[last + 1] += length;
+                    return;
+                }
+            }
+            addSegment(newOffset, length, oldOffset);
+        }
+
+        private void addLiteral(byte[] buf, int offset, int length, long newOffset) throws IOException {
+            if (length <= 0) return;
+            long stagingOffset = literals.size();
+            ByteBuffer chunk = ByteBuffer.wrap(buf, offset, length);
+            long position = stagingOffset;
+            while (chunk.hasRemaining()) position += literals.write(chunk, position);
+            if (count > 0) {
+                int last = (count - 1) * 3;
+                if (segments[last + 2] < 0 && segments[last] + segments[last + 1] == newOffset
+                        && -segments[last + 2] - 1 + segments[last + 1] == stagingOffset) {
+                    segments[last + 1] += length;
+                    return;
+                }
+            }
+            addSegment(newOffset, length, -stagingOffset - 1);
+        }
+
+        private void addSegment(long newOffset, long length, long source) {
+            if (count * 3 == segments.length) segments = Arrays.copyOf(segments, segments.length * 2);
+            segments[count * 3] = newOffset;
+            segments[count * 3 + 1] = length;
+            segments[count * 3 + 2] = source;
+            count++;
+        }
+
+        // Every copied block is already where it belongs, so only the literal segments need writing
+        boolean isAligned() {
+            for (int i = 0; i < count; i++) {
+                long source = segments[i * 3 + 2];
+                if (source >= 0 && source != segments[i * 3]) return false;
+            }
+            return true;
+        }
+
+        // Old content in block order: blocks found in the new file become copies, the rest is stored literally
+        long writeReverse(Path current, Path target) throws IOException {
+            try (FileChannel in = FileChannel.open(current, StandardOpenOption.READ);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target), 1 << 16))) {
+                out.writeInt(DELTA_MAGIC);
+                out.writeLong(old.size);
+                byte[] buffer = new byte[old.blockSize];
+                int i = 0;
+                while (i < old.blockCount()) {
+                    if (oldToNew[i] >= 0) {
+                        long from = oldToNew[i];
+                        long length = old.blockLength(i++);
+                        while (i < old.blockCount() && oldToNew[i] == from + length) length += old.blockLength(i++);
+                        out.writeByte(OP_COPY);
+                        out.writeLong(from);
+                        out.writeLong(length);
+                    } else {
+                        int length = old.blockLength(i);
+                        ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, length);
+                        long position = (long) i++ * old.blockSize;
+                        while (chunk.hasRemaining()) {
+                            if (in.read(chunk, position + chunk.position()) < 0) throw new EOFException("File shrank during upload");
+                        }
+                        out.writeByte(OP_LITERAL);
+                        out.writeInt(length);
+                        out.write(buffer, 0, length);
+                    }
+                }
+                out.flush();
+                return out.size();
+            }
+        }
+
+        long[] segments() { return Arrays.copyOf(segments, count * 3); }
+
+        // Shifted content cannot be patched in place, so the new file is assembled beside it to be renamed over it
+        void rebuild(Path current, Path temp) throws IOException {
+            try (FileChannel in = FileChannel.open(current, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int i = 0; i < count; i++) {
+                    long source = segments[i * 3 + 2];
+                    FileChannel from = source >= 0 ? in : literals;
+                    long position = source >= 0 ? source : -source - 1;
+                    long length = segments[i * 3 + 1];
+                    while (length > 0) {
+                        long sent = from.transferTo(position, length, out);
+                        if (sent <= 0) throw new EOFException(source >= 0 ? "Delta basis is shorter than expected"
+                                : "Staged literals are shorter than expected");
+                        position += sent;
+                        length -= sent;
+                    }
+                }
+            }
+        }
+    }
+}
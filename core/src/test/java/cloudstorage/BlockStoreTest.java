@@ -0,0 +1,81 @@
+package cloudstorage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockStoreTest {
+    private final Path dir = Paths.get("blocks-test", "run-" + System.nanoTime());
+    private final BlockStore blocks = new BlockStore(dir.resolve("blocks"));
+
+    private static byte[] random(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private BlockStore.StoreResult store(byte[] content, String name) throws IOException {
+        Files.createDirectories(dir);
+        return blocks.store(Channels.newChannel(new ByteArrayInputStream(content)), dir.resolve(name), content.length,
+                ProgressListener.NONE, true);
+    }
+
+    private byte[] read(String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        blocks.transferTo(dir.resolve(name), Channels.newChannel(out), ProgressListener.NONE);
+        return out.toByteArray();
+    }
+
+    @Test
+    void contentRoundTrips() throws IOException {
+        byte[] content = random(1_500_000, 1);
+        BlockStore.StoreResult result = store(content, "a");
+        assertEquals(content.length, result.size);
+        assertEquals(result.chunks, result.newChunks);
+        assertEquals(content.length, BlockStore.logicalSize(dir.resolve("a"), BlockStore.BLOCKS));
+        assertArrayEquals(content, read("a"));
+
+        // Random access lands inside a chunk and reads across the next boundary
+        try (SeekableByteChannel channel = blocks.open(dir.resolve("a"))) {
+            ByteBuffer buffer = ByteBuffer.allocate(300_000);
+            channel.position(700_001);
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) { }
+            assertArrayEquals(Arrays.copyOfRange(content, 700_001, 1_000_001), buffer.array());
+        }
+    }
+
+    // Cut points follow the content, so an insertion near the front only changes the chunks around it
+    @Test
+    void shiftedContentSharesBlocks() throws IOException {
+        byte[] original = random(2_000_000, 2);
+        store(original, "a");
+        byte[] shifted = new byte[original.length + 100];
+        System.arraycopy(random(100, 3), 0, shifted, 0, 100);
+        System.arraycopy(original, 0, shifted, 100, original.length);
+        BlockStore.StoreResult result = store(shifted, "b");
+
+        assertTrue(result.newChunks <= 2, result.newChunks + " of " + result.chunks + " chunks stored again");
+        assertTrue(result.newBytes < shifted.length / 4);
+        assertArrayEquals(shifted, read("b"));
+        assertArrayEquals(original, read("a"));
+    }
+
+    @Test
+    void existingManifestIsNotReplaced() throws IOException {
+        store(random(1000, 4), "a");
+        assertThrows(IOException.class, () -> store(random(1000, 5), "a"));
+        assertArrayEquals(random(1000, 4), read("a"));
+    }
+}
@@ -0,0 +1,81 @@
+package cloudstorage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionTest {
+    private final Path dir = Paths.get("compression-test", "run-" + System.nanoTime());
+    private final Compression compression = new Compression(new ChunkedUploader());
+
+    private Compression.Result store(byte[] content, String name) throws IOException {
+        Files.createDirectories(dir);
+        return compression.store(Channels.newChannel(new ByteArrayInputStream(content)), dir.resolve(name),
+                content.length, ProgressListener.NONE, true);
+    }
+
+    private static byte[] text(int size) {
+        StringBuilder text = new StringBuilder();
+        for (int line = 0; text.length() < size; line++) text.append("line ").append(line).append(" of the log\n");
+        return Arrays.copyOf(text.toString().getBytes(StandardCharsets.UTF_8), size);
+    }
+
+    @Test
+    void textIsDeflated() throws IOException {
+        byte[] content = text(500_000);
+        Compression.Result result = store(content, "log.txt");
+        Path stored = dir.resolve("log.txt");
+        assertEquals(Compression.DEFLATE, result.codec);
+        assertEquals(content.length, result.size);
+        assertEquals(Files.size(stored), result.storedSize);
+        assertTrue(result.storedSize < content.length / 4);
+        assertEquals(content.length, Compression.originalSize(stored));
+        assertEquals(content.length, BlockStore.logicalSize(stored, Compression.DEFLATE));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(content.length, Compression.transferTo(stored, Channels.newChannel(out), ProgressListener.NONE));
+        assertArrayEquals(content, out.toByteArray());
+    }
+
+    // Seeking backwards reopens the stream, so both directions must land on the same bytes
+    @Test
+    void channelSeeksBothWays() throws IOException {
+        byte[] content = text(800_000);
+        store(content, "log.txt");
+        try (SeekableByteChannel channel = Compression.open(dir.resolve("log.txt"))) {
+            assertEquals(content.length, channel.size());
+            for (long position : new long[]{600_000, 1234, 799_990}) {
+                ByteBuffer buffer = ByteBuffer.allocate(10);
+                channel.position(position);
+                while (buffer.hasRemaining() && channel.read(buffer) > 0) { }
+                assertArrayEquals(Arrays.copyOfRange(content, (int) position, (int) position + 10), buffer.array());
+            }
+        }
+    }
+
+    // Content the sample pass cannot shrink is stored as it came
+    @Test
+    void incompressibleContentIsStoredPlain() throws IOException {
+        byte[] content = new byte[300_000];
+        new Random(1).nextBytes(content);
+        Compression.Result result = store(content, "random.bin");
+        assertEquals(Compression.NONE, result.codec);
+        assertEquals(content.length, result.storedSize);
+        assertArrayEquals(content, Files.readAllBytes(dir.resolve("random.bin")));
+
+        assertEquals(Compression.NONE, store(new byte[100], "tiny").codec);
+    }
+}
@@ -0,0 +1,98 @@
+package cloudstorage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadFileTest {
+    private final String user = "download-test-" + System.nanoTime();
+
+    private DownloadFile session() {
+        DownloadFile session = new DownloadFile();
+        session.setUserName(user);
+        return session;
+    }
+
+    private static void upload(DownloadFile session, String name, byte[] content) throws IOException {
+        session.upload(name, Channels.newChannel(new ByteArrayInputStream(content)), content.length,
+                ProgressListener.NONE);
+    }
+
+    private static byte[] download(DownloadFile session, String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        session.download(name, Channels.newChannel(out), ProgressListener.NONE);
+        return out.toByteArray();
+    }
+
+    private static byte[] version(DownloadFile session, String name, int number) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        session.downloadVersion(name, number, Channels.newChannel(out), ProgressListener.NONE);
+        return out.toByteArray();
+    }
+
+    // Content that starts the way a stored format does, followed by a header that would be ruinous to believe
+    private static byte[] prefixed(int magic, int size) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(magic);
+        out.writeLong(Long.MAX_VALUE / 2);
+        out.writeInt(Integer.MAX_VALUE);
+        while (bytes.size() < size) out.writeByte(bytes.size() * 31);
+        return bytes.toByteArray();
+    }
+
+    // Uploads may start with any bytes; how a file is stored is never read from the file itself. Everything after
+    // the magic looks like a compressed file's header: codec, level and a size.
+    @Test
+    void plainContentStartingWithCompressionMagicIsServedAsUploaded() throws IOException {
+        byte[] content = prefixed(Compression.MAGIC, 5000);
+        content[4] = Compression.DEFLATE;
+        DownloadFile session = session();
+        upload(session, "deflated.bin", content);
+        assertEquals(content.length, session.stat("deflated.bin").size);
+        assertEquals(Compression.NONE, session.stat("deflated.bin").codec);
+
+        FileCatalog.unload(user);
+        session = session();
+        session.setFileName("deflated.bin");
+        assertEquals(content.length, session.size());
+        assertArrayEquals(content, download(session, "deflated.bin"));
+        assertEquals(content.length, session.map().capacity());
+        try (TextPager pager = session.openPager("deflated.bin", ProgressListener.NONE)) {
+            assertEquals(content.length, pager.size());
+        }
+    }
+
+    @Test
+    void plainContentStartingWithManifestMagicIsServedAsUploaded() throws IOException {
+        byte[] first = prefixed(0x43534D46, 5000);
+        byte[] second = Arrays.copyOf(first, 7000);
+        DownloadFile session = session();
+        upload(session, "manifest.bin", first);
+        assertEquals(first.length, session.stat("manifest.bin").size);
+        assertArrayEquals(first, download(session, "manifest.bin"));
+        upload(session, "manifest.bin", second);
+
+        FileCatalog.unload(user);
+        session = session();
+        session.setFileName("manifest.bin");
+        assertEquals(second.length, session.size());
+        assertArrayEquals(second, download(session, "manifest.bin"));
+        assertArrayEquals(first, version(session, "manifest.bin", 1));
+        try (SeekableByteChannel in = session.openChannel("manifest.bin")) {
+            assertEquals(second.length, in.size());
+            ByteBuffer head = ByteBuffer.allocate(16);
+            while (head.hasRemaining() && in.read(head) > 0) { }
+            assertArrayEquals(Arrays.copyOf(second, 16), head.array());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package cloudstorage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileCatalogTest {
+    private final String user = "catalog-test-" + System.nanoTime();
+    private final Placement placement = new FlatPlacement(Paths.get("catalog-test-files"));
+
+    // Every user's files in one directory under root, like the layout from before sharding
+    static final class FlatPlacement implements Placement {
+        private final Path root;
+
+        FlatPlacement(Path root) { this.root = root; }
+
+        public Path locate(String userName, String name) { return root.resolve(userName).resolve(name); }
+
+        public Path stagingDir(String userName, Path target) { return root.resolve(userName + ".staging"); }
+
+        public List<Path> stagingDirs(String userName) { return List.of(root.resolve(userName + ".staging")); }
+
+        public List<Path> directories(String userName) { return List.of(root.resolve(userName)); }
+
+        public List<Path> roots() { return List.of(root); }
+    }
+
+    @AfterEach
+    void unload() { FileCatalog.unload(user); }
+
+    // Writes the file and records it, as an upload does
+    private void store(FileCatalog catalog, String name, int size) throws IOException {
+        Path path = placement.locate(user, name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, new byte[size]);
+        catalog.put(name, size, Files.getLastModifiedTime(path).toMillis());
+    }
+
+    private FileCatalog reload() {
+        FileCatalog.unload(user);
+        return FileCatalog.load(user, placement);
+    }
+
+    private static Map<String, Long> sizes(FileCatalog catalog) {
+        Map<String, Long> sizes = new TreeMap<>();
+        for (String name : catalog.names()) sizes.put(name, catalog.get(name).size);
+        return sizes;
+    }
+
+    @Test
+    void entriesAndTotalsSurviveReload() throws IOException {
+        FileCatalog catalog = FileCatalog.load(user, placement);
+        assertTrue(catalog.isEmpty());
+        for (int i = 0; i < 20; i++) store(catalog, "file" + i, 100 + i);
+        Files.delete(placement.locate(user, "file3"));
+        assertTrue(catalog.remove("file3"));
+        Map<String, Long> expected = sizes(catalog);
+
+        FileCatalog reloaded = reload();
+        assertEquals(expected, sizes(reloaded));
+        assertEquals(19, reloaded.usage().files());
+        assertEquals(expected.values().stream().mapToLong(Long::longValue).sum(), reloaded.usage().bytes());
+        assertEquals("file19", reloaded.bySize().get(18).name);
+    }
+
+    // Past MIN_COMPACT_RECORDS log records the log is folded into a fresh snapshot
+    @Test
+    void longLogIsCompacted() throws IOException {
+        FileCatalog catalog = FileCatalog.load(user, placement);
+        for (int round = 0; round < 60; round++) {
+            for (int i = 0; i < 25; i++) store(catalog, "file" + i, round * 10 + i);
+        }
+        Path log = Paths.get("catalogs", user + ".log");
+        assertTrue(!Files.exists(log) || Files.size(log) < 1024 * 40);
+
+        FileCatalog reloaded = reload();
+        assertEquals(sizes(catalog), sizes(reloaded));
+        assertEquals(590, reloaded.get("file0").size);
+        assertEquals(25, reloaded.usage().files());
+    }
+
+    // A crash mid-append leaves a record cut short; the catalog is rebuilt from the directories instead
+    @Test
+    void tornLogFallsBackToRescan() throws IOException {
+        FileCatalog catalog = FileCatalog.load(user, placement);
+        for (int i = 0; i < 5; i++) store(catalog, "file" + i, 10 * (i + 1));
+        // Written behind the catalog's back, so only a rescan finds it
+        Files.write(placement.locate(user, "unrecorded"), new byte[7]);
+        Files.write(Paths.get("catalogs", user + ".log"), new byte[]{1, 0, 20, 'f'}, StandardOpenOption.APPEND);
+
+        FileCatalog reloaded = reload();
+        Map<String, Long> expected = new TreeMap<>();
+        for (int i = 0; i < 5; i++) expected.put("file" + i, 10L * (i + 1));
+        expected.put("unrecorded", 7L);
+        assertEquals(expected, sizes(reloaded));
+        assertEquals(157, reloaded.usage().bytes());
+    }
+
+    // A record that never reached the log leaves a gap in the numbering; the catalog still answers at once and is
+    // brought in line with the directories in the background
+    @Test
+    void missingLogRecordIsReconciled() throws Exception {
+        FileCatalog catalog = FileCatalog.load(user, placement);
+        store(catalog, "a", 10);
+        Path log = Paths.get("catalogs", user + ".log");
+        byte[] before = Files.readAllBytes(log);
+        store(catalog, "lost", 20);
+        long lostEnd = Files.size(log);
+        store(catalog, "c", 30);
+        byte[] after = Files.readAllBytes(log);
+        try (OutputStream out = Files.newOutputStream(log)) {
+            out.write(before);
+            out.write(after, (int) lostEnd, after.length - (int) lostEnd);
+        }
+
+        FileCatalog reloaded = reload();
+        assertTrue(reloaded.contains("a") && reloaded.contains("c"));
+        for (long deadline = System.currentTimeMillis() + 10_000; !reloaded.contains("lost"); ) {
+            assertTrue(System.currentTimeMillis() < deadline, "reconcile never found the unrecorded file");
+            Thread.sleep(20);
+        }
+        assertEquals(20, reloaded.get("lost").size);
+        assertEquals(60, reloaded.usage().bytes());
+    }
+
+    // heaviest() reads an unloaded user's totals from the snapshot header and the last log record
+    @Test
+    void heaviestReadsRecordedTotals() throws IOException {
+        FileCatalog catalog = FileCatalog.load(user, placement);
+        store(catalog, "a", 1000);
+        store(catalog, "b", 2000);
+        catalog.checkpoint();
+        store(catalog, "c", 3000);
+        FileCatalog.unload(user);
+
+        Usage recorded = null;
+        for (Usage usage : FileCatalog.heaviest(Integer.MAX_VALUE)) {
+            if (usage.userName.equals(user)) recorded = usage;
+        }
+        assertNotNull(recorded);
+        assertEquals(6000, recorded.bytes());
+        assertEquals(3, recorded.files());
+    }
+
+    // Polling the MBean reuses the totals it has, rather than reading every user's catalog files each time
+    @Test
+    void heaviestReusesTotalsBetweenReads() throws IOException {
+        FileCatalog catalog = FileCatalog.load(user, placement);
+        store(catalog, "a", 4000);
+        FileCatalog.unload(user);
+        FileCatalog.heaviest(Integer.MAX_VALUE);
+        Files.write(Paths.get("catalogs", user + ".snapshot"), new byte[]{0, 0, 0, 0});
+
+        Usage recorded = null;
+        for (Usage usage : FileCatalog.heaviest(Integer.MAX_VALUE)) {
+            if (usage.userName.equals(user)) recorded = usage;
+        }
+        assertNotNull(recorded);
+        assertEquals(4000, recorded.bytes());
+    }
+}
@@ -0,0 +1,358 @@
+package cloudstorage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalTest {
+    private final String user = "journal-test-" + System.nanoTime();
+    private final Journal.Syncer defaultSyncer = Journal.syncer;
+
+    @AfterEach
+    void unload() {
+        Journal.syncer = defaultSyncer;
+        Journal.unload(user);
+    }
+
+    private static byte[] op(String text) { return text.getBytes(StandardCharsets.UTF_8); }
+
+    // Closes the journal as a crash would, without a checkpoint, and opens it again
+    private Journal reopen() {
+        Journal.unload(user);
+        return Journal.load(user, List.of());
+    }
+
+    private List<String> recover(Journal journal) throws IOException {
+        List<String> replayed = new ArrayList<>();
+        journal.recover(op -> {
+            replayed.add(new String(op, StandardCharsets.UTF_8));
+            return List.of();
+        }, null);
+        return replayed;
+    }
+
+    @Test
+    void endedOperationsAreNotReplayed() throws IOException {
+        Journal journal = Journal.load(user, List.of());
+        assertFalse(journal.hasPending());
+        recover(journal);
+        Journal.Transaction first = journal.begin();
+        first.commit(op("first"));
+        first.end(List.of());
+        // The first end record rides along with the second commit's fsync
+        Journal.Transaction second = journal.begin();
+        second.commit(op("second"));
+
+        journal = reopen();
+        assertTrue(journal.hasPending());
+        assertEquals(List.of("second"), recover(journal));
+        assertFalse(journal.hasPending());
+        assertFalse(reopen().hasPending());
+    }
+
+    @Test
+    void checkpointLeavesNothingToReplay() throws IOException {
+        Journal journal = Journal.load(user, List.of());
+        recover(journal);
+        for (int i = 0; i < 10; i++) {
+            Journal.Transaction tx = journal.begin();
+            tx.commit(op("op" + i));
+            tx.end(List.of());
+        }
+        journal.checkpoint();
+        assertEquals(0, Files.size(Paths.get("journal", user + ".wal")));
+        assertFalse(reopen().hasPending());
+    }
+
+    // A small staged file is carried in the commit record and restored even if it never reached the disk; a large one
+    // is forced before the commit. Both are cleared away once the replay has used them.
+    @Test
+    void crashBeforeEndRestoresStagedData() throws IOException {
+        Journal journal = Journal.load(user, List.of());
+        recover(journal);
+        byte[] small = op("small staged content");
+        byte[] large = new byte[Journal.INLINE_BYTES + 1];
+        new Random(1).nextBytes(large);
+        Journal.Transaction tx = journal.begin();
+        Path smallPath = tx.stage("small");
+        Path largePath = tx.stage("large");
+        Files.write(smallPath, small);
+        Files.write(largePath, large);
+        tx.commit(op("upload"));
+        Files.delete(smallPath);
+
+        journal = reopen();
+        assertTrue(journal.hasPending());
+        List<String> replayed = new ArrayList<>();
+        journal.recover(op -> {
+            replayed.add(new String(op, StandardCharsets.UTF_8));
+            assertArrayEquals(small, Files.readAllBytes(smallPath));
+            assertArrayEquals(large, Files.readAllBytes(largePath));
+            return List.of();
+        }, null);
+        assertEquals(List.of("upload"), replayed);
+        assertFalse(Files.exists(smallPath));
+        assertFalse(Files.exists(largePath));
+        assertFalse(reopen().hasPending());
+    }
+
+    // An operation whose replay fails stays in the journal, staged data and all, for the next start
+    @Test
+    void failedReplayIsKept() throws IOException {
+        Journal journal = Journal.load(user, List.of());
+        recover(journal);
+        Journal.Transaction tx = journal.begin();
+        Path staged = tx.stage("data");
+        Files.write(staged, op("data"));
+        tx.commit(op("stuck"));
+
+        journal = reopen();
+        journal.recover(op -> { throw new IOException("volume offline"); }, null);
+        assertTrue(Files.exists(staged));
+
+        journal = reopen();
+        assertTrue(journal.hasPending());
+        assertEquals(List.of("stuck"), recover(journal));
+    }
+
+    @Test
+    void concurrentCommitsAreAllRecovered() throws Exception {
+        Journal journal = Journal.load(user, List.of());
+        recover(journal);
+        int threads = 8;
+        int perThread = 50;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        Journal.Transaction tx = journal.begin();
+                        tx.commit(op(thread + "-" + i));
+                        // Every other operation finishes, the rest are left in flight
+                        if (i % 2 == 0) tx.end(List.of());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) future.get();
+        } finally {
+            pool.shutdown();
+        }
+        // One more commit carries any end records still waiting for an fsync
+        Journal.Transaction last = journal.begin();
+        last.commit(op("last"));
+
+        Set<String> expected = new HashSet<>();
+        for (int t = 0; t < threads; t++) {
+            for (int i = 1; i < perThread; i += 2) expected.add(t + "-" + i);
+        }
+        expected.add("last");
+        assertEquals(expected, new HashSet<>(recover(reopen())));
+    }
+
+    // A crash mid-write leaves a torn record at the end of the log; everything before it still counts
+    @Test
+    void tornTailIsIgnored() throws IOException {
+        Journal journal = Journal.load(user, List.of());
+        recover(journal);
+        journal.begin().commit(op("whole"));
+        Path wal = Paths.get("journal", user + ".wal");
+        Files.write(wal, new byte[]{0, 0, 1, 0, 7, 7, 7}, StandardOpenOption.APPEND);
+
+        assertEquals(List.of("whole"), recover(reopen()));
+    }
+
+    // Opening after a clean shutdown has nothing to redo, so it must not pay for a checkpoint of the caller's index
+    @Test
+    void cleanOpenSkipsCheckpoint() throws IOException {
+        Journal journal = Journal.load(user, List.of());
+        recover(journal);
+        Journal.Transaction tx = journal.begin();
+        tx.commit(op("done"));
+        tx.end(List.of());
+        journal.checkpoint();
+
+        int[] persisted = {0};
+        reopen().recover(op -> List.of(), () -> persisted[0]++);
+        assertEquals(0, persisted[0]);
+
+        journal = Journal.load(user, List.of());
+        journal.begin().commit(op("in flight"));
+        reopen().recover(op -> List.of(), () -> persisted[0]++);
+        assertEquals(1, persisted[0]);
+    }
+
+    // With nothing in flight a torn tail must still be cut away, or records appended after it could never be read
+    @Test
+    void tornTailIsCutWithNothingPending() throws IOException {
+        Journal journal = Journal.load(user, List.of());
+        recover(journal);
+        Journal.Transaction tx = journal.begin();
+        tx.commit(op("done"));
+        tx.end(List.of());
+        journal.checkpoint();
+        Path wal = Paths.get("journal", user + ".wal");
+        Files.write(wal, new byte[]{0, 0, 1, 0, 7, 7, 7}, StandardOpenOption.APPEND);
+
+        journal = reopen();
+        assertFalse(journal.hasPending());
+        assertEquals(List.of(), recover(journal));
+        assertEquals(0, Files.size(wal));
+        journal.begin().commit(op("after"));
+        assertEquals(List.of("after"), recover(reopen()));
+    }
+
+    // Cancelling a task interrupts its thread, which closes the log's channel in the middle of the write. The commit
+    // still completes, the caller keeps its interrupt, and the journal goes on taking commits.
+    @Test
+    void interruptedCommitDoesNotBreakTheJournal() throws IOException {
+        Journal journal = Journal.load(user, List.of());
+        recover(journal);
+        journal.begin().commit(op("before"));
+        boolean[] interrupt = {true};
+        Journal.syncer = (path, channel, metaData) -> {
+            if (interrupt[0]) {
+                interrupt[0] = false;
+                Thread.currentThread().interrupt();
+            }
+            channel.force(metaData);
+        };
+        try {
+            journal.begin().commit(op("interrupted"));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertFalse(interrupt[0]);
+
+        Thread.currentThread().interrupt();
+        try {
+            journal.begin().commit(op("already interrupted"));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        journal.begin().commit(op("after"));
+        assertEquals(List.of("before", "interrupted", "already interrupted", "after"), recover(reopen()));
+    }
+
+    // Every fsync in order, and for each one of the log the log's size, so a test can cut the log back to any point
+    // where it was durable
+    private static final class SyncRecorder implements Journal.Syncer {
+        final Path wal;
+        final List<Path> synced = new ArrayList<>();
+        final List<long[]> walSyncs = new ArrayList<>();
+
+        SyncRecorder(Path wal) { this.wal = wal.toAbsolutePath().normalize(); }
+
+        public synchronized void force(Path path, FileChannel channel, boolean metaData) throws IOException {
+            channel.force(metaData);
+            Path absolute = path.toAbsolutePath().normalize();
+            if (absolute.equals(wal)) walSyncs.add(new long[]{synced.size(), channel.size()});
+            synced.add(absolute);
+        }
+
+        // Index into synced of the first log fsync that took the log past the given size, and the size it left
+        synchronized long[] firstWalSyncPast(long size) {
+            for (long[] sync : walSyncs) if (sync[1] > size) return sync;
+            throw new AssertionError("No log fsync past " + size);
+        }
+
+        synchronized long lastWalSize() { return walSyncs.get(walSyncs.size() - 1)[1]; }
+
+        synchronized boolean syncedBefore(Path path, long index) {
+            return synced.subList(0, (int) index).contains(path.toAbsolutePath().normalize());
+        }
+    }
+
+    // An end record becomes durable with the next group fsync. Whatever the operation applied, with the directory
+    // entry that names it, must be on disk by then, or a crash right after that fsync loses a change recovery no longer
+    // redoes. A small staged file is carried inline, so nothing else forces it.
+    @Test
+    void endIsDurableOnlyAfterWhatItApplied() throws IOException {
+        Path wal = Paths.get("journal", user + ".wal");
+        Path target = Paths.get("journal-test-files", user, "a");
+        Files.createDirectories(target.getParent());
+        Journal journal = Journal.load(user, List.of());
+        recover(journal);
+        SyncRecorder recorder = new SyncRecorder(wal);
+        Journal.syncer = recorder;
+
+        Journal.Transaction upload = journal.begin();
+        Path staged = upload.stage("data");
+        Files.write(staged, op("applied content"));
+        upload.commit(op("upload"));
+        long uploadCommitted = recorder.lastWalSize();
+        Files.move(staged, target);
+        upload.end(List.of(target));
+        journal.begin().commit(op("next"));
+
+        long[] endDurable = recorder.firstWalSyncPast(uploadCommitted);
+        assertTrue(recorder.syncedBefore(target, endDurable[0]), "content forced after its end record");
+        assertTrue(recorder.syncedBefore(target.getParent(), endDurable[0]), "rename forced after its end record");
+
+        Journal.Transaction delete = journal.begin();
+        delete.commit(op("delete"));
+        long deleteCommitted = recorder.lastWalSize();
+        Files.delete(target);
+        delete.end(List.of(target));
+        journal.begin().commit(op("after"));
+
+        endDurable = recorder.firstWalSyncPast(deleteCommitted);
+        assertTrue(recorder.syncedBefore(target.getParent(), endDurable[0]), "deletion forced after its end record");
+
+        // Crash with the log cut back to the fsync that made the upload's end durable: it is not redone
+        Journal.syncer = defaultSyncer;
+        Journal.unload(user);
+        try (FileChannel log = FileChannel.open(wal, StandardOpenOption.WRITE)) {
+            log.truncate(recorder.firstWalSyncPast(uploadCommitted)[1]);
+        }
+        assertEquals(List.of("next"), recover(Journal.load(user, List.of())));
+    }
+
+    // Operations ending between two commits are forced by the next one in a single pass, so a directory they share
+    // is forced once for all of them rather than once each
+    @Test
+    void endsShareOneForce() throws IOException {
+        Path wal = Paths.get("journal", user + ".wal");
+        Path dir = Paths.get("journal-test-files", user);
+        Files.createDirectories(dir);
+        Journal journal = Journal.load(user, List.of());
+        recover(journal);
+        SyncRecorder recorder = new SyncRecorder(wal);
+        Journal.syncer = recorder;
+
+        List<Journal.Transaction> uploads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Journal.Transaction tx = journal.begin();
+            tx.commit(op("upload" + i));
+            uploads.add(tx);
+        }
+        for (int i = 0; i < 5; i++) {
+            Files.write(dir.resolve("f" + i), op("content " + i));
+            uploads.get(i).end(List.of(dir.resolve("f" + i)));
+        }
+        long before = recorder.lastWalSize();
+        int from = recorder.synced.size();
+        journal.begin().commit(op("next"));
+
+        List<Path> forced = recorder.synced.subList(from, recorder.synced.size());
+        assertEquals(1, Collections.frequency(forced, dir.toAbsolutePath().normalize()));
+        for (int i = 0; i < 5; i++) assertTrue(forced.contains(dir.resolve("f" + i).toAbsolutePath().normalize()));
+        assertTrue(recorder.lastWalSize() > before);
+        assertEquals(List.of("next"), recover(reopen()));
+    }
+}
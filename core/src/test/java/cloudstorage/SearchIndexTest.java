@@ -0,0 +1,113 @@
+package cloudstorage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchIndexTest {
+    private final String user = "search-test-" + System.nanoTime();
+
+    @AfterEach
+    void unload() { SearchIndex.unload(user); }
+
+    private static SearchIndex.Document document(String text) {
+        SearchIndex.Document doc = SearchIndex.newDocument();
+        doc.accept(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        return doc;
+    }
+
+    private SearchIndex reload() {
+        SearchIndex.unload(user);
+        return SearchIndex.load(user);
+    }
+
+    private static void fill(SearchIndex index) {
+        index.add("fox.txt", document("The quick brown Fox jumps over the lazy dog"));
+        index.add("dog.txt", document("A lazy dog sleeps; the fox is quick"));
+        index.add("notes.md", document("Quickly noted: brown bread, brownies"));
+    }
+
+    private static void assertQueries(SearchIndex index) throws IOException {
+        assertEquals(List.of("fox.txt", "dog.txt"), index.search("fox"));
+        assertEquals(List.of("fox.txt", "dog.txt"), index.search("LAZY dog"));
+        assertEquals(List.of("fox.txt"), index.search("\"quick brown fox\""));
+        assertEquals(List.of("dog.txt"), index.search("\"lazy dog sleeps\""));
+        assertEquals(List.of("fox.txt", "notes.md"), index.search("brown*"));
+        assertEquals(List.of("notes.md"), index.search("quick* bread"));
+        assertEquals(List.of(), index.search("fox bread"));
+        assertEquals(List.of(), index.search("\"dog lazy\""));
+    }
+
+    @Test
+    void termsPrefixesAndPhrases() throws IOException {
+        SearchIndex index = SearchIndex.load(user);
+        fill(index);
+        assertEquals(3, index.size());
+        assertQueries(index);
+    }
+
+    // The same answers from the replayed log, and again from a compacted snapshot
+    @Test
+    void indexSurvivesReloadAndCompaction() throws IOException {
+        fill(SearchIndex.load(user));
+        SearchIndex reloaded = reload();
+        assertEquals(3, reloaded.size());
+        assertQueries(reloaded);
+
+        reloaded.compact();
+        assertQueries(reloaded);
+        assertQueries(reload());
+    }
+
+    @Test
+    void replacedAndRemovedDocumentsDropOut() throws IOException {
+        SearchIndex index = SearchIndex.load(user);
+        fill(index);
+        index.add("fox.txt", document("rewritten without the animal"));
+        assertTrue(index.remove("dog.txt"));
+        assertFalse(index.remove("dog.txt"));
+        assertEquals(List.of(), index.search("fox"));
+        assertEquals(List.of("fox.txt"), index.search("animal"));
+        index.compact();
+        index.add("dog.txt", document("back again"));
+
+        SearchIndex reloaded = reload();
+        assertEquals(List.of("fox.txt"), reloaded.search("animal"));
+        assertEquals(List.of("dog.txt"), reloaded.search("again"));
+        assertEquals(List.of(), reloaded.search("lazy"));
+        assertEquals(3, reloaded.size());
+    }
+
+    // A zero byte early on marks the file as binary; it is still known to the index but has no terms
+    @Test
+    void binaryDocumentHasNoTerms() throws IOException {
+        SearchIndex index = SearchIndex.load(user);
+        SearchIndex.Document doc = document("header\0 fox fox fox");
+        index.add("image.bin", doc);
+        assertEquals(0, doc.termCount());
+        assertTrue(index.contains("image.bin"));
+        assertEquals(List.of(), index.search("header"));
+    }
+
+    // A crash mid-append leaves a torn record; the records before it still count
+    @Test
+    void tornLogKeepsWholeRecords() throws IOException {
+        fill(SearchIndex.load(user));
+        SearchIndex.unload(user);
+        Files.write(Paths.get("search", user + ".log"), new byte[]{1, 0, 0}, StandardOpenOption.APPEND);
+
+        SearchIndex reloaded = SearchIndex.load(user);
+        assertQueries(reloaded);
+        reloaded.add("late.txt", document("appended after the repair"));
+        assertEquals(List.of("late.txt"), reload().search("repair"));
+    }
+}
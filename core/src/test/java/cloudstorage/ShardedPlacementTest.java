@@ -0,0 +1,95 @@
+package cloudstorage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedPlacementTest {
+    private final String user = "placement-test-" + System.nanoTime();
+    private final Path base = Paths.get("placement-test", user);
+    private final Path a = base.resolve("a");
+    private final Path b = base.resolve("b");
+    private final Path layoutFile = base.resolve("volumes.layout");
+
+    private static void write(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content, StandardCharsets.UTF_8);
+    }
+
+    private static void awaitSettled(ShardedPlacement placement) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!placement.isSettled()) {
+            assertTrue(System.currentTimeMillis() < deadline, "rebalancer did not finish");
+            Thread.sleep(10);
+        }
+    }
+
+    private List<String> layoutLines() throws IOException {
+        return Files.readAllLines(layoutFile, StandardCharsets.UTF_8);
+    }
+
+    // Adding a volume moves only the files the ring now gives it, and every file ends where the new layout puts it
+    @Test
+    void addingVolumeRebalances() throws Exception {
+        write(layoutFile, new ShardedPlacement.Layout(false, List.of(a)).describe() + "\n");
+        ShardedPlacement one = new ShardedPlacement(List.of(a), layoutFile);
+        assertTrue(one.isSettled());
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            names.add("file" + i);
+            write(one.locate(user, "file" + i), "content " + i);
+        }
+
+        ShardedPlacement two = new ShardedPlacement(List.of(a, b), layoutFile);
+        awaitSettled(two);
+        assertEquals(List.of(new ShardedPlacement.Layout(false, List.of(a, b)).describe()), layoutLines());
+        int onB = 0;
+        for (int i = 0; i < names.size(); i++) {
+            Path before = one.locate(user, names.get(i));
+            Path after = two.locate(user, names.get(i));
+            assertEquals("content " + i, Files.readString(after, StandardCharsets.UTF_8));
+            assertEquals(after.equals(before), Files.exists(before));
+            if (after.startsWith(b)) onB++;
+            else assertEquals(before, after, "a file stayed on a but changed shard");
+        }
+        assertTrue(onB > 50 && onB < 150, onB + " of 200 files moved to the new volume");
+    }
+
+    // A restart mid-rebalance finds both layouts recorded and finishes the job. A file whose move was cut short after
+    // the copy landed is at both places; the copy wins and the source is dropped.
+    @Test
+    void interruptedRebalanceResumes() throws Exception {
+        ShardedPlacement.Layout old = new ShardedPlacement.Layout(false, List.of(a));
+        ShardedPlacement.Layout next = new ShardedPlacement.Layout(false, List.of(a, b));
+        write(layoutFile, next.describe() + "\n" + old.describe() + "\n");
+        String duplicated = null;
+        for (int i = 0; i < 100; i++) {
+            String name = "file" + i;
+            write(old.path(user, name), "content " + i);
+            if (duplicated == null && !next.path(user, name).equals(old.path(user, name))) {
+                duplicated = name;
+                write(next.path(user, name), "content " + i);
+            }
+        }
+        assertNotNull(duplicated);
+
+        ShardedPlacement resumed = new ShardedPlacement(List.of(a, b), layoutFile);
+        assertEquals(next.path(user, duplicated), resumed.locate(user, duplicated));
+        awaitSettled(resumed);
+        assertEquals(List.of(next.describe()), layoutLines());
+        assertFalse(Files.exists(old.path(user, duplicated)));
+        for (int i = 0; i < 100; i++) {
+            Path path = resumed.locate(user, "file" + i);
+            assertEquals(next.path(user, "file" + i), path);
+            assertEquals("content " + i, Files.readString(path, StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package cloudstorage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionStoreTest {
+    private final String user = "versions-test-" + System.nanoTime();
+    private final Path dir = Paths.get("versions-test-files", user);
+    private final Path current = dir.resolve("data.bin");
+    private final VersionStore versions = new VersionStore(user, new BlockStore(dir.resolve("blocks")));
+
+    // Replaces the current content the way an upload does: prepare, then adopt the reverse delta and patch or swap
+    // in the rebuilt file. With replayed the apply step runs twice, as a journal replay after a crash would.
+    private VersionStore.Update replace(byte[] content, boolean replayed) throws IOException {
+        Path literals = dir.resolve("literals");
+        Path reverse = dir.resolve("reverse");
+        Path rebuilt = dir.resolve("rebuilt");
+        VersionStore.Update update = versions.prepare("data.bin", current,
+                Channels.newChannel(new ByteArrayInputStream(content)), content.length, ProgressListener.NONE,
+                literals, reverse, rebuilt);
+        for (int pass = replayed ? 2 : 1; pass > 0; pass--) {
+            versions.adoptDelta("data.bin", update.number, reverse, update.oldSize, update.oldModified);
+            if (update.rebuilt == null) VersionStore.patch(current, literals, update.segments, update.size);
+            else if (Files.exists(rebuilt)) Files.move(rebuilt, current, StandardCopyOption.REPLACE_EXISTING);
+        }
+        versions.saveSignature("data.bin", current, update.next);
+        Files.deleteIfExists(literals);
+        return update;
+    }
+
+    private byte[] version(int number) throws IOException {
+        try (VersionStore.Materialized materialized = versions.materialize("data.bin", number, current, Compression.NONE)) {
+            return Files.readAllBytes(materialized.path);
+        }
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    void everyVersionIsReconstructed() throws IOException {
+        Files.createDirectories(dir);
+        byte[] v1 = random(200_000, 1);
+        Files.write(current, v1);
+        // Edited in place, so the blocks stay aligned and the literals are patched over the old content
+        byte[] v2 = v1.clone();
+        System.arraycopy(random(5000, 2), 0, v2, 50_000, 5000);
+        assertNull(replace(v2, false).rebuilt);
+        // Shifted by an insertion at the front, so the new content is assembled whole
+        byte[] v3 = new byte[v2.length + 333];
+        System.arraycopy(random(333, 3), 0, v3, 0, 333);
+        System.arraycopy(v2, 0, v3, 333, v2.length);
+        assertNotNull(replace(v3, false).rebuilt);
+        byte[] v4 = Arrays.copyOf(v3, 120_000);
+        replace(v4, false);
+
+        assertEquals(4, versions.currentNumber("data.bin"));
+        assertArrayEquals(v4, Files.readAllBytes(current));
+        assertArrayEquals(v1, version(1));
+        assertArrayEquals(v2, version(2));
+        assertArrayEquals(v3, version(3));
+        assertArrayEquals(v4, version(4));
+        for (VersionStore.Version version : versions.list("data.bin")) {
+            assertEquals(VersionStore.KIND_DELTA, version.kind);
+            // A reverse delta against content it shares most blocks with is far smaller than the version itself
+            assertTrue(version.storedSize < version.size / 2, "version " + version.number + " stored whole");
+        }
+    }
+
+    // Replaying an update that was already applied before the crash must not add a version or change the content
+    @Test
+    void replayedUpdateIsIdempotent() throws IOException {
+        Files.createDirectories(dir);
+        byte[] v1 = random(100_000, 4);
+        Files.write(current, v1);
+        byte[] v2 = v1.clone();
+        System.arraycopy(random(3000, 5), 0, v2, 10_000, 3000);
+        replace(v2, true);
+        byte[] v3 = new byte[v2.length + 10];
+        System.arraycopy(v2, 0, v3, 10, v2.length);
+        replace(v3, true);
+
+        List<VersionStore.Version> history = versions.list("data.bin");
+        assertEquals(List.of(1, 2), history.stream().map(v -> v.number).toList());
+        assertArrayEquals(v3, Files.readAllBytes(current));
+        assertArrayEquals(v1, version(1));
+        assertArrayEquals(v2, version(2));
+    }
+
+    // Only the newest KEEP versions are kept; the rest of the chain still reconstructs
+    @Test
+    void oldestVersionsArePruned() throws IOException {
+        Files.createDirectories(dir);
+        byte[] content = random(50_000, 4);
+        Files.write(current, content);
+        for (int i = 0; i < VersionStore.KEEP + 2; i++) {
+            content = content.clone();
+            content[i * 1000] ^= 1;
+            replace(content, false);
+        }
+
+        List<VersionStore.Version> history = versions.list("data.bin");
+        assertEquals(VersionStore.KEEP, history.size());
+        assertEquals(3, history.get(0).number);
+        assertEquals(VersionStore.KEEP + 3, versions.currentNumber("data.bin"));
+        assertThrows(IOException.class, () -> version(2));
+        byte[] third = random(50_000, 4);
+        for (int i = 0; i < 2; i++) third[i * 1000] ^= 1;
+        assertArrayEquals(third, version(3));
+    }
+
+    // Kept whole, as for compressed or deduplicated content, and still read back after the store is reopened
+    @Test
+    void archivedVersionSurvivesReopen() throws IOException {
+        Files.createDirectories(dir);
+        byte[] v1 = random(10_000, 6);
+        Files.write(current, v1);
+        versions.archive("data.bin", 1, current, Compression.NONE);
+        versions.archive("data.bin", 1, current, Compression.NONE);
+        byte[] v2 = random(8000, 7);
+        Files.write(current, v2);
+
+        VersionStore reopened = new VersionStore(user, new BlockStore(dir.resolve("blocks")));
+        assertEquals(2, reopened.currentNumber("data.bin"));
+        assertEquals(1, reopened.list("data.bin").size());
+        try (VersionStore.Materialized materialized = reopened.materialize("data.bin", 1, current, Compression.NONE)) {
+            assertArrayEquals(v1, Files.readAllBytes(materialized.path));
+        }
+        reopened.deleteAll("data.bin");
+        assertTrue(reopened.list("data.bin").isEmpty());
+        assertFalse(Files.exists(reopened.directory("data.bin")));
+    }
+}
@@ -0,0 +1,113 @@
+package cloudstorage;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Keeps the newest lines in a fixed ring; appends from any thread are queued and applied to the model once per frame
+class ActivityLog extends AbstractListModel<String> {
+    private static final int DEFAULT_CAPACITY = Integer.getInteger("cloudstorage.log.lines", 5000);
+    private static final int FRAME_MS = 16;
+
+    private final String[] ring;
+    private int head = 0;
+    private int count = 0;
+    private final StringBuilder partial = new StringBuilder();
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Timer frameTimer;
+    private final RollingLogWriter sink;
+    private JList<String> view;
+
+    public ActivityLog() { this(DEFAULT_CAPACITY, RollingLogWriter.shared()); }
+
+    public ActivityLog(int capacity, RollingLogWriter sink) {
+        this.ring = new String[Math.max(1, capacity)];
+        this.sink = sink;
+        frameTimer = new Timer(FRAME_MS, e -> flush());
+        frameTimer.setRepeats(false);
+    }
+
+    // Same contract as JTextArea.append: text may hold several lines or end mid-line
+    public void append(String text) {
+        synchronized (partial) {
+            partial.append(text);
+            int start = 0;
+            int newline;
+            while ((newline = partial.indexOf("\n", start)) >= 0) {
+                String line = partial.substring(start, newline);
+                pending.add(line);
+                if (sink != null && !line.isEmpty()) sink.append(line);
+                start = newline + 1;
+            }
+            partial.delete(0, start);
+        }
+        if (scheduled.compareAndSet(false, true)) frameTimer.restart();
+    }
+
+    public int getCapacity() { return ring.length; }
+
+    public int getSize() { return count; }
+
+    public String getElementAt(int index) { return ring[(head + index) % ring.length]; }
+
+    public JComponent createView(Font font, Color background, Color foreground) {
+        view = new JList<>(this) {
+            // Lines are clipped to the panel width instead of measuring every line for a horizontal scrollbar
+            public boolean getScrollableTracksViewportWidth() { return true; }
+        };
+        view.setFont(font);
+        view.setBackground(background);
+        view.setForeground(foreground);
+        view.setBorder(new EmptyBorder(15, 15, 15, 15));
+        // A fixed cell height lets JList size the viewport without measuring every line
+        view.setPrototypeCellValue("=".repeat(50));
+        view.setFixedCellWidth(1);
+        view.setCellRenderer(new DefaultListCellRenderer() {
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected, boolean focus) {
+                String line = (String) value;
+                super.getListCellRendererComponent(list, line.isEmpty() ? " " : line, index, selected, false);
+                setToolTipText(line.isEmpty() ? null : line);
+                return this;
+            }
+        });
+        return view;
+    }
+
+    private void flush() {
+        scheduled.set(false);
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = pending.poll()) != null) lines.add(line);
+        if (lines.isEmpty()) return;
+
+        boolean following = isFollowing();
+        int from = Math.max(0, lines.size() - ring.length);
+        int before = count;
+        for (int i = from; i < lines.size(); i++) {
+            if (count < ring.length) {
+                ring[(head + count) % ring.length] = lines.get(i);
+                count++;
+            } else {
+                ring[head] = lines.get(i);
+                head = (head + 1) % ring.length;
+            }
+        }
+        int added = lines.size() - from;
+        int evicted = before + added - count;
+        if (evicted > 0) fireIntervalRemoved(this, 0, evicted - 1);
+        fireIntervalAdded(this, count - added, count - 1);
+        if (following && view != null) view.ensureIndexIsVisible(count - 1);
+    }
+
+    // Only pin to the bottom if the user hasn't scrolled up to read something
+    private boolean isFollowing() {
+        if (view == null || !(view.getParent() instanceof JViewport)) return true;
+        Rectangle visible = view.getVisibleRect();
+        return visible.y + visible.height >= view.getHeight() - view.getFixedCellHeight() * 2;
+    }
+}
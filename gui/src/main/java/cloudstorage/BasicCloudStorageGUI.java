@@ -0,0 +1,1245 @@
+package cloudstorage;
+
+import java.util.*;
+import java.io.*;
+import javax.swing.*;
+import javax.swing.border.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.StandardOpenOption;
+
+class RegistrationWindow extends JFrame {
+    private JTextField usernameField;
+    private JPasswordField passwordField;
+    private JPasswordField confirmPasswordField;
+    private JLabel req1;
+    private JLabel req2;
+    private JLabel req3;
+    private UserAuthSystem authSystem;
+    private boolean registrationSuccess = false;
+    private final TaskRunner tasks = new TaskRunner(line -> { });
+
+    private final Color PRIMARY_COLOR = new Color(41, 128, 185);
+    private final Color BACKGROUND = new Color(236, 240, 241);
+    private final Color TEXT_DARK = new Color(44, 62, 80);
+
+    public RegistrationWindow(UserAuthSystem authSystem) {
+        this.authSystem = authSystem;
+
+        setTitle("Register New User");
+        setExtendedState(JFrame.MAXIMIZED_BOTH);
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setLayout(new BorderLayout());
+        getContentPane().setBackground(BACKGROUND);
+
+        JPanel mainPanel = new JPanel(new GridBagLayout());
+        mainPanel.setBackground(BACKGROUND);
+        mainPanel.setBorder(new EmptyBorder(40, 40, 40, 40));
+
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridwidth = GridBagConstraints.REMAINDER;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.insets = new Insets(10, 0, 10, 0);
+        gbc.anchor = GridBagConstraints.CENTER;
+
+        JLabel titleLabel = new JLabel("📝 Create New Account", SwingConstants.CENTER);
+        titleLabel.setFont(new Font("Segoe UI", Font.BOLD, 38));   // bigger title [web:17]
+        titleLabel.setForeground(PRIMARY_COLOR);
+        gbc.insets = new Insets(0, 0, 30, 0);
+        mainPanel.add(titleLabel, gbc);
+
+        gbc.insets = new Insets(5, 0, 5, 0);
+        JLabel userLabel = new JLabel("Username (minimum 6 characters):");
+        userLabel.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        userLabel.setForeground(TEXT_DARK);
+        mainPanel.add(userLabel, gbc);
+
+        usernameField = new JTextField();
+        usernameField.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        usernameField.setPreferredSize(new Dimension(420, 45));
+        mainPanel.add(usernameField, gbc);
+
+        gbc.insets = new Insets(20, 0, 5, 0);
+        JLabel passLabel = new JLabel("Password (minimum 4 characters):");
+        passLabel.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        passLabel.setForeground(TEXT_DARK);
+        mainPanel.add(passLabel, gbc);
+
+        gbc.insets = new Insets(5, 0, 5, 0);
+        JPanel passwordPanel = createPasswordWithToggle();
+        mainPanel.add(passwordPanel, gbc);
+
+        gbc.insets = new Insets(20, 0, 5, 0);
+        JLabel confirmLabel = new JLabel("Confirm Password:");
+        confirmLabel.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        confirmLabel.setForeground(TEXT_DARK);
+        mainPanel.add(confirmLabel, gbc);
+
+        gbc.insets = new Insets(5, 0, 5, 0);
+        confirmPasswordField = new JPasswordField();
+        confirmPasswordField.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        confirmPasswordField.setPreferredSize(new Dimension(420, 45));
+        mainPanel.add(confirmPasswordField, gbc);
+
+        gbc.insets = new Insets(25, 0, 5, 0);
+        JLabel reqLabel = new JLabel("Password Requirements:");
+        reqLabel.setFont(new Font("Segoe UI", Font.BOLD, 15));
+        reqLabel.setForeground(TEXT_DARK);
+        mainPanel.add(reqLabel, gbc);
+
+        gbc.insets = new Insets(3, 0, 3, 0);
+        req1 = new JLabel("✗ Must start with a capital letter");
+        req1.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        req1.setForeground(Color.RED);
+        mainPanel.add(req1, gbc);
+
+        req2 = new JLabel("✗ Must contain at least one special character (!@#$%^&* etc.)");
+        req2.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        req2.setForeground(Color.RED);
+        mainPanel.add(req2, gbc);
+
+        req3 = new JLabel("✗ Minimum 4 characters long");
+        req3.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        req3.setForeground(Color.RED);
+        mainPanel.add(req3, gbc);
+
+        addPasswordLiveValidation();  // real-time feedback [web:19][web:15]
+
+        gbc.insets = new Insets(30, 0, 10, 0);
+        JButton registerBtn = createStyledButton("Register", new Color(46, 204, 113));
+        registerBtn.addActionListener(e -> handleRegistration());
+        mainPanel.add(registerBtn, gbc);
+
+        gbc.insets = new Insets(5, 0, 0, 0);
+        JButton cancelBtn = createStyledButton("Cancel", new Color(231, 76, 60));
+        cancelBtn.addActionListener(e -> {
+            dispose();
+            SwingUtilities.invokeLater(() -> new LoginWindow());
+        });
+        mainPanel.add(cancelBtn, gbc);
+
+        add(mainPanel, BorderLayout.CENTER);
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+    private JPanel createPasswordWithToggle() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBackground(BACKGROUND);
+
+        passwordField = new JPasswordField();
+        passwordField.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        passwordField.setPreferredSize(new Dimension(420, 45));
+
+        JButton toggleBtn = new JButton("👁");
+        toggleBtn.setPreferredSize(new Dimension(50, 45));
+        toggleBtn.setFocusPainted(false);
+        toggleBtn.setBorderPainted(false);
+        toggleBtn.setBackground(Color.WHITE);
+        toggleBtn.setCursor(new Cursor(Cursor.HAND_CURSOR));
+
+        char defaultEcho = passwordField.getEchoChar();  // [web:23]
+        toggleBtn.addActionListener(e -> {
+            if (passwordField.getEchoChar() == 0) {
+                passwordField.setEchoChar(defaultEcho);
+            } else {
+                passwordField.setEchoChar((char) 0);       // show password [web:21][web:28]
+            }
+        });
+
+        panel.add(passwordField, BorderLayout.CENTER);
+        panel.add(toggleBtn, BorderLayout.EAST);
+        return panel;
+    }
+
+    private void addPasswordLiveValidation() {
+        DocumentListener listener = new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { updateReqLabels(); }
+            public void removeUpdate(DocumentEvent e) { updateReqLabels(); }
+            public void changedUpdate(DocumentEvent e) { updateReqLabels(); }
+        };
+        passwordField.getDocument().addDocumentListener(listener);
+    }
+
+    private void updateReqLabels() {
+        String password = new String(passwordField.getPassword());
+
+        boolean lenOk = password.length() >= 4;
+        boolean firstUpper = password.length() > 0 && Character.isUpperCase(password.charAt(0));
+        String specialCharPattern = ".*[!@#$%^&()_+\\-=\\[\\]{};':\"\\\\|,.<>\\/?].*";
+        boolean hasSpecial = password.matches(specialCharPattern);   // [web:29]
+
+        updateLabel(req1, firstUpper, "Must start with a capital letter");
+        updateLabel(req2, hasSpecial, "Must contain at least one special character (!@#$%^&* etc.)");
+        updateLabel(req3, lenOk, "Minimum 4 characters long");
+    }
+
+    private void updateLabel(JLabel label, boolean ok, String text) {
+        if (ok) {
+            label.setText("✓ " + text);
+            label.setForeground(new Color(39, 174, 96));
+        } else {
+            label.setText("✗ " + text);
+            label.setForeground(Color.RED);
+        }
+    }
+
+    private JButton createStyledButton(String text, Color color) {
+        JButton btn = new JButton(text);
+        btn.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        btn.setBackground(color);
+        btn.setForeground(Color.WHITE);
+        btn.setFocusPainted(false);
+        btn.setBorderPainted(false);
+        btn.setPreferredSize(new Dimension(420, 50));
+        btn.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        btn.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createLineBorder(color.darker(), 2),
+                new EmptyBorder(10, 20, 10, 20)
+        ));
+        btn.addMouseListener(new java.awt.event.MouseAdapter() {
+            public void mouseEntered(java.awt.event.MouseEvent evt) {
+                btn.setBackground(color.brighter());
+            }
+            public void mouseExited(java.awt.event.MouseEvent evt) {
+                btn.setBackground(color);
+            }
+        });
+        return btn;
+    }
+
+    private boolean validatePasswordBase(String password) {
+        if (password.length() < 4) return false;
+        if (!Character.isUpperCase(password.charAt(0))) return false;
+        String specialCharPattern = ".*[!@#$%^&()_+\\-=\\[\\]{};':\"\\\\|,.<>\\/?].*";
+        if (!password.matches(specialCharPattern)) return false;
+        return true;
+    }
+
+    private void handleRegistration() {
+        String username = usernameField.getText().trim();
+        String password = new String(passwordField.getPassword());
+        String confirmPassword = new String(confirmPasswordField.getPassword());
+
+        if (username.length() < 6) {
+            JOptionPane.showMessageDialog(this, "Username must be at least 6 characters long!",
+                    "Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (!validatePasswordBase(password)) {
+            JOptionPane.showMessageDialog(this,
+                    "Password does not meet all requirements!",
+                    "Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (!password.equals(confirmPassword)) {
+            JOptionPane.showMessageDialog(this, "Passwords do not match!",
+                    "Validation Error", JOptionPane.ERROR_MESSAGE);
+            passwordField.setText("");
+            confirmPasswordField.setText("");
+            return;
+        }
+        tasks.submit(new StorageTask<Boolean>("Registration") {
+            protected Boolean work() { return authSystem.registerUser(username, password); }
+
+            protected void succeeded(Boolean registered) {
+                if (registered) {
+                    JOptionPane.showMessageDialog(RegistrationWindow.this, "Registration successful! You can now login.",
+                            "Success", JOptionPane.INFORMATION_MESSAGE);
+                    registrationSuccess = true;
+                    dispose();
+                    SwingUtilities.invokeLater(() -> new LoginWindow());
+                } else {
+                    JOptionPane.showMessageDialog(RegistrationWindow.this, "Username already exists! Please choose a different username.",
+                            "Registration Failed", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+    }
+}
+
+public class BasicCloudStorageGUI extends JFrame {
+    private final DownloadFile user = new DownloadFile();
+    private final String userName;
+    private final ActivityLog outputArea = new ActivityLog();
+    private final TaskRunner tasks = new TaskRunner(line -> outputArea.append(line));
+    private JLabel fileCountLabel;
+    private JLabel userLabel;
+    private final Color PRIMARY_BLUE = new Color(41, 128, 185);
+    private final Color UPLOAD_GREEN = new Color(58, 123, 213);
+    private final Color UPLOAD_GREEN_HOVER = new Color(72, 149, 239);
+    private final Color BACKGROUND = new Color(236, 240, 241);
+    private final Color HEADER_DARK = new Color(44, 62, 80);
+    private final Color PANEL_WHITE = Color.WHITE;
+
+    public BasicCloudStorageGUI(String username) {
+        userName = username;
+
+        setTitle("Cloud Based Storage Manager - " + userName);
+        setExtendedState(JFrame.MAXIMIZED_BOTH);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setLayout(new BorderLayout());
+        getContentPane().setBackground(BACKGROUND);
+
+        add(createHeader(), BorderLayout.NORTH);
+
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT);
+        splitPane.setDividerLocation(550);
+        splitPane.setDividerSize(2);
+        Border border = BorderFactory.createLineBorder(Color.CYAN, 3);
+        splitPane.setBorder(border);
+        splitPane.setResizeWeight(0.5);
+
+        splitPane.setLeftComponent(createControlPanel());
+        splitPane.setRightComponent(createOutputPanel());
+        add(splitPane, BorderLayout.CENTER);
+
+        setLocationRelativeTo(null);
+        setVisible(true);
+
+        outputArea.append("=".repeat(50) + "\n");
+        outputArea.append("     WELCOME TO CLOUD STORAGE MANAGER\n");
+        outputArea.append("=".repeat(50) + "\n");
+        outputArea.append("User: " + userName + "\n");
+        outputArea.append("Status: Ready to manage your files\n");
+        outputArea.append("=".repeat(50) + "\n\n");
+        openStorage();
+    }
+
+    // The window is shown before the user's storage is opened, its journal recovered and the catalog and search index
+    // read, so a large account opens as fast as an empty one; tasks submitted meanwhile queue behind this one on the
+    // single worker
+    private void openStorage() {
+        fileCountLabel.setText("📁 Loading...");
+        tasks.submit(new StorageTask<Integer>("Loading your files") {
+            // Every later task needs the storage open, so a cancel lets the load finish rather than interrupt recovery
+            protected boolean cancelsCooperatively() { return true; }
+
+            protected Integer work() {
+                user.setUserName(userName);
+                user.index.size();
+                return user.files.size();
+            }
+
+            protected void succeeded(Integer count) {
+                updateFileCount();
+                if (user.index.size() < count) indexExistingFiles();
+            }
+        });
+    }
+
+    private JPanel createHeader() {
+        JPanel header = new JPanel(new BorderLayout());
+        header.setBackground(HEADER_DARK);
+        header.setBorder(new EmptyBorder(20, 30, 20, 30));
+
+        JPanel leftHeader = new JPanel(new FlowLayout(FlowLayout.LEFT, 15, 0));
+        leftHeader.setBackground(HEADER_DARK);
+        JLabel icon = new JLabel("☁");
+        icon.setFont(new Font("Segoe UI", Font.BOLD, 36));
+        icon.setForeground(new Color(52, 152, 219));
+        JLabel title = new JLabel("Cloud Storage Manager");
+        title.setFont(new Font("Segoe UI", Font.BOLD, 28));
+        title.setForeground(Color.WHITE);
+        leftHeader.add(icon);
+        leftHeader.add(title);
+
+        JPanel rightHeader = new JPanel(new GridLayout(2, 1, 0, 5));
+        rightHeader.setBackground(HEADER_DARK);
+        userLabel = new JLabel("👤 " + userName);
+        userLabel.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        userLabel.setForeground(Color.WHITE);
+        userLabel.setHorizontalAlignment(SwingConstants.RIGHT);
+        fileCountLabel = new JLabel("📁 0 Files");
+        fileCountLabel.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        fileCountLabel.setForeground(new Color(189, 195, 199));
+        fileCountLabel.setHorizontalAlignment(SwingConstants.RIGHT);
+
+        rightHeader.add(userLabel);
+        rightHeader.add(fileCountLabel);
+
+        header.add(leftHeader, BorderLayout.WEST);
+        header.add(rightHeader, BorderLayout.EAST);
+        return header;
+    }
+
+    private JPanel createControlPanel() {
+        JPanel panel = new JPanel(new GridBagLayout());
+        panel.setBackground(BACKGROUND);
+        panel.setBorder(new EmptyBorder(20, 40, 20, 40));
+
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridwidth = GridBagConstraints.REMAINDER;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.insets = new Insets(8, 0, 8, 0);
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.CENTER;
+
+        JLabel controlTitle = new JLabel("Control Center", SwingConstants.CENTER);
+        controlTitle.setFont(new Font("Segoe UI", Font.BOLD, 24));
+        controlTitle.setForeground(HEADER_DARK);
+        controlTitle.setBorder(new EmptyBorder(0, 0, 20, 0));
+        panel.add(controlTitle, gbc);
+
+        JButton uploadBtn = createColoredButton("📤  Upload File", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton uploadFolderBtn = createColoredButton("📂  Upload Files / Folder", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton showBtn = createColoredButton("📋  Show All Files", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton searchBtn = createColoredButton("🔍  Search Files", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton downloadBtn = createColoredButton("📥  Download File", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton downloadManyBtn = createColoredButton("📦  Download Many Files", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton SeeDownloadsBtn = createColoredButton("📋  See All Downloaded Files", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton exportBtn = createColoredButton("🗄  Export Archive", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton importBtn = createColoredButton("📥  Import Archive", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton historyBtn = createColoredButton("🕘  Version History", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton deleteBtn = createColoredButton("🗑  Delete File", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton deleteAllBtn = createColoredButton("⚠  Delete All Files", UPLOAD_GREEN, UPLOAD_GREEN_HOVER, 16);
+        JButton logoutBtn = createColoredButton("🚪  Logout", new Color(52, 152, 219), new Color(41, 128, 185), 16);
+        JButton exitBtn = createColoredButton("❌  Exit Application", new Color(231, 76, 60), new Color(192, 57, 43), 16);
+
+        panel.add(uploadBtn, gbc);
+        panel.add(uploadFolderBtn, gbc);
+        panel.add(showBtn, gbc);
+        panel.add(searchBtn, gbc);
+        panel.add(downloadBtn, gbc);
+        panel.add(downloadManyBtn, gbc);
+        panel.add(SeeDownloadsBtn, gbc);
+        panel.add(exportBtn, gbc);
+        panel.add(importBtn, gbc);
+        panel.add(historyBtn, gbc);
+        panel.add(deleteBtn, gbc);
+        panel.add(deleteAllBtn, gbc);
+
+        gbc.insets = new Insets(25, 0, 8, 0);
+        panel.add(logoutBtn, gbc);
+        gbc.insets = new Insets(8, 0, 0, 0);
+        panel.add(exitBtn, gbc);
+
+        uploadBtn.addActionListener(e -> upload());
+        uploadFolderBtn.addActionListener(e -> uploadFiles());
+        showBtn.addActionListener(e -> showAllFiles());
+        searchBtn.addActionListener(e -> search());
+        downloadBtn.addActionListener(e -> download());
+        downloadManyBtn.addActionListener(e -> downloadFiles());
+        SeeDownloadsBtn.addActionListener(e -> SeeDownloads());
+        exportBtn.addActionListener(e -> exportArchive());
+        importBtn.addActionListener(e -> importArchive());
+        historyBtn.addActionListener(e -> versionHistory());
+        deleteBtn.addActionListener(e -> delete());
+        deleteAllBtn.addActionListener(e -> deleteAllFiles());
+        logoutBtn.addActionListener(e -> logout());
+        exitBtn.addActionListener(e -> exitApplication());
+
+        return panel;
+    }
+
+    private JPanel createOutputPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBackground(BACKGROUND);
+        panel.setBorder(new EmptyBorder(40, 40, 40, 40));
+
+        JLabel outputTitle = new JLabel("Activity Log", SwingConstants.CENTER);
+        outputTitle.setFont(new Font("Segoe UI", Font.BOLD, 24));
+        outputTitle.setForeground(HEADER_DARK);
+        outputTitle.setBorder(new EmptyBorder(0, 0, 20, 0));
+
+        JScrollPane scrollPane = new JScrollPane(
+                outputArea.createView(new Font("Consolas", Font.BOLD, 14), PANEL_WHITE, HEADER_DARK));
+        scrollPane.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createLineBorder(new Color(189, 195, 199), 2),
+                BorderFactory.createEmptyBorder(5, 5, 5, 5)
+        ));
+
+        panel.add(outputTitle, BorderLayout.NORTH);
+        panel.add(scrollPane, BorderLayout.CENTER);
+        panel.add(tasks.createStatusPanel(BACKGROUND), BorderLayout.SOUTH);
+        return panel;
+    }
+
+    private JButton createColoredButton(String text, Color bgColor, Color hoverColor, int fontSize) {
+        JButton button = new JButton(text);
+        button.setFont(new Font("Segoe UI", Font.BOLD, fontSize));
+        button.setBackground(bgColor);
+        button.setForeground(Color.WHITE);
+        button.setFocusPainted(false);
+        button.setBorderPainted(false);
+        button.setOpaque(true);
+        button.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        button.setPreferredSize(new Dimension(420, 55));
+        button.setMinimumSize(new Dimension(420, 55));
+        button.setMaximumSize(new Dimension(420, 55));
+        button.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createLineBorder(bgColor.darker(), 2),
+                new EmptyBorder(12, 25, 12, 25)
+        ));
+        button.addMouseListener(new java.awt.event.MouseAdapter() {
+            public void mouseEntered(java.awt.event.MouseEvent evt) {
+                button.setBackground(hoverColor);
+                button.setBorder(BorderFactory.createCompoundBorder(
+                        BorderFactory.createLineBorder(hoverColor.darker(), 2),
+                        new EmptyBorder(12, 25, 12, 25)
+                ));
+            }
+            public void mouseExited(java.awt.event.MouseEvent evt) {
+                button.setBackground(bgColor);
+                button.setBorder(BorderFactory.createCompoundBorder(
+                        BorderFactory.createLineBorder(bgColor.darker(), 2),
+                        new EmptyBorder(12, 25, 12, 25)
+                ));
+            }
+        });
+        return button;
+    }
+
+    // Reads the catalog's running totals, so it costs the same after every change at any number of files
+    private void updateFileCount() {
+        Usage usage = user.usage();
+        long count = usage.files();
+        long quota = usage.byteQuota();
+        fileCountLabel.setText("📁 " + count + " File" + (count != 1 ? "s" : "") + " · "
+                + FileBrowserModel.formatSize(usage.bytes())
+                + (quota > 0 ? " of " + FileBrowserModel.formatSize(quota) : ""));
+    }
+
+    private void logout() {
+        int choice = JOptionPane.showConfirmDialog(
+                this,
+                "Are you sure you want to logout?",
+                "Confirm Logout",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.QUESTION_MESSAGE
+        );
+        if (choice == JOptionPane.YES_OPTION) {
+            outputArea.append("\n" + "=".repeat(50) + "\n");
+            outputArea.append("Logging out " + userName + "...\n");
+            outputArea.append("=".repeat(50) + "\n");
+            dispose();
+            SwingUtilities.invokeLater(() -> new LoginWindow());
+        }
+    }
+
+    private void exitApplication() {
+        int choice = JOptionPane.showConfirmDialog(
+                this,
+                "Are you sure you want to exit?",
+                "Confirm Exit",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.QUESTION_MESSAGE
+        );
+        if (choice == JOptionPane.YES_OPTION) {
+            outputArea.append("\n" + "=".repeat(50) + "\n");
+            outputArea.append("Goodbye " + userName + "! See you soon.\n");
+            outputArea.append("=".repeat(50) + "\n");
+            System.exit(0);
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());   // [web:26]
+        } catch (Exception e) { }
+        Metrics.startEndpointIfConfigured();
+        SwingUtilities.invokeLater(() -> new LoginWindow());
+    }
+
+    public void upload() {
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(new EmptyBorder(15, 15, 15, 15));
+
+        JPanel inputPanel = new JPanel(new BorderLayout(5, 15));
+        JPanel fileNamePanel = new JPanel(new BorderLayout(5, 5));
+        JLabel fileLabel = new JLabel("📄 File Name:");
+        fileLabel.setFont(new Font("Segoe UI", Font.BOLD, 13));
+        fileNamePanel.add(fileLabel, BorderLayout.NORTH);
+        JTextField fileField = new JTextField();
+        fileField.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        fileField.setPreferredSize(new Dimension(300, 35));
+        fileNamePanel.add(fileField, BorderLayout.CENTER);
+
+        JPanel contentPanel = new JPanel(new BorderLayout(5, 5));
+        JLabel contentLabel = new JLabel("📝 Content:");
+        contentLabel.setFont(new Font("Segoe UI", Font.BOLD, 13));
+        contentPanel.add(contentLabel, BorderLayout.NORTH);
+        JTextArea contentField = new JTextArea(15, 40);
+        contentField.setFont(new Font("Consolas", Font.PLAIN, 13));
+        contentField.setLineWrap(true);
+        contentField.setWrapStyleWord(true);
+        JScrollPane contentScroll = new JScrollPane(contentField);
+        contentScroll.setPreferredSize(new Dimension(400, 300));
+        contentPanel.add(contentScroll, BorderLayout.CENTER);
+
+        inputPanel.add(fileNamePanel, BorderLayout.NORTH);
+        inputPanel.add(contentPanel, BorderLayout.CENTER);
+        panel.add(inputPanel, BorderLayout.CENTER);
+
+        int result = JOptionPane.showConfirmDialog(this, panel,
+                "Upload New File",
+                JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE
+        );
+        if (result == JOptionPane.OK_OPTION) {
+            String fileName = fileField.getText().trim();
+            String content = contentField.getText();
+            if (fileName.isEmpty()) {
+                outputArea.append("❌ UPLOAD FAILED: File name cannot be empty\n\n");
+                return;
+            }
+            tasks.submit(new StorageTask<Integer>("Uploading '" + fileName + "'") {
+                private String name;
+                private int version;
+
+                protected Integer work() throws Exception {
+                    name = UploadFile.normalizeName(fileName);
+                    byte[] data = content.getBytes();
+                    user.upload(name, Channels.newChannel(new ByteArrayInputStream(data)), data.length, this::progress);
+                    version = user.currentVersion(name);
+                    return new StringTokenizer(content).countTokens();
+                }
+
+                protected void succeeded(Integer words) {
+                    outputArea.append("✅ SUCCESS: File '" + name + "' uploaded successfully"
+                            + (version > 1 ? " as version " + version : "") + "\n");
+                    outputArea.append("   Size: " + words + " Words\n\n");
+                    updateFileCount();
+                }
+
+                protected void failed(Exception e) {
+                    if (e instanceof FileAlreadyExistsException)
+                        outputArea.append("❌ UPLOAD FAILED: File '" + name + "' already exists\n\n");
+                    else if (e instanceof Usage.QuotaExceededException)
+                        outputArea.append("❌ UPLOAD FAILED: " + e.getMessage() + "\n\n");
+                    else if (e instanceof IllegalArgumentException)
+                        outputArea.append("❌ UPLOAD FAILED: '" + name + "' is not a valid file name\n\n");
+                    else outputArea.append("❌ ERROR: Failed to upload file\n\n");
+                }
+            });
+        }
+    }
+
+    // Local files and whole folders, stored through the batch pipeline with one summary for the lot
+    public void uploadFiles() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Upload Files / Folder");
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        chooser.setMultiSelectionEnabled(true);
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        List<java.nio.file.Path> selection = new ArrayList<>();
+        for (File file : chooser.getSelectedFiles()) selection.add(file.toPath());
+        outputArea.append("\n" + "=".repeat(50) + "\n");
+        outputArea.append("          UPLOADING FILES\n");
+        outputArea.append("=".repeat(50) + "\n");
+        tasks.submit(new StorageTask<BatchTransfer.Result>("Uploading " + selection.size() + " selected item(s)") {
+            protected boolean cancelsCooperatively() { return true; }
+
+            protected BatchTransfer.Result work() throws IOException {
+                Map<String, java.nio.file.Path> sources = UploadFile.collect(selection);
+                log("   " + sources.size() + " file(s) found\n");
+                return user.uploadAll(sources, batchProgress(this), this::isCancelRequested);
+            }
+
+            protected void succeeded(BatchTransfer.Result result) {
+                printBatchSummary("uploaded", result);
+                updateFileCount();
+            }
+
+            protected void failed(Exception e) { outputArea.append("❌ ERROR: Could not read the selection\n\n"); }
+        });
+    }
+
+    public void showAllFiles() {
+        browse("📋 All Files in Storage", user::list, " file(s) in storage", "📋 Opened file browser");
+    }
+
+    // The catalog is loaded on the worker before the browser opens, so neither its listing nor the sizes and dates it
+    // looks up while painting read the disk on the UI thread; a refresh later is answered from memory
+    private void browse(String title, Supplier<List<String>> source, String counted, String opened) {
+        tasks.submit(new StorageTask<List<String>>("Listing your files") {
+            protected List<String> work() {
+                user.list();
+                return source.get();
+            }
+
+            protected void succeeded(List<String> names) {
+                FileBrowser browser = new FileBrowser(BasicCloudStorageGUI.this, title, source, user::stat,
+                        BasicCloudStorageGUI.this::download);
+                outputArea.append(opened + " (" + names.size() + counted + ")\n\n");
+                browser.setVisible(true);
+            }
+        });
+    }
+
+    private void indexExistingFiles() {
+        tasks.submit(new StorageTask<Integer>("Indexing existing files for search") {
+            protected Integer work() { return user.indexMissing(this::progress); }
+
+            protected void succeeded(Integer indexed) {
+                if (indexed > 0) outputArea.append("🔍 Indexed " + indexed + " existing file(s) for search\n\n");
+            }
+        });
+    }
+
+    public void search() {
+        String query = JOptionPane.showInputDialog(this,
+                "Search file contents (words, prefix*, \"exact phrase\"):", "Search Files", JOptionPane.QUESTION_MESSAGE);
+        if (query == null || query.isBlank()) return;
+        tasks.submit(new StorageTask<List<String>>("Searching for '" + query + "'") {
+            private long elapsedMillis;
+
+            protected List<String> work() throws Exception {
+                long start = System.nanoTime();
+                List<String> matches = user.search(query);
+                elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+                return matches;
+            }
+
+            protected void succeeded(List<String> matches) {
+                outputArea.append("🔍 SEARCH '" + query + "': " + matches.size() + " file(s) in " + elapsedMillis + " ms\n\n");
+                if (!matches.isEmpty())
+                    new FileBrowser(BasicCloudStorageGUI.this, "🔍 Search: " + query, () -> matches, user::stat,
+                            BasicCloudStorageGUI.this::download).setVisible(true);
+            }
+
+            protected void failed(Exception e) { outputArea.append("❌ ERROR: Search failed\n\n"); }
+        });
+    }
+
+    public void download() {
+        withFiles("No files available to download", names -> {
+            String[] fileArray = names.toArray(new String[0]);
+            String fileName = (String) JOptionPane.showInputDialog(
+                    this,
+                    "Select a file to download:",
+                    "Download File",
+                    JOptionPane.QUESTION_MESSAGE,
+                    null,
+                    fileArray,
+                    fileArray[0]
+            );
+            if (fileName != null && !fileName.trim().isEmpty()) download(fileName);
+        });
+    }
+
+    // Lists the files on the worker, so an account whose catalog is still loading never stalls the UI thread, then
+    // hands the listing to the dialog on the EDT
+    private void withFiles(String emptyMessage, Consumer<List<String>> then) {
+        tasks.submit(new StorageTask<List<String>>("Listing your files") {
+            protected List<String> work() { return user.list(); }
+
+            protected void succeeded(List<String> names) {
+                if (names.isEmpty()) {
+                    outputArea.append("ℹ  INFO: " + emptyMessage + "\n\n");
+                    JOptionPane.showMessageDialog(BasicCloudStorageGUI.this, "No files available!", "Info",
+                            JOptionPane.INFORMATION_MESSAGE);
+                    return;
+                }
+                then.accept(names);
+            }
+        });
+    }
+
+    public void download(String fileName) {
+        tasks.submit(new StorageTask<TextPager>("Downloading '" + fileName + "'") {
+            private String name;
+            private boolean exists;
+
+            protected TextPager work() throws IOException {
+                user.setFileName(fileName);
+                name = user.getFileName();
+                exists = user.stat(name) != null;
+                return exists ? user.openPager(name, this::progress) : null;
+            }
+
+            protected void succeeded(TextPager pager) { showDownload(name, exists, pager); }
+
+            protected void failed(Exception e) {
+                outputArea.append(exists ? "❌ ERROR: File not found on disk\n\n" : "❌ ERROR: Download failed\n\n");
+            }
+        });
+    }
+
+    // The viewer pages through the file instead of holding it in a text area, so size does not matter here
+    private void showDownload(String fileName, boolean exists, TextPager pager) {
+        if (exists) {
+            new TextViewer(this, fileName, pager).setVisible(true);
+            outputArea.append("✅ SUCCESS: File '" + fileName + "' downloaded and viewed\n\n");
+            if (!user.dFiles.contains(fileName)) user.dFiles.add(fileName);
+        } else {
+            outputArea.append("❌ ERROR: File does not exist in storage\n\n");
+        }
+    }
+
+    public void downloadFiles() {
+        withFiles("No files available to download", listed -> showDownloadFiles(listed));
+    }
+
+    private void showDownloadFiles(List<String> listed) {
+        JList<String> names = new JList<>(listed.toArray(new String[0]));
+        names.setFont(new Font("Consolas", Font.PLAIN, 13));
+        names.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        names.setVisibleRowCount(15);
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        panel.add(new JLabel("Select the files to download (Ctrl+A for all):"), BorderLayout.NORTH);
+        panel.add(new JScrollPane(names), BorderLayout.CENTER);
+        if (JOptionPane.showConfirmDialog(this, panel, "Download Many Files", JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION || names.isSelectionEmpty()) return;
+        List<String> selected = names.getSelectedValuesList();
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Download " + selected.size() + " file(s) to");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        java.nio.file.Path directory = chooser.getSelectedFile().toPath();
+        outputArea.append("\n" + "=".repeat(50) + "\n");
+        outputArea.append("          DOWNLOADING FILES\n");
+        outputArea.append("=".repeat(50) + "\n");
+        tasks.submit(new StorageTask<BatchTransfer.Result>("Downloading " + selected.size() + " file(s)") {
+            protected boolean cancelsCooperatively() { return true; }
+
+            protected BatchTransfer.Result work() {
+                return user.downloadAll(selected, directory, batchProgress(this), this::isCancelRequested);
+            }
+
+            protected void succeeded(BatchTransfer.Result result) {
+                outputArea.append("📁 Saved to " + directory + "\n");
+                printBatchSummary("downloaded", result);
+                for (String name : selected) if (!user.dFiles.contains(name)) user.dFiles.add(name);
+            }
+        });
+    }
+
+    // Progress for the status bar, with a line in the log at every tenth of the way
+    private static ProgressListener batchProgress(StorageTask<?> task) {
+        int[] nextReport = { 0 };
+        return (done, total) -> {
+            task.progress(done, total);
+            if (done >= nextReport[0] && done < total) {
+                task.log("   … " + done + " of " + total + " processed\n");
+                nextReport[0] = (int) (done + Math.max(1, total / 10));
+            }
+        };
+    }
+
+    private void printBatchSummary(String verb, BatchTransfer.Result result) {
+        for (String failure : result.failures) outputArea.append("❌ Failed: " + failure + "\n");
+        if (result.failed > result.failures.size())
+            outputArea.append("   … and " + (result.failed - result.failures.size()) + " more\n");
+        outputArea.append("=".repeat(50) + "\n");
+        outputArea.append("SUMMARY: " + result.succeeded + " " + verb + ", " + result.failed + " failed"
+                + (result.cancelled ? ", " + (result.total - result.succeeded - result.failed) + " skipped (cancelled)" : "")
+                + ", " + FileBrowserModel.formatSize(result.bytes) + " in " + result.elapsedMillis + " ms"
+                + (result.elapsedMillis > 0 ? " (" + result.succeeded * 1000L / result.elapsedMillis + " files/s)" : "")
+                + "\n");
+        outputArea.append("=".repeat(50) + "\n\n");
+    }
+
+    public void exportArchive() {
+        withFiles("No files to export", names -> showExportArchive());
+    }
+
+    private void showExportArchive() {
+        JComboBox<String> formatBox = new JComboBox<>(new String[] { "zip", "tar.gz", "tar" });
+        JTextField matchField = new JTextField(20);
+        JPanel panel = new JPanel(new GridLayout(0, 1, 5, 5));
+        panel.add(new JLabel("Format:"));
+        panel.add(formatBox);
+        panel.add(new JLabel("Only names matching (e.g. *.log), blank for all:"));
+        panel.add(matchField);
+        if (JOptionPane.showConfirmDialog(this, panel, "Export Archive", JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) return;
+        byte format = ArchiveWriter.formatOf((String) formatBox.getSelectedItem());
+        String match = matchField.getText().trim();
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Archive");
+        chooser.setSelectedFile(new File(userName + ArchiveWriter.extension(format)));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        java.nio.file.Path target = chooser.getSelectedFile().toPath();
+        outputArea.append("\n" + "=".repeat(50) + "\n");
+        outputArea.append("          EXPORTING ARCHIVE\n");
+        outputArea.append("=".repeat(50) + "\n");
+        tasks.submit(new StorageTask<BatchTransfer.Result>("Exporting to " + target.getFileName()) {
+            protected boolean cancelsCooperatively() { return true; }
+
+            protected BatchTransfer.Result work() throws IOException {
+                try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    return user.exportArchive(match, format, out, batchProgress(this), this::isCancelRequested);
+                }
+            }
+
+            protected void succeeded(BatchTransfer.Result result) {
+                outputArea.append("📁 Saved to " + target + "\n");
+                printBatchSummary("exported", result);
+            }
+
+            protected void failed(Exception e) {
+                outputArea.append("❌ ERROR: Export failed: " + e.getMessage() + "\n\n");
+            }
+        });
+    }
+
+    public void importArchive() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import Archive (.zip, .tar, .tar.gz)");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        java.nio.file.Path source = chooser.getSelectedFile().toPath();
+        outputArea.append("\n" + "=".repeat(50) + "\n");
+        outputArea.append("          IMPORTING ARCHIVE\n");
+        outputArea.append("=".repeat(50) + "\n");
+        tasks.submit(new StorageTask<BatchTransfer.Result>("Importing " + source.getFileName()) {
+            protected boolean cancelsCooperatively() { return true; }
+
+            protected BatchTransfer.Result work() throws IOException {
+                try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+                    return user.importArchive(in, this::progress, this::isCancelRequested);
+                }
+            }
+
+            protected void succeeded(BatchTransfer.Result result) {
+                printBatchSummary("imported", result);
+                updateFileCount();
+            }
+
+            protected void failed(Exception e) {
+                outputArea.append("❌ ERROR: Import failed: " + e.getMessage() + "\n\n");
+                updateFileCount();
+            }
+        });
+    }
+
+    public void SeeDownloads() {
+        browse("📋 Downloaded Files", () -> user.dFiles, " file(s) downloaded", "📋 Opened downloads browser");
+    }
+
+    public void versionHistory() {
+        withFiles("No files available", names -> {
+            String[] fileArray = names.toArray(new String[0]);
+            String fileName = (String) JOptionPane.showInputDialog(this, "Select a file:", "Version History",
+                    JOptionPane.QUESTION_MESSAGE, null, fileArray, fileArray[0]);
+            if (fileName == null || fileName.trim().isEmpty()) return;
+            String name = UploadFile.normalizeName(fileName);
+            // The history is read from the version directory, so on the worker as well
+            tasks.submit(new StorageTask<List<VersionStore.Version>>("Reading the history of '" + name + "'") {
+                private int current;
+
+                protected List<VersionStore.Version> work() {
+                    current = user.currentVersion(name);
+                    return user.versions(name);
+                }
+
+                protected void succeeded(List<VersionStore.Version> versions) { showVersions(name, versions, current); }
+            });
+        });
+    }
+
+    private void showVersions(String name, List<VersionStore.Version> versions, int current) {
+        if (versions.isEmpty()) {
+            outputArea.append("ℹ  INFO: '" + name + "' has no earlier versions\n\n");
+            return;
+        }
+        DefaultListModel<String> rows = new DefaultListModel<>();
+        for (int i = versions.size() - 1; i >= 0; i--) {
+            VersionStore.Version v = versions.get(i);
+            rows.addElement(String.format("v%-4d %-6s %10s  %tF %<tT  (%s kept)", v.number, v.kindName(),
+                    FileBrowserModel.formatSize(v.size), v.modified, FileBrowserModel.formatSize(v.storedSize)));
+        }
+        JList<String> list = new JList<>(rows);
+        list.setFont(new Font("Consolas", Font.PLAIN, 13));
+        list.setSelectedIndex(0);
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.add(new JLabel("📄 " + name + " — current is v" + current), BorderLayout.NORTH);
+        panel.add(new JScrollPane(list), BorderLayout.CENTER);
+        int choice = JOptionPane.showOptionDialog(this, panel, "Version History", JOptionPane.DEFAULT_OPTION,
+                JOptionPane.PLAIN_MESSAGE, null, new String[] { "Restore", "Close" }, "Close");
+        if (choice != 0 || list.getSelectedIndex() < 0) return;
+        int number = versions.get(versions.size() - 1 - list.getSelectedIndex()).number;
+        tasks.submit(new StorageTask<Long>("Restoring '" + name + "' v" + number) {
+            private int restoredAs;
+
+            protected Long work() throws Exception {
+                long size = user.restoreVersion(name, number, this::progress);
+                restoredAs = user.currentVersion(name);
+                return size;
+            }
+
+            protected void succeeded(Long size) {
+                outputArea.append("✅ SUCCESS: Restored '" + name + "' from v" + number + " as v"
+                        + restoredAs + " (" + size + " bytes)\n\n");
+                updateFileCount();
+            }
+
+            protected void failed(Exception e) {
+                if (e instanceof Usage.QuotaExceededException)
+                    outputArea.append("❌ ERROR: Cannot restore '" + name + "': " + e.getMessage() + "\n\n");
+                else outputArea.append("❌ ERROR: Failed to restore '" + name + "'\n\n");
+            }
+        });
+    }
+
+    public void delete() {
+        withFiles("No files available to delete", names -> showDelete(names));
+    }
+
+    private void showDelete(List<String> names) {
+        String[] fileArray = names.toArray(new String[0]);
+        String fileName = (String) JOptionPane.showInputDialog(
+                this,
+                "Select a file to delete:",
+                "Delete File",
+                JOptionPane.WARNING_MESSAGE,
+                null,
+                fileArray,
+                fileArray[0]
+        );
+        if (fileName != null && !fileName.trim().isEmpty()) {
+            String name = UploadFile.normalizeName(fileName);
+            if (names.contains(name)) {
+                int confirm = JOptionPane.showConfirmDialog(
+                        this,
+                        "Are you sure you want to delete '" + name + "'?",
+                        "Confirm Delete",
+                        JOptionPane.YES_NO_OPTION,
+                        JOptionPane.WARNING_MESSAGE
+                );
+                if (confirm == JOptionPane.YES_OPTION) {
+                    tasks.submit(new StorageTask<Boolean>("Deleting '" + name + "'") {
+                        protected Boolean work() { return user.delete(name); }
+
+                        protected void succeeded(Boolean deleted) {
+                            if (deleted) {
+                                outputArea.append("✅ SUCCESS: File '" + name + "' deleted successfully\n\n");
+                                updateFileCount();
+                            } else {
+                                outputArea.append("❌ ERROR: Failed to delete file '" + name + "'\n\n");
+                            }
+                        }
+                    });
+                }
+            } else {
+                outputArea.append("❌ ERROR: File not found\n\n");
+            }
+        }
+    }
+
+    public void deleteAllFiles() {
+        withFiles("No files to delete", names -> confirmDeleteAll(names));
+    }
+
+    private void confirmDeleteAll(List<String> filesToDelete) {
+        int choice = JOptionPane.showConfirmDialog(
+                this,
+                "⚠ WARNING: This will permanently delete ALL " + filesToDelete.size() + " file(s)!\n\nAre you absolutely sure?",
+                "Delete All Files",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE
+        );
+        if (choice == JOptionPane.YES_OPTION) {
+            outputArea.append("\n" + "=".repeat(50) + "\n");
+            outputArea.append("          DELETING ALL FILES\n");
+            outputArea.append("=".repeat(50) + "\n");
+            tasks.submit(new StorageTask<BulkDeleter.Result>("Deleting " + filesToDelete.size() + " file(s)") {
+                private int nextReport = 0;
+
+                protected boolean cancelsCooperatively() { return true; }
+
+                protected BulkDeleter.Result work() {
+                    return user.deleteFiles(filesToDelete, (done, total) -> {
+                        progress(done, total);
+                        if (done >= nextReport && done < total) {
+                            log("   … " + done + " of " + total + " processed\n");
+                            nextReport = (int) (done + Math.max(1, total / 10));
+                        }
+                    }, this::isCancelRequested);
+                }
+
+                protected void succeeded(BulkDeleter.Result result) {
+                    for (String failure : result.failures) outputArea.append("❌ Failed: " + failure + "\n");
+                    if (result.failed > result.failures.size())
+                        outputArea.append("   … and " + (result.failed - result.failures.size()) + " more\n");
+                    outputArea.append("=".repeat(50) + "\n");
+                    outputArea.append("SUMMARY: " + result.deleted + " deleted, " + result.failed + " failed"
+                            + (result.cancelled ? ", " + (result.total - result.deleted - result.failed) + " skipped (cancelled)" : "")
+                            + " in " + result.elapsedMillis + " ms\n");
+                    outputArea.append("=".repeat(50) + "\n\n");
+                    updateFileCount();
+                }
+            });
+        } else {
+            outputArea.append("ℹ  INFO: Delete all operation cancelled\n\n");
+        }
+    }
+}
+
+class LoginWindow extends JFrame {
+    private UserAuthSystem authSystem;
+    private JTextField usernameField;
+    private JPasswordField passwordField;
+    private JButton loginBtn;
+    private final TaskRunner tasks = new TaskRunner(line -> { });
+    private final Color PRIMARY_COLOR = new Color(41, 128, 185);
+    private final Color BACKGROUND = new Color(236, 240, 241);
+    private final Color TEXT_DARK = new Color(44, 62, 80);
+
+    public LoginWindow() {
+        authSystem = new UserAuthSystem();
+
+        setTitle("Cloud Storage - Login");
+        setExtendedState(JFrame.MAXIMIZED_BOTH);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setLayout(new BorderLayout());
+        getContentPane().setBackground(BACKGROUND);
+
+        JPanel mainPanel = new JPanel(new GridBagLayout());
+        mainPanel.setBackground(PRIMARY_COLOR);
+        mainPanel.setBorder(new EmptyBorder(40, 40, 40, 40));
+
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridwidth = GridBagConstraints.REMAINDER;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.insets = new Insets(10, 0, 10, 0);
+        gbc.anchor = GridBagConstraints.CENTER;
+
+        JLabel titleLabel = new JLabel("☁ Cloud Storage Login", SwingConstants.CENTER);
+        titleLabel.setFont(new Font("Segoe UI", Font.BOLD, 34));
+        titleLabel.setForeground(Color.WHITE);
+        gbc.insets = new Insets(0, 0, 30, 0);
+        mainPanel.add(titleLabel, gbc);
+
+        gbc.insets = new Insets(5, 0, 5, 0);
+        JLabel userLabel = new JLabel("Username:");
+        userLabel.setFont(new Font("Segoe UI", Font.BOLD, 18));
+        userLabel.setForeground(TEXT_DARK);
+        mainPanel.add(userLabel, gbc);
+
+        usernameField = new JTextField();
+        usernameField.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        usernameField.setPreferredSize(new Dimension(420, 40));
+        mainPanel.add(usernameField, gbc);
+
+        gbc.insets = new Insets(15, 0, 5, 0);
+        JLabel passLabel = new JLabel("Password:");
+        passLabel.setFont(new Font("Segoe UI", Font.BOLD, 18));
+        passLabel.setForeground(TEXT_DARK);
+        mainPanel.add(passLabel, gbc);
+
+        gbc.insets = new Insets(5, 0, 5, 0);
+        JPanel passPanel = createLoginPasswordWithToggle();
+        mainPanel.add(passPanel, gbc);
+
+        gbc.insets = new Insets(25, 0, 10, 0);
+        loginBtn = createStyledButton("Login", new Color(46, 204, 113));
+        loginBtn.addActionListener(e -> handleLogin());
+        mainPanel.add(loginBtn, gbc);
+
+        gbc.insets = new Insets(5, 0, 5, 0);
+        JButton registerBtn = createStyledButton("Register New User", new Color(60, 63, 65));
+        registerBtn.addActionListener(e -> handleRegister());
+        mainPanel.add(registerBtn, gbc);
+
+        add(mainPanel, BorderLayout.CENTER);
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+    private JPanel createLoginPasswordWithToggle() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBackground(PRIMARY_COLOR);
+
+        passwordField = new JPasswordField();
+        passwordField.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        passwordField.setPreferredSize(new Dimension(420, 40));
+
+        JButton toggleBtn = new JButton("👁");
+        toggleBtn.setPreferredSize(new Dimension(50, 40));
+        toggleBtn.setFocusPainted(false);
+        toggleBtn.setBorderPainted(false);
+        toggleBtn.setBackground(Color.WHITE);
+        toggleBtn.setCursor(new Cursor(Cursor.HAND_CURSOR));
+
+        char defaultEcho = passwordField.getEchoChar();
+        toggleBtn.addActionListener(e -> {
+            if (passwordField.getEchoChar() == 0) {
+                passwordField.setEchoChar(defaultEcho);
+            } else {
+                passwordField.setEchoChar((char) 0);
+            }
+        });
+
+        panel.add(passwordField, BorderLayout.CENTER);
+        panel.add(toggleBtn, BorderLayout.EAST);
+        return panel;
+    }
+
+    private JButton createStyledButton(String text, Color color) {
+        JButton btn = new JButton(text);
+        btn.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        btn.setBackground(color);
+        btn.setForeground(Color.WHITE);
+        btn.setFocusPainted(false);
+        btn.setBorderPainted(false);
+        btn.setPreferredSize(new Dimension(420, 45));
+        btn.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        btn.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createLineBorder(color.darker(), 2),
+                new EmptyBorder(8, 18, 8, 18)
+        ));
+        btn.addMouseListener(new java.awt.event.MouseAdapter() {
+            public void mouseEntered(java.awt.event.MouseEvent evt) {
+                btn.setBackground(color.brighter());
+            }
+            public void mouseExited(java.awt.event.MouseEvent evt) {
+                btn.setBackground(color);
+            }
+        });
+        return btn;
+    }
+
+    private void handleLogin() {
+        String username = usernameField.getText().trim();
+        String password = new String(passwordField.getPassword());
+
+        if (username.isEmpty() || password.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Please enter both username and password!",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        loginBtn.setEnabled(false);
+        loginBtn.setText("Signing in...");
+        tasks.submit(new StorageTask<Boolean>("Login") {
+            protected Boolean work() { return authSystem.authenticateUser(username, password); }
+
+            protected void succeeded(Boolean authenticated) {
+                if (authenticated) {
+                    dispose();
+                    SwingUtilities.invokeLater(() -> new BasicCloudStorageGUI(username));
+                } else {
+                    resetLoginButton();
+                    JOptionPane.showMessageDialog(LoginWindow.this, "Invalid username or password!",
+                            "Login Failed", JOptionPane.ERROR_MESSAGE);
+                    passwordField.setText("");
+                }
+            }
+
+            protected void failed(Exception e) {
+                resetLoginButton();
+                JOptionPane.showMessageDialog(LoginWindow.this, "Login failed: " + e.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
+
+    private void resetLoginButton() {
+        loginBtn.setEnabled(true);
+        loginBtn.setText("Login");
+    }
+
+    private void handleRegister() {
+        dispose();
+        SwingUtilities.invokeLater(() -> new RegistrationWindow(authSystem));
+    }
+}
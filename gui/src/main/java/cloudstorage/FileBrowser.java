@@ -0,0 +1,208 @@
+package cloudstorage;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Rows are only names; size and date are looked up when JTable paints a row, so opening costs the same for 10 or 100k files
+class FileBrowserModel extends AbstractTableModel {
+    enum Order { STORED, NAME, SIZE, MODIFIED }
+
+    private static final String[] COLUMNS = { "#", "Name", "Size", "Modified" };
+
+    private final Supplier<List<String>> source;
+    private final Function<String, FileCatalog.Entry> stat;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private List<String> all;
+    private List<String> view;
+    private String filter = "";
+    private Order order = Order.STORED;
+    private boolean descending = false;
+
+    FileBrowserModel(Supplier<List<String>> source, Function<String, FileCatalog.Entry> stat) {
+        this.source = source;
+        this.stat = stat;
+        reload();
+    }
+
+    public void reload() {
+        all = source.get();
+        rebuild(all);
+    }
+
+    public void setOrder(Order order, boolean descending) {
+        this.order = order;
+        this.descending = descending;
+        rebuild(all);
+    }
+
+    // Narrowing the filter only rescans rows that already matched; anything else rescans the full list
+    public void setFilter(String filter) {
+        String next = filter.toLowerCase().strip();
+        boolean narrowing = next.contains(this.filter);
+        this.filter = next;
+        rebuild(narrowing ? view : all);
+    }
+
+    public int getTotalCount() { return all.size(); }
+
+    public String getNameAt(int row) { return view.get(row); }
+
+    public int getRowCount() { return view.size(); }
+
+    public int getColumnCount() { return COLUMNS.length; }
+
+    public String getColumnName(int column) { return COLUMNS[column]; }
+
+    public Object getValueAt(int row, int column) {
+        String name = view.get(row);
+        if (column == 0) return row + 1;
+        if (column == 1) return "📄 " + name;
+        FileCatalog.Entry entry = stat.apply(name);
+        if (entry == null) return "—";
+        return column == 2 ? formatSize(entry.size) : dateFormat.format(new Date(entry.modified));
+    }
+
+    private void rebuild(List<String> base) {
+        List<String> rows = base;
+        if (!filter.isEmpty()) {
+            rows = new ArrayList<>();
+            for (String name : base) if (name.contains(filter)) rows.add(name);
+        }
+        if (order != Order.STORED || descending) {
+            if (rows == all) rows = new ArrayList<>(all);
+            rows.sort(comparator());
+        }
+        view = rows;
+        fireTableDataChanged();
+    }
+
+    private Comparator<String> comparator() {
+        Comparator<String> byOrder;
+        switch (order) {
+            case NAME: byOrder = Comparator.naturalOrder(); break;
+            case SIZE: byOrder = Comparator.comparingLong(name -> sizeOf(name)); break;
+            case MODIFIED: byOrder = Comparator.comparingLong(name -> modifiedOf(name)); break;
+            default: byOrder = (a, b) -> 0;
+        }
+        return descending ? byOrder.reversed() : byOrder;
+    }
+
+    private long sizeOf(String name) {
+        FileCatalog.Entry entry = stat.apply(name);
+        return entry == null ? -1 : entry.size;
+    }
+
+    private long modifiedOf(String name) {
+        FileCatalog.Entry entry = stat.apply(name);
+        return entry == null ? -1 : entry.modified;
+    }
+
+    static String formatSize(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+}
+
+class FileBrowser extends JDialog {
+    private static final int FILTER_DELAY_MS = 150;
+
+    private final FileBrowserModel model;
+    private final JLabel countLabel = new JLabel();
+
+    public FileBrowser(Frame owner, String title, Supplier<List<String>> source,
+                       Function<String, FileCatalog.Entry> stat, Consumer<String> onOpen) {
+        super(owner, title, false);
+        model = new FileBrowserModel(source, stat);
+
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(new EmptyBorder(15, 15, 15, 15));
+
+        JPanel toolbar = new JPanel(new BorderLayout(10, 0));
+        JTextField filterField = new JTextField();
+        filterField.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        filterField.setToolTipText("Filter by name");
+        JComboBox<String> sortBox = new JComboBox<>(new String[] {
+                "Stored order", "Name (A-Z)", "Name (Z-A)", "Size (largest)", "Size (smallest)", "Newest", "Oldest" });
+        JButton refreshBtn = new JButton("Refresh");
+        refreshBtn.setFocusPainted(false);
+        JPanel right = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        right.add(sortBox);
+        right.add(refreshBtn);
+        toolbar.add(new JLabel("🔍"), BorderLayout.WEST);
+        toolbar.add(filterField, BorderLayout.CENTER);
+        toolbar.add(right, BorderLayout.EAST);
+
+        JTable table = new JTable(model);
+        table.setFont(new Font("Consolas", Font.PLAIN, 13));
+        table.setRowHeight(22);
+        table.setFillsViewportHeight(true);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getColumnModel().getColumn(0).setMaxWidth(70);
+        table.getColumnModel().getColumn(2).setPreferredWidth(90);
+        table.getColumnModel().getColumn(3).setPreferredWidth(150);
+        table.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                int row = table.getSelectedRow();
+                if (e.getClickCount() == 2 && row >= 0 && onOpen != null) onOpen.accept(model.getNameAt(row));
+            }
+        });
+
+        Timer filterTimer = new Timer(FILTER_DELAY_MS, e -> {
+            model.setFilter(filterField.getText());
+            updateCount();
+        });
+        filterTimer.setRepeats(false);
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { filterTimer.restart(); }
+            public void removeUpdate(DocumentEvent e) { filterTimer.restart(); }
+            public void changedUpdate(DocumentEvent e) { filterTimer.restart(); }
+        });
+        sortBox.addActionListener(e -> {
+            switch (sortBox.getSelectedIndex()) {
+                case 1: model.setOrder(FileBrowserModel.Order.NAME, false); break;
+                case 2: model.setOrder(FileBrowserModel.Order.NAME, true); break;
+                case 3: model.setOrder(FileBrowserModel.Order.SIZE, true); break;
+                case 4: model.setOrder(FileBrowserModel.Order.SIZE, false); break;
+                case 5: model.setOrder(FileBrowserModel.Order.MODIFIED, true); break;
+                case 6: model.setOrder(FileBrowserModel.Order.MODIFIED, false); break;
+                default: model.setOrder(FileBrowserModel.Order.STORED, false);
+            }
+        });
+        refreshBtn.addActionListener(e -> {
+            model.reload();
+            model.setFilter(filterField.getText());
+            updateCount();
+        });
+
+        countLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        panel.add(toolbar, BorderLayout.NORTH);
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+        panel.add(countLabel, BorderLayout.SOUTH);
+        setContentPane(panel);
+        updateCount();
+        setSize(700, 500);
+        setLocationRelativeTo(owner);
+    }
+
+    public int getTotalCount() { return model.getTotalCount(); }
+
+    private void updateCount() {
+        countLabel.setText("Showing " + model.getRowCount() + " of " + model.getTotalCount() + " file(s)");
+    }
+}
@@ -0,0 +1,129 @@
+package cloudstorage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Callers only enqueue; one daemon thread does the disk writes, and rolls activity.log -> activity.log.1 -> ... when it fills up
+class RollingLogWriter {
+    private static final int QUEUE_CAPACITY = 65536;
+    private static final long DEFAULT_MAX_BYTES = Long.getLong("cloudstorage.log.maxBytes", 10L << 20);
+    private static final int DEFAULT_KEEP = Integer.getInteger("cloudstorage.log.keep", 5);
+    private static RollingLogWriter shared;
+
+    private final Path file;
+    private final long maxBytes;
+    private final int keep;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private final SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private final Thread thread;
+    private volatile boolean closed = false;
+    private Writer out;
+    private long written;
+
+    public RollingLogWriter(Path file, long maxBytes, int keep) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.keep = Math.max(1, keep);
+        thread = new Thread(this::run, "activity-log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    public static synchronized RollingLogWriter shared() {
+        if (shared == null) {
+            RollingLogWriter writer = new RollingLogWriter(Paths.get("logs", "activity.log"), DEFAULT_MAX_BYTES, DEFAULT_KEEP);
+            Metrics.gauge("activity_log_queue_depth", "Activity log lines waiting to be written", writer.queue::size);
+            shared = writer;
+        }
+        return shared;
+    }
+
+    // Never blocks the caller: if the disk falls this far behind, lines are counted and dropped rather than queued forever
+    public void append(String line) {
+        String stamped;
+        synchronized (timestamp) { stamped = timestamp.format(new Date()) + "  " + line; }
+        if (!queue.offer(stamped)) dropped.incrementAndGet();
+    }
+
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<String> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                String first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+            } catch (InterruptedException e) {
+                if (!closed) continue;
+            }
+            queue.drainTo(batch);
+            write(batch);
+            batch.clear();
+        }
+        write(batch);
+        try {
+            if (out != null) out.close();
+        } catch (IOException e) { }
+    }
+
+    private void write(List<String> batch) {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) batch.add(0, "[" + lost + " log line(s) dropped]");
+        if (batch.isEmpty()) return;
+        try {
+            for (String line : batch) {
+                if (out == null || written >= maxBytes) roll();
+                out.write(line);
+                out.write('\n');
+                written += line.length() + 1;
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Logging must never take the app down; reopen on the next batch
+            try {
+                if (out != null) out.close();
+            } catch (IOException ignored) { }
+            out = null;
+        }
+    }
+
+    private void roll() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            Files.deleteIfExists(rolled(keep));
+            for (int i = keep - 1; i >= 1; i--)
+                if (Files.exists(rolled(i))) Files.move(rolled(i), rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND), StandardCharsets.UTF_8));
+        written = Files.size(file);
+    }
+
+    private Path rolled(int index) { return file.resolveSibling(file.getFileName() + "." + index); }
+}
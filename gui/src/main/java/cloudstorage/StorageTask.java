@@ -0,0 +1,75 @@
+package cloudstorage;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+abstract class StorageTask<T> extends SwingWorker<T, String> {
+    private final String title;
+    private Consumer<String> logSink = line -> { };
+    private Runnable onFinished = () -> { };
+    private volatile boolean cancelRequested = false;
+
+    protected StorageTask(String title) { this.title = title; }
+
+    public String getTitle() { return title; }
+
+    void attach(Consumer<String> logSink, Runnable onFinished) {
+        this.logSink = logSink;
+        this.onFinished = onFinished;
+    }
+
+    // Runs on the worker thread
+    protected abstract T work() throws Exception;
+
+    // Tasks that must finish bookkeeping after a cancel override this and poll isCancelRequested() instead
+    protected boolean cancelsCooperatively() { return false; }
+
+    protected boolean isCancelRequested() { return cancelRequested || isCancelled(); }
+
+    void requestCancel() {
+        cancelRequested = true;
+        if (!cancelsCooperatively()) cancel(true);
+    }
+
+    // The following callbacks run on the EDT
+    protected void succeeded(T result) { }
+
+    protected void failed(Exception e) { logSink.accept("❌ ERROR: " + title + " failed\n\n"); }
+
+    protected void cancelled() { logSink.accept("ℹ  INFO: " + title + " cancelled\n\n"); }
+
+    // Safe to call from the worker thread; lines are batched onto the EDT
+    protected void log(String line) { publish(line); }
+
+    protected void progress(long done, long total) {
+        if (total > 0) setProgress((int) Math.min(100, done * 100 / total));
+    }
+
+    @Override
+    protected final T doInBackground() throws Exception { return work(); }
+
+    @Override
+    protected final void process(List<String> lines) {
+        StringBuilder batch = new StringBuilder();
+        for (String line : lines) batch.append(line);
+        logSink.accept(batch.toString());
+    }
+
+    @Override
+    protected final void done() {
+        try {
+            if (isCancelled()) cancelled();
+            else succeeded(get());
+        } catch (CancellationException | InterruptedException e) {
+            cancelled();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            failed(cause instanceof Exception ? (Exception) cause : new Exception(cause));
+        } finally {
+            onFinished.run();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package cloudstorage;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+class TaskRunner {
+    // One worker for the whole app: storage state is per-process, so mutations are applied in submission order
+    private static final ThreadPoolExecutor WORKER = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "storage-worker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        Metrics.gauge("gui_task_queue_depth", "GUI storage tasks waiting for the worker", () -> WORKER.getQueue().size());
+    }
+
+    private final Consumer<String> log;
+    private StorageTask<?> current;
+    private int pending = 0;
+    private JPanel statusPanel;
+    private JLabel statusLabel;
+    private JProgressBar progressBar;
+
+    public TaskRunner(Consumer<String> log) { this.log = log; }
+
+    public JPanel createStatusPanel(Color background) {
+        statusPanel = new JPanel(new BorderLayout(10, 0));
+        statusPanel.setBackground(background);
+        statusPanel.setBorder(new EmptyBorder(10, 0, 0, 0));
+        statusLabel = new JLabel(" ");
+        statusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        JButton cancelBtn = new JButton("Cancel");
+        cancelBtn.setFocusPainted(false);
+        cancelBtn.addActionListener(e -> cancelCurrent());
+        statusPanel.add(statusLabel, BorderLayout.NORTH);
+        statusPanel.add(progressBar, BorderLayout.CENTER);
+        statusPanel.add(cancelBtn, BorderLayout.EAST);
+        statusPanel.setVisible(false);
+        return statusPanel;
+    }
+
+    public boolean isBusy() { return pending > 0; }
+
+    public <T> void submit(StorageTask<T> task) {
+        pending++;
+        task.attach(log, () -> finished(task));
+        task.addPropertyChangeListener(evt -> {
+            if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == SwingWorker.StateValue.STARTED) started(task);
+            else if ("progress".equals(evt.getPropertyName()) && progressBar != null && task == current) {
+                progressBar.setIndeterminate(false);
+                progressBar.setValue((Integer) evt.getNewValue());
+            }
+        });
+        WORKER.execute(task);
+    }
+
+    public void cancelCurrent() {
+        if (current != null) current.requestCancel();
+    }
+
+    private void started(StorageTask<?> task) {
+        current = task;
+        if (statusPanel == null) return;
+        statusLabel.setText("⏳ " + task.getTitle() + (pending > 1 ? "  (" + (pending - 1) + " queued)" : ""));
+        progressBar.setValue(0);
+        progressBar.setIndeterminate(true);
+        statusPanel.setVisible(true);
+    }
+
+    private void finished(StorageTask<?> task) {
+        pending--;
+        if (task == current) current = null;
+        if (statusPanel != null && pending == 0) statusPanel.setVisible(false);
+    }
+}
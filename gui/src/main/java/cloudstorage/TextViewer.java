@@ -0,0 +1,311 @@
+package cloudstorage;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+// Paints only the lines in view, fetched from the pager on every repaint, so a file of any size opens at once
+class TextLinesView extends JComponent {
+    private static final int GUTTER_PAD = 12;
+
+    private final TextPager pager;
+    private long top = 0;
+    private int left = 0;
+    private long marked = -1;
+    private String failure;
+
+    TextLinesView(TextPager pager) {
+        this.pager = pager;
+        setFont(new Font("Consolas", Font.PLAIN, 13));
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setFocusable(true);
+    }
+
+    public long getTop() { return top; }
+
+    public void setTop(long top) {
+        this.top = Math.max(0, Math.min(top, pager.lineCount() - 1));
+        repaint();
+    }
+
+    public void setLeft(int left) {
+        this.left = left;
+        repaint();
+    }
+
+    // The line drawn highlighted, such as the last search hit; -1 for none
+    public void setMarked(long line) {
+        marked = line;
+        repaint();
+    }
+
+    public int visibleRows() {
+        return Math.max(1, getHeight() / getFontMetrics(getFont()).getHeight());
+    }
+
+    public int columnWidth() { return getFontMetrics(getFont()).charWidth('m'); }
+
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        g.setFont(getFont());
+        FontMetrics metrics = g.getFontMetrics();
+        int lineHeight = metrics.getHeight();
+        if (failure != null) {
+            g.setColor(Color.RED);
+            g.drawString(failure, GUTTER_PAD, lineHeight);
+            return;
+        }
+        List<String> lines;
+        try {
+            lines = pager.lines(top, visibleRows() + 1);
+        } catch (UncheckedIOException e) {
+            failure = e.getCause().getMessage();
+            repaint();
+            return;
+        }
+        int gutter = metrics.stringWidth(Long.toString(Math.max(1, pager.lineCount()))) + GUTTER_PAD * 2;
+        for (int i = 0; i < lines.size(); i++) {
+            int y = i * lineHeight;
+            if (top + i == marked) {
+                g.setColor(new Color(255, 243, 176));
+                g.fillRect(0, y, getWidth(), lineHeight);
+            }
+            g.setColor(Color.GRAY);
+            g.drawString(Long.toString(top + i + 1), GUTTER_PAD, y + metrics.getAscent());
+            g.setColor(Color.BLACK);
+            Graphics text = g.create(gutter, 0, Math.max(0, getWidth() - gutter), getHeight());
+            text.drawString(lines.get(i), -left, y + metrics.getAscent());
+            text.dispose();
+        }
+        g.setColor(new Color(230, 230, 230));
+        g.drawLine(gutter - GUTTER_PAD / 2, 0, gutter - GUTTER_PAD / 2, getHeight());
+    }
+}
+
+class TextViewer extends JDialog {
+    private static final int REFRESH_MS = 200;
+    private static final int WHEEL_LINES = 3;
+    // JScrollBar counts in ints; past this many lines one scroll unit stands for several lines
+    private static final long MAX_UNITS = 1_000_000_000L;
+
+    private final TextPager pager;
+    private final TextLinesView view;
+    private final JScrollBar vertical = new JScrollBar(JScrollBar.VERTICAL);
+    private final JScrollBar horizontal = new JScrollBar(JScrollBar.HORIZONTAL);
+    private final JLabel statusLabel = new JLabel();
+    private final JTextField searchField = new JTextField(18);
+    private final JCheckBox caseBox = new JCheckBox("Match case");
+    private final Timer refreshTimer;
+    private boolean adjusting = false;
+    private long lastMatch = -1;
+    // A search hit past what has been indexed yet, shown once the index reaches it
+    private long pendingMatch = -1;
+    private SwingWorker<Long, Void> search;
+
+    // The viewer owns the pager and closes it when the window goes away
+    public TextViewer(Frame owner, String fileName, TextPager pager) {
+        super(owner, "📄 " + fileName, false);
+        this.pager = pager;
+        view = new TextLinesView(pager);
+
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(new EmptyBorder(10, 10, 10, 10));
+
+        JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        JComboBox<String> gotoKind = new JComboBox<>(new String[] { "Line", "Byte offset" });
+        JTextField gotoField = new JTextField(10);
+        JButton gotoBtn = new JButton("Go");
+        JButton findBtn = new JButton("Find next");
+        gotoBtn.setFocusPainted(false);
+        findBtn.setFocusPainted(false);
+        toolbar.add(new JLabel("Go to"));
+        toolbar.add(gotoKind);
+        toolbar.add(gotoField);
+        toolbar.add(gotoBtn);
+        toolbar.add(Box.createHorizontalStrut(12));
+        toolbar.add(new JLabel("🔍"));
+        toolbar.add(searchField);
+        toolbar.add(caseBox);
+        toolbar.add(findBtn);
+
+        JPanel text = new JPanel(new BorderLayout());
+        text.setBorder(BorderFactory.createLineBorder(new Color(200, 200, 200)));
+        text.add(view, BorderLayout.CENTER);
+        text.add(vertical, BorderLayout.EAST);
+        text.add(horizontal, BorderLayout.SOUTH);
+        horizontal.setMaximum(TextPager.MAX_LINE * view.columnWidth());
+        horizontal.setUnitIncrement(view.columnWidth() * 4);
+
+        statusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        panel.add(toolbar, BorderLayout.NORTH);
+        panel.add(text, BorderLayout.CENTER);
+        panel.add(statusLabel, BorderLayout.SOUTH);
+        setContentPane(panel);
+
+        vertical.addAdjustmentListener(e -> {
+            if (!adjusting) view.setTop((long) vertical.getValue() * unit());
+        });
+        horizontal.addAdjustmentListener(e -> view.setLeft(horizontal.getValue()));
+        view.addMouseWheelListener(e -> scrollTo(view.getTop() + (long) e.getWheelRotation() * WHEEL_LINES));
+        view.addComponentListener(new ComponentAdapter() {
+            public void componentResized(ComponentEvent e) { updateScrollBar(); }
+        });
+        bindKey("UP", () -> scrollTo(view.getTop() - 1));
+        bindKey("DOWN", () -> scrollTo(view.getTop() + 1));
+        bindKey("PAGE_UP", () -> scrollTo(view.getTop() - view.visibleRows()));
+        bindKey("PAGE_DOWN", () -> scrollTo(view.getTop() + view.visibleRows()));
+        bindKey("control HOME", () -> scrollTo(0));
+        bindKey("control END", () -> scrollTo(pager.lineCount() - view.visibleRows()));
+
+        gotoBtn.addActionListener(e -> jump(gotoKind.getSelectedIndex() == 1, gotoField.getText()));
+        gotoField.addActionListener(e -> jump(gotoKind.getSelectedIndex() == 1, gotoField.getText()));
+        findBtn.addActionListener(e -> findNext());
+        searchField.addActionListener(e -> findNext());
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { lastMatch = -1; }
+            public void removeUpdate(DocumentEvent e) { lastMatch = -1; }
+            public void changedUpdate(DocumentEvent e) { lastMatch = -1; }
+        });
+
+        // Follows the background index until it is complete
+        refreshTimer = new Timer(REFRESH_MS, e -> refresh());
+        refreshTimer.start();
+        addWindowListener(new WindowAdapter() {
+            public void windowClosed(WindowEvent e) {
+                refreshTimer.stop();
+                if (search != null) search.cancel(true);
+                try { pager.close(); } catch (IOException ignored) { }
+            }
+        });
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setSize(900, 600);
+        setLocationRelativeTo(owner);
+        refresh();
+    }
+
+    private void refresh() {
+        updateScrollBar();
+        if (pendingMatch >= 0) {
+            long line = pager.lineAt(pendingMatch);
+            if (line >= 0) {
+                pendingMatch = -1;
+                reveal(line);
+            }
+        }
+        String size = FileBrowserModel.formatSize(pager.size());
+        if (pager.isIndexed()) {
+            refreshTimer.stop();
+            if (search == null) statusLabel.setText(pager.lineCount() + " line(s), " + size);
+        } else if (search == null) {
+            statusLabel.setText("Indexing... " + pager.lineCount() + " line(s) so far, " + size);
+        }
+        view.repaint();
+    }
+
+    private void updateScrollBar() {
+        adjusting = true;
+        long unit = unit();
+        int rows = view.visibleRows();
+        vertical.setValues((int) (view.getTop() / unit), (int) Math.max(1, rows / unit), 0,
+                (int) Math.max(1, (pager.lineCount() + rows - 1) / unit));
+        vertical.setBlockIncrement((int) Math.max(1, rows / unit));
+        adjusting = false;
+    }
+
+    private long unit() { return 1 + pager.lineCount() / MAX_UNITS; }
+
+    private void scrollTo(long line) {
+        view.setTop(line);
+        updateScrollBar();
+    }
+
+    // Keeps the line a few rows below the top so it reads in context
+    private void reveal(long line) {
+        view.setMarked(line);
+        scrollTo(line - Math.min(3, view.visibleRows() / 3));
+    }
+
+    private void jump(boolean byOffset, String input) {
+        long target;
+        try {
+            target = Long.parseLong(input.trim());
+        } catch (NumberFormatException e) {
+            statusLabel.setText("⚠ Enter a number");
+            return;
+        }
+        if (byOffset) {
+            long line = pager.lineAt(target);
+            if (line < 0) {
+                statusLabel.setText(target >= 0 && target < pager.size()
+                        ? "⚠ Offset " + target + " is not indexed yet" : "⚠ Offset is outside the file");
+                return;
+            }
+            reveal(line);
+        } else {
+            if (target < 1 || target > pager.lineCount()) {
+                statusLabel.setText(pager.isIndexed() ? "⚠ No such line" : "⚠ Line " + target + " is not indexed yet");
+                return;
+            }
+            reveal(target - 1);
+        }
+        view.requestFocusInWindow();
+    }
+
+    // Streams from just after the last hit, or from the top of the view, wrapping around once
+    private void findNext() {
+        String text = searchField.getText();
+        if (text.isEmpty() || search != null) return;
+        boolean ignoreCase = !caseBox.isSelected();
+        long from = lastMatch >= 0 ? lastMatch + 1 : pager.lineStart(view.getTop());
+        statusLabel.setText("Searching for '" + text + "'...");
+        search = new SwingWorker<Long, Void>() {
+            protected Long doInBackground() throws IOException {
+                long found = pager.find(text, from, ignoreCase, this::isCancelled);
+                if (found < 0 && from > 0) found = pager.find(text, 0, ignoreCase, this::isCancelled);
+                return found;
+            }
+
+            protected void done() {
+                search = null;
+                if (isCancelled()) return;
+                try {
+                    long found = get();
+                    lastMatch = found;
+                    if (found < 0) {
+                        statusLabel.setText("'" + text + "' not found");
+                        return;
+                    }
+                    statusLabel.setText("'" + text + "' found at byte " + found);
+                    long line = pager.lineAt(found);
+                    if (line >= 0) reveal(line);
+                    else pendingMatch = found;
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    if (!(cause instanceof InterruptedIOException))
+                        statusLabel.setText("❌ Search failed: " + cause.getMessage());
+                }
+            }
+        };
+        search.execute();
+    }
+
+    private void bindKey(String key, Runnable action) {
+        view.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(key), key);
+        view.getActionMap().put(key, new AbstractAction() {
+            public void actionPerformed(ActionEvent e) { action.run(); }
+        });
+    }
+}
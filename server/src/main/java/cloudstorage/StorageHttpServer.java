@@ -0,0 +1,410 @@
+package cloudstorage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Usage: java -jar server/target/cloud-storage-server.jar [port]
+//   POST   /login          (Basic auth)  -> bearer token, valid for -Dcloudstorage.http.sessionSeconds (default 1800)
+//   GET    /files                        -> "name<TAB>size<TAB>modified" per line
+//   GET    /files/<name>                 -> file bytes
+//   GET    /files/<name>?version=<n>     -> bytes of an earlier version
+//   HEAD   /files/<name>                 -> X-File-Size and Last-Modified headers
+//   PUT    /files/<name>                 -> 201 for a new file, 200 for a new version of an existing one
+//   DELETE /files/<name>                 -> 204, or 404
+//   GET    /versions/<name>              -> "number<TAB>kind<TAB>size<TAB>modified<TAB>stored" per earlier version
+//   GET    /search?q=<query>             -> matching file names, one per line
+//   GET    /archive?format=zip|tar|tgz&match=<glob> -> the whole store, or the matching files, as one archive
+//   POST   /archive                      -> stores every file in a ZIP, TAR or .tar.gz body; a summary comes back
+//   GET    /metrics        (no auth)     -> Prometheus text: operation latency, bytes, errors, queue depths
+class StorageHttpServer {
+    private static final int DEFAULT_PORT = 8080;
+    // Expired sessions are swept out at most this often, whether or not their tokens are ever presented again
+    private static final long SWEEP_INTERVAL_MS = 1000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final class Session {
+        final String userName;
+        final long expires;
+
+        Session(String userName, long expires) {
+            this.userName = userName;
+            this.expires = expires;
+        }
+    }
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor handlers;
+    private final UserAuthSystem authSystem;
+    private final ConcurrentHashMap<String, StorageService> stores = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long sessionTtlMs = Long.getLong("cloudstorage.http.sessionSeconds", 30 * 60) * 1000;
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    public StorageHttpServer(InetSocketAddress address, UserAuthSystem authSystem, int threads) throws IOException {
+        this.authSystem = authSystem;
+        this.server = HttpServer.create(address, 0);
+        // Handlers mostly block on disk; a pool of platform threads stands in for virtual threads on Java 17
+        this.handlers = (ThreadPoolExecutor) Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "storage-http");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(handlers);
+        Metrics.gauge("http_queue_depth", "HTTP requests waiting for a handler thread", () -> handlers.getQueue().size());
+        Metrics.gauge("http_active_handlers", "HTTP handler threads busy with a request", handlers::getActiveCount);
+        server.createContext("/login", this::handleLogin);
+        server.createContext("/files", this::handleFiles);
+        server.createContext("/search", this::handleSearch);
+        server.createContext("/versions", this::handleVersions);
+        server.createContext("/archive", this::handleArchive);
+        server.createContext("/usage", this::handleUsage);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("cloudstorage.http.port", DEFAULT_PORT);
+        int threads = Integer.getInteger("cloudstorage.http.threads", 64);
+        StorageHttpServer server = new StorageHttpServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), new UserAuthSystem(), threads);
+        server.start();
+        System.out.println("Storage service listening on http://localhost:" + port);
+    }
+
+    public void start() { server.start(); }
+
+    public void stop() {
+        server.stop(1);
+        handlers.shutdown();
+    }
+
+    public StorageService storeFor(String userName) {
+        return stores.computeIfAbsent(userName, name -> {
+            DownloadFile store = new DownloadFile();
+            store.setUserName(name);
+            return store;
+        });
+    }
+
+    private void handleLogin(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "Use POST");
+                return;
+            }
+            String userName = basicAuth(exchange);
+            if (userName == null) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"cloud-storage\"");
+                send(exchange, 401, "Invalid username or password");
+                return;
+            }
+            byte[] raw = new byte[16];
+            RANDOM.nextBytes(raw);
+            String token = Hex.encode(raw);
+            long now = System.currentTimeMillis();
+            sweepSessions(now);
+            sessions.put(token, new Session(userName, now + sessionTtlMs));
+            send(exchange, 200, token + "\n");
+        }
+    }
+
+    private void handleFiles(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String userName = authenticate(exchange);
+            if (userName == null) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer, Basic realm=\"cloud-storage\"");
+                send(exchange, 401, "Authentication required");
+                return;
+            }
+            StorageService store = storeFor(userName);
+            String path = exchange.getRequestURI().getPath();
+            String name = path.length() > "/files/".length() ? path.substring("/files/".length()) : "";
+            String method = exchange.getRequestMethod();
+            try {
+                if (name.isEmpty()) {
+                    if ("GET".equals(method)) list(exchange, store);
+                    else send(exchange, 405, "Use GET on /files");
+                } else if ("GET".equals(method)) {
+                    String version = queryParam(exchange, "version");
+                    if (version == null) download(exchange, store, name);
+                    else downloadVersion(exchange, store, name, Integer.parseInt(version));
+                } else if ("HEAD".equals(method)) {
+                    head(exchange, store, name);
+                } else if ("PUT".equals(method)) {
+                    String length = exchange.getRequestHeaders().getFirst("Content-Length");
+                    boolean replacing = store.stat(name) != null;
+                    long size = store.upload(name, Channels.newChannel(exchange.getRequestBody()),
+                            length == null ? -1 : Long.parseLong(length), ProgressListener.NONE);
+                    send(exchange, replacing ? 200 : 201, size + "\n");
+                } else if ("DELETE".equals(method)) {
+                    if (store.delete(name)) exchange.sendResponseHeaders(204, -1);
+                    else send(exchange, 404, "No such file");
+                } else {
+                    send(exchange, 405, "Unsupported method");
+                }
+            } catch (FileAlreadyExistsException e) {
+                send(exchange, 409, "File already exists");
+            } catch (Usage.QuotaExceededException e) {
+                send(exchange, 507, e.getMessage());
+            } catch (NoSuchFileException e) {
+                send(exchange, 404, "No such file");
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, e.getMessage());
+            }
+        }
+    }
+
+    // Unauthenticated like any Prometheus target; it only carries counts and timings, and the server binds to loopback
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            StringBuilder body = new StringBuilder(8192);
+            Metrics.writePrometheus(body);
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) { out.write(bytes); }
+        }
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String userName = authenticate(exchange);
+            if (userName == null) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer, Basic realm=\"cloud-storage\"");
+                send(exchange, 401, "Authentication required");
+                return;
+            }
+            try {
+                String query = queryParam(exchange, "q");
+                if (query == null || query.isBlank()) {
+                    send(exchange, 400, "Missing q parameter");
+                    return;
+                }
+                StringBuilder body = new StringBuilder();
+                for (String name : storeFor(userName).search(query)) body.append(name).append('\n');
+                send(exchange, 200, body.toString());
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, e.getMessage());
+            }
+        }
+    }
+
+    // One line per earlier version, oldest first: number, kind, size, modified, bytes kept
+    private void handleVersions(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String userName = authenticate(exchange);
+            if (userName == null) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer, Basic realm=\"cloud-storage\"");
+                send(exchange, 401, "Authentication required");
+                return;
+            }
+            StorageService store = storeFor(userName);
+            String path = exchange.getRequestURI().getPath();
+            String name = path.length() > "/versions/".length() ? path.substring("/versions/".length()) : "";
+            try {
+                if (name.isEmpty() || store.stat(name) == null) {
+                    send(exchange, 404, "No such file");
+                    return;
+                }
+                StringBuilder body = new StringBuilder();
+                for (VersionStore.Version v : store.versions(name))
+                    body.append(v.number).append('\t').append(v.kindName()).append('\t').append(v.size).append('\t')
+                            .append(v.modified).append('\t').append(v.storedSize).append('\n');
+                send(exchange, 200, body.toString());
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, e.getMessage());
+            }
+        }
+    }
+
+    // Both directions stream, so a store of any size goes through without temp space; the export is chunked
+    private void handleArchive(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String userName = authenticate(exchange);
+            if (userName == null) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer, Basic realm=\"cloud-storage\"");
+                send(exchange, 401, "Authentication required");
+                return;
+            }
+            StorageService store = storeFor(userName);
+            String method = exchange.getRequestMethod();
+            if ("GET".equals(method)) {
+                String formatName = queryParam(exchange, "format");
+                byte format;
+                try {
+                    format = ArchiveWriter.formatOf(formatName == null ? "zip" : formatName);
+                } catch (IllegalArgumentException e) {
+                    send(exchange, 400, e.getMessage());
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", ArchiveWriter.contentType(format));
+                exchange.getResponseHeaders().set("Content-Disposition",
+                        "attachment; filename=\"" + userName + ArchiveWriter.extension(format) + "\"");
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    store.exportArchive(queryParam(exchange, "match"), format, Channels.newChannel(body),
+                            ProgressListener.NONE, () -> false);
+                }
+            } else if ("POST".equals(method)) {
+                BatchTransfer.Result result;
+                try {
+                    result = store.importArchive(Channels.newChannel(exchange.getRequestBody()), ProgressListener.NONE,
+                            () -> false);
+                } catch (IOException e) {
+                    send(exchange, 400, e.getMessage());
+                    return;
+                }
+                StringBuilder body = new StringBuilder();
+                body.append(result.succeeded).append(" stored, ").append(result.failed).append(" failed\n");
+                for (String failure : result.failures) body.append(failure).append('\n');
+                send(exchange, 200, body.toString());
+            } else {
+                send(exchange, 405, "Use GET or POST on /archive");
+            }
+        }
+    }
+
+    // One line: bytes stored, files stored, byte quota, file quota; a quota of 0 is unlimited
+    private void handleUsage(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String userName = authenticate(exchange);
+            if (userName == null) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer, Basic realm=\"cloud-storage\"");
+                send(exchange, 401, "Authentication required");
+                return;
+            }
+            Usage usage = storeFor(userName).usage();
+            send(exchange, 200, usage.bytes() + "\t" + usage.files() + "\t" + usage.byteQuota() + "\t"
+                    + usage.fileQuota() + "\n");
+        }
+    }
+
+    private static String queryParam(HttpExchange exchange, String key) {
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) return null;
+        for (String param : raw.split("&")) {
+            if (param.startsWith(key + "=")) return URLDecoder.decode(param.substring(key.length() + 1), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    private void list(HttpExchange exchange, StorageService store) throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (String name : store.list()) {
+            FileCatalog.Entry entry = store.stat(name);
+            if (entry != null) body.append(name).append('\t').append(entry.size).append('\t').append(entry.modified).append('\n');
+        }
+        send(exchange, 200, body.toString());
+    }
+
+    // The length comes from the file as locked for the transfer, not from stat(), so a replace cannot slip in between
+    private void download(HttpExchange exchange, StorageService store, String name) throws IOException {
+        if (store.stat(name) == null) {
+            send(exchange, 404, "No such file");
+            return;
+        }
+        // Closing the exchange closes the body; a file deleted meanwhile still gets its 404, as no header went out
+        store.download(name, size -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, size == 0 ? -1 : size);
+            return Channels.newChannel(exchange.getResponseBody());
+        }, ProgressListener.NONE);
+    }
+
+    // Old versions may be rebuilt from deltas first, so the length is not known up front and the body is chunked
+    private void downloadVersion(HttpExchange exchange, StorageService store, String name, int number) throws IOException {
+        if (store.stat(name) == null || store.versions(name).stream().noneMatch(v -> v.number == number)) {
+            send(exchange, 404, "No such version");
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream body = exchange.getResponseBody()) {
+            store.downloadVersion(name, number, Channels.newChannel(body), ProgressListener.NONE);
+        }
+    }
+
+    private void head(HttpExchange exchange, StorageService store, String name) throws IOException {
+        FileCatalog.Entry entry = store.stat(name);
+        if (entry == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("X-File-Size", Long.toString(entry.size));
+        exchange.getResponseHeaders().set("Last-Modified",
+                DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(entry.modified).atZone(ZoneOffset.UTC)));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private String authenticate(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header != null && header.startsWith("Bearer ")) {
+            long now = System.currentTimeMillis();
+            sweepSessions(now);
+            String token = header.substring("Bearer ".length()).trim();
+            Session session = sessions.get(token);
+            if (session == null) return null;
+            if (session.expires < now) {
+                sessions.remove(token, session);
+                return null;
+            }
+            return session.userName;
+        }
+        return basicAuth(exchange);
+    }
+
+    // One thread at a time, the one that moves nextSweep on, walks the table
+    private void sweepSessions(long now) {
+        long due = nextSweep.get();
+        if (now < due || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_MS)) return;
+        sessions.values().removeIf(session -> session.expires < now);
+    }
+
+    int sessionCount() { return sessions.size(); }
+
+    // Basic auth runs the full password hash, so scripts should trade it for a token at /login
+    private String basicAuth(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Basic ")) return null;
+        String decoded;
+        try {
+            decoded = new String(Base64.getDecoder().decode(header.substring("Basic ".length()).trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) { return null; }
+        int colon = decoded.indexOf(':');
+        if (colon <= 0) return null;
+        String userName = decoded.substring(0, colon);
+        return authSystem.authenticateUser(userName, decoded.substring(colon + 1)) ? userName : null;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        // A HEAD response carries the status alone
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) { out.write(bytes); }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package cloudstorage;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageHttpServerTest {
+    private static final String USER = "http-test-" + System.nanoTime();
+    private static final String VICTIM = "http-victim-" + System.nanoTime();
+    // Three levels up from <volume>/<user>/<shard>/ is the working directory, where users_data.txt lives
+    private static final Path CANARY = Paths.get("traversal-canary.txt");
+    private static final String ESCAPE = "..%2F..%2F..%2F" + CANARY;
+
+    private static UserAuthSystem auth;
+    private static StorageHttpServer server;
+    private static HttpClient client;
+    private static String base;
+    private static String token;
+
+    @BeforeAll
+    static void start() throws Exception {
+        auth = new UserAuthSystem(new CredentialStore("http-test-users.txt"), new Pbkdf2PasswordHasher());
+        assertTrue(auth.registerUser(USER, "secret"));
+        client = HttpClient.newHttpClient();
+        base = "http://localhost:" + freePort();
+        server = startServer(base);
+        token = login(base);
+        Files.writeString(CANARY, "not yours");
+    }
+
+    @AfterAll
+    static void stop() { server.stop(); }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) { return probe.getLocalPort(); }
+    }
+
+    private static StorageHttpServer startServer(String base) throws IOException {
+        int port = URI.create(base).getPort();
+        StorageHttpServer started = new StorageHttpServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), auth, 4);
+        started.start();
+        return started;
+    }
+
+    private static String login(String base) throws Exception {
+        String basic = Base64.getEncoder().encodeToString((USER + ":secret").getBytes(StandardCharsets.UTF_8));
+        HttpResponse<String> login = client.send(HttpRequest.newBuilder(URI.create(base + "/login"))
+                .header("Authorization", "Basic " + basic).POST(HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, login.statusCode());
+        return login.body().strip();
+    }
+
+    private static HttpResponse<String> request(String base, String token, String method, String path,
+                                                String body) throws Exception {
+        HttpRequest.BodyPublisher content = body == null
+                ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body);
+        return client.send(HttpRequest.newBuilder(URI.create(base + path)).header("Authorization", "Bearer " + token)
+                .method(method, content).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> request(String method, String path, String body) throws Exception {
+        return request(base, token, method, path, body);
+    }
+
+    private static void assertUntouched() throws Exception {
+        assertEquals("not yours", Files.readString(CANARY));
+    }
+
+    @Test
+    void filesRoundTrip() throws Exception {
+        assertEquals(201, request("PUT", "/files/hello.txt", "hello").statusCode());
+        assertEquals(200, request("PUT", "/files/hello.txt", "hello again").statusCode());
+        assertEquals("hello again", request("GET", "/files/hello.txt", null).body());
+        assertEquals("hello", request("GET", "/files/hello.txt?version=1", null).body());
+        assertEquals(204, request("DELETE", "/files/hello.txt", null).statusCode());
+        assertEquals(404, request("GET", "/files/hello.txt", null).statusCode());
+    }
+
+    @Test
+    void downloadDuringReplaceSendsOneWholeVersion() throws Exception {
+        String small = "a".repeat(10_000);
+        String large = "b".repeat(300_000);
+        assertEquals(201, request("PUT", "/files/churn.txt", small).statusCode());
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 40 && !Thread.currentThread().isInterrupted(); i++)
+                    request("PUT", "/files/churn.txt", i % 2 == 0 ? large : small);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 40; i++) {
+                HttpResponse<String> response = request("GET", "/files/churn.txt", null);
+                assertEquals(200, response.statusCode());
+                assertTrue(response.body().equals(small) || response.body().equals(large),
+                        "mixed or cut-off body of " + response.body().length() + " bytes");
+            }
+        } finally {
+            writer.interrupt();
+            writer.join();
+        }
+    }
+
+    @Test
+    void getRefusesTraversal() throws Exception {
+        HttpResponse<String> response = request("GET", "/files/" + ESCAPE, null);
+        assertEquals(400, response.statusCode());
+        assertFalse(response.body().contains("not yours"));
+    }
+
+    @Test
+    void versionGetRefusesTraversal() throws Exception {
+        HttpResponse<String> response = request("GET", "/files/" + ESCAPE + "?version=1", null);
+        assertEquals(400, response.statusCode());
+        assertFalse(response.body().contains("not yours"));
+    }
+
+    @Test
+    void headRefusesTraversal() throws Exception {
+        HttpResponse<String> response = request("HEAD", "/files/" + ESCAPE, null);
+        assertEquals(400, response.statusCode());
+        assertNull(response.headers().firstValue("X-File-Size").orElse(null));
+    }
+
+    @Test
+    void putRefusesTraversal() throws Exception {
+        assertEquals(400, request("PUT", "/files/" + ESCAPE, "overwritten").statusCode());
+        assertUntouched();
+    }
+
+    @Test
+    void deleteRefusesTraversal() throws Exception {
+        assertEquals(400, request("DELETE", "/files/" + ESCAPE, null).statusCode());
+        assertEquals(400, request("DELETE", "/files/%2E%2E", null).statusCode());
+        assertEquals(400, request("DELETE", "/files/..%5C..%5C..%5C" + CANARY, null).statusCode());
+        assertUntouched();
+    }
+
+    // Another user's version history is a sibling of the caller's own under versions/
+    @Test
+    void deleteCannotReachAnotherUsersHistory() throws Exception {
+        StorageService victim = server.storeFor(VICTIM);
+        for (String content : new String[]{"v1", "v2"}) {
+            victim.upload("notes", Channels.newChannel(new ByteArrayInputStream(content.getBytes())), content.length(),
+                    ProgressListener.NONE);
+        }
+        assertEquals(1, victim.versions("notes").size());
+        assertEquals(400, request("DELETE", "/files/..%2F" + VICTIM + "%2Fnotes", null).statusCode());
+        assertEquals(1, victim.versions("notes").size());
+    }
+
+    @Test
+    void versionListRefusesTraversal() throws Exception {
+        assertEquals(400, request("GET", "/versions/" + ESCAPE, null).statusCode());
+        assertEquals(400, request("GET", "/versions/..%2F" + VICTIM + "%2Fnotes", null).statusCode());
+    }
+
+    // Tokens that are never presented again are still swept out once they expire
+    @Test
+    void expiredSessionsArePurged() throws Exception {
+        String shortBase = "http://localhost:" + freePort();
+        StorageHttpServer shortLived;
+        System.setProperty("cloudstorage.http.sessionSeconds", "1");
+        try {
+            shortLived = startServer(shortBase);
+        } finally {
+            System.clearProperty("cloudstorage.http.sessionSeconds");
+        }
+        try {
+            String presented = login(shortBase);
+            login(shortBase);
+            login(shortBase);
+            assertEquals(3, shortLived.sessionCount());
+            assertEquals(200, request(shortBase, presented, "GET", "/files", null).statusCode());
+
+            Thread.sleep(2100);
+            assertEquals(401, request(shortBase, presented, "GET", "/files", null).statusCode());
+            assertEquals(0, shortLived.sessionCount());
+            String fresh = login(shortBase);
+            assertEquals(200, request(shortBase, fresh, "GET", "/files", null).statusCode());
+            assertEquals(1, shortLived.sessionCount());
+        } finally {
+            shortLived.stop();
+        }
+    }
+}